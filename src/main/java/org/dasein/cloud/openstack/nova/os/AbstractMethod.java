@@ -19,17 +19,25 @@
 
 package org.dasein.cloud.openstack.nova.os;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,10 +57,10 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.ClientPNames;
 import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
@@ -70,21 +78,27 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.openstack.nova.os.ext.hp.db.HPRDBMS;
 import org.dasein.cloud.util.APITrace;
-import org.dasein.cloud.util.Cache;
-import org.dasein.cloud.util.CacheLevel;
 import org.dasein.util.CalendarWrapper;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public abstract class AbstractMethod {
+    /**
+     * The number of times a method instance will re-authenticate and retry after consecutive 401s. The count starts
+     * over with every response the cloud does not reject as unauthorized.
+     */
+    static public final int MAX_AUTH_RETRIES = 2;
+
     protected NovaOpenStack provider;
+    private   int           authRetries = 0;
+    private   String        lastService;
+    private   String        lastTemplate;
+    private   String        lastVerb;
 
     public AbstractMethod(NovaOpenStack provider) { this.provider = provider; }
 
-    public synchronized @Nullable AuthenticationContext authenticate() throws CloudException, InternalException {
+    public @Nullable AuthenticationContext authenticate() throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         
         if( std.isTraceEnabled() ) {
@@ -153,6 +167,7 @@ public abstract class AbstractMethod {
         }
 
         HttpClient client = null;
+        HttpResponse response = null;
 
         try {
             String accessPublic = null;
@@ -254,8 +269,6 @@ public abstract class AbstractMethod {
 
             wire.debug("");
 
-            HttpResponse response;
-
             try {
                 APITrace.trace(provider, "POST authenticateKeystone");
                 response = client.execute(post);
@@ -338,6 +351,7 @@ public abstract class AbstractMethod {
                     String id, tenantId;
                     JSONArray catalog;
                     JSONObject token;
+                    long expires = 0L;
 
                     try {
                         JSONObject rj = new JSONObject(data);
@@ -346,6 +360,9 @@ public abstract class AbstractMethod {
                         token = auth.getJSONObject("token");
                         catalog = auth.getJSONArray("serviceCatalog");
                         id = (token.has("id") ? token.getString("id") : null);
+                        if( token.has("expires") && !token.isNull("expires") ) {
+                            expires = toExpiry(token.getString("expires"));
+                        }
                         tenantId = ((token.has("tenantId") && !token.isNull("tenantId")) ? token.getString("tenantId") : null);
                         if( tenantId == null && token.has("tenant") && !token.isNull("tenant") ) {
                             JSONObject t = token.getJSONObject("tenant");
@@ -488,16 +505,14 @@ public abstract class AbstractMethod {
                             endpoints.put("region-a.geo-1", "https://region-a.geo-1.dbaas-mysql.hpcloudsvc.com:8779/v1.0/66565797737008");
                             services.put(HPRDBMS.SERVICE, endpoints);
                         }
-                        return new AuthenticationContext(myRegionId, id, tenantId, services, null);
+                        return new AuthenticationContext(myRegionId, id, tenantId, services, null, expires);
                     }
                 }
             }
             throw new CloudException("No authentication tokens were provided");
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".authenticateKeystone()");
             }
@@ -553,6 +568,7 @@ public abstract class AbstractMethod {
                 }
                 
                 HttpClient client = null;
+                HttpResponse response = null;
 
                 try {
                     ProviderContext ctx = provider.getContext();
@@ -570,8 +586,6 @@ public abstract class AbstractMethod {
                         }
                         wire.debug("");
                     }
-                    HttpResponse response;
-
                     try {
                         APITrace.trace(provider, "GET authenticateStandard");
                         response = client.execute(get);
@@ -689,9 +703,7 @@ public abstract class AbstractMethod {
                     }
                 }
                finally {
-                   if (client != null) {
-                       client.getConnectionManager().shutdown();
-                   }
+                   release(response);
                    if( wire.isDebugEnabled() ) {
                        wire.debug("");
                        wire.debug("STANDARD --------------------------------------------------------> " + endpoint);
@@ -747,6 +759,7 @@ public abstract class AbstractMethod {
         }
         
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpGet get = new HttpGet(endpoint);
@@ -777,8 +790,6 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
                 APITrace.trace(provider, "GET authenticateSwift");
                 response = client.execute(get);
@@ -875,9 +886,7 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".authenticate()");
             }
@@ -895,19 +904,19 @@ public abstract class AbstractMethod {
         if( endpoint == null ) {
             throw new CloudException("No " + service + " endpoint exists");
         }
+        String path;
+
         if( suffix == null ) {
-            resource = resource + "/" + resourceId;
+            path = resource + "/" + resourceId;
         }
         else {
-            resource = resource + "/" + resourceId + "/" + suffix;
+            path = resource + "/" + resourceId + "/" + suffix;
         }
         try {
-            delete(context.getAuthToken(), endpoint, resource);
+            delete(context.getAuthToken(), endpoint, path);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 deleteResource(service, resource, resourceId, suffix);
             }
             else {
@@ -928,6 +937,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpDelete delete = new HttpDelete(endpoint + resource);
@@ -941,11 +951,8 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "DELETE " + toAPIResource(resource));
-                response = client.execute(delete);
+                response = execute(client, delete, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -999,9 +1006,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".delete()");
             }
@@ -1037,10 +1043,8 @@ public abstract class AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return getList(service, resource, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getList(service, resource, false);
             }
             else {
                 throw ex;
@@ -1078,10 +1082,8 @@ public abstract class AbstractMethod {
             return items;
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return getItemList(service, resource, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getItemList(service, resource, false);
             }
             else {
                 throw ex;
@@ -1122,10 +1124,8 @@ public abstract class AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return getResource(service, resource, resourceId, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getResource(service, resource, null, false);
             }
             else {
                 throw ex;
@@ -1133,6 +1133,167 @@ public abstract class AbstractMethod {
         }
     }
     
+    /**
+     * Lists the resources at the specified location, handing each element of the named collection to the handler as
+     * it is parsed rather than building the entire response in memory first.
+     * @param service the service from the catalog against which the request is made
+     * @param resource the resource being listed
+     * @param resourceId an optional sub-resource or query string
+     * @param suffix true if <code>/detail</code> should be appended when no resource ID is given
+     * @param collection the name of the array in the response holding the listed elements
+     * @param handler the handler receiving each element
+     * @return the remaining top-level members of the response, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable JSONObject streamResource(@Nonnull String service, @Nonnull String resource, @Nullable String resourceId, boolean suffix, @Nonnull String collection, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getServiceUrl(service);
+
+        if( endpoint == null ) {
+            throw new CloudException("No " + service + " URL has been established in " + context.getMyRegion());
+        }
+        if( resourceId != null ) {
+            if( resourceId.startsWith("?") ) {
+                resource = resource + resourceId;
+
+            }
+            else {
+                resource = resource + "/" + resourceId;
+            }
+        }
+        else if( suffix ) {
+            resource = resource + "/detail";
+        }
+        try {
+            return streamJSON(context.getAuthToken(), endpoint, resource, collection, handler);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return streamResource(service, resource, null, false, collection, handler);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Executes a GET and feeds each element of the named collection to the handler. The body is parsed directly from
+     * the entity stream unless streaming is disabled for this context or wire logging is on, in which case the
+     * response is read with {@link #getString(String, String, String)} and walked as a {@link JSONObject}.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being listed
+     * @param collection the name of the array in the response holding the listed elements
+     * @param handler the handler receiving each element
+     * @return the remaining top-level members of the response, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable JSONObject streamJSON(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nonnull String collection, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
+
+        if( !provider.isStreamingJSON() || wire.isDebugEnabled() ) {
+            String response = getString(authToken, endpoint, resource);
+
+            if( response == null ) {
+                return null;
+            }
+            try {
+                JSONObject json = new JSONObject(response);
+
+                if( json.has(collection) && !json.isNull(collection) ) {
+                    JSONArray list = json.getJSONArray(collection);
+
+                    for( int i=0; i<list.length(); i++ ) {
+                        handler.handle(list.getJSONObject(i));
+                    }
+                    json.remove(collection);
+                }
+                return json;
+            }
+            catch( JSONException e ) {
+                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", response);
+            }
+        }
+        InputStream input = getStream(authToken, endpoint, resource);
+
+        if( input == null ) {
+            return null;
+        }
+        try {
+            return JSONStreamParser.parse(new BufferedReader(new InputStreamReader(input, "utf-8")), collection, handler);
+        }
+        catch( JSONException e ) {
+            throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Unable to parse " + collection + " from " + resource + ": " + e.getMessage());
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
+    /**
+     * Executes a GET whose response is a bare JSON array, such as a Swift listing, and feeds each element to the
+     * handler. Streaming falls back to {@link #getString(String, String, String)} under the same conditions as
+     * {@link #streamJSON(String, String, String, String, JSONStreamParser.Handler)}.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being listed
+     * @param handler the handler receiving each element
+     * @return the number of elements in the response, or -1 if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected int streamJSONArray(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
+
+        if( !provider.isStreamingJSON() || wire.isDebugEnabled() ) {
+            String response = getString(authToken, endpoint, resource);
+
+            if( response == null ) {
+                return -1;
+            }
+            response = response.trim();
+            if( response.length() < 1 ) {
+                return 0;
+            }
+            try {
+                JSONArray list = new JSONArray(response);
+
+                for( int i=0; i<list.length(); i++ ) {
+                    handler.handle(list.getJSONObject(i));
+                }
+                return list.length();
+            }
+            catch( JSONException e ) {
+                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", response);
+            }
+        }
+        InputStream input = getStream(authToken, endpoint, resource);
+
+        if( input == null ) {
+            return -1;
+        }
+        try {
+            return JSONStreamParser.parseArray(new BufferedReader(new InputStreamReader(input, "utf-8")), handler);
+        }
+        catch( JSONException e ) {
+            throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Unable to parse " + resource + ": " + e.getMessage());
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            try { input.close(); }
+            catch( IOException ignore ) { }
+        }
+    }
+
     protected @Nullable String getString(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource) throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
@@ -1145,6 +1306,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpGet get = new HttpGet(resource == null ? endpoint : endpoint + resource);
@@ -1159,11 +1321,8 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "GET " + toAPIResource(resource));
-                response = client.execute(get);
+                response = execute(client, get, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1284,9 +1443,7 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".getString()");
             }
@@ -1298,6 +1455,39 @@ public abstract class AbstractMethod {
     }
     
     protected @Nullable InputStream getStream(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource) throws CloudException, InternalException {
+        return getStream(authToken, endpoint, resource, null);
+    }
+
+    /**
+     * Executes a GET with additional request headers, such as <code>Range</code>, and hands back the response body.
+     * A <code>206 Partial Content</code> response is treated as success.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being fetched
+     * @param customHeaders additional headers to send with the request
+     * @return the response body, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable InputStream getStream(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable Map<String,String> customHeaders) throws CloudException, InternalException {
+        return getStream(authToken, endpoint, resource, customHeaders, false);
+    }
+
+    /**
+     * Executes a GET with additional request headers and hands back the response body, optionally insisting that
+     * the cloud honored a <code>Range</code> header. A server or proxy that ignores the range answers
+     * <code>200 OK</code> with the whole object, which a caller writing the body at the range's offset must never
+     * accept.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being fetched
+     * @param customHeaders additional headers to send with the request
+     * @param partial true if only a <code>206 Partial Content</code> response starting at the requested offset is acceptable
+     * @return the response body, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider, including the range not being honored
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable InputStream getStream(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable Map<String,String> customHeaders, boolean partial) throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
         
@@ -1314,6 +1504,11 @@ public abstract class AbstractMethod {
             
             get.addHeader("Content-Type", "application/json");
             get.addHeader("X-Auth-Token", authToken);
+            if( customHeaders != null ) {
+                for( Map.Entry<String, String> entry : customHeaders.entrySet() ) {
+                    get.addHeader(entry.getKey(), entry.getValue());
+                }
+            }
 
             if( wire.isDebugEnabled() ) {
                 wire.debug(get.getRequestLine().toString());
@@ -1325,8 +1520,7 @@ public abstract class AbstractMethod {
             HttpResponse response;
 
             try {
-                APITrace.trace(provider, "GET " + toAPIResource(resource));
-                response = client.execute(get);
+                response = execute(client, get, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1344,9 +1538,16 @@ public abstract class AbstractMethod {
 
             std.debug("HTTP STATUS: " + code);
             if( code == HttpStatus.SC_NOT_FOUND ) {
+                // the stream is handed back to the caller only on success, so give the pooled connection back now
+                release(response);
                 return null;
             }
-            if( code != HttpStatus.SC_OK && code != HttpStatus.SC_NON_AUTHORITATIVE_INFORMATION ) {
+            if( code == HttpStatus.SC_NO_CONTENT ) {
+                // Swift answers an empty listing this way
+                release(response);
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            if( code != HttpStatus.SC_OK && code != HttpStatus.SC_NON_AUTHORITATIVE_INFORMATION && code != HttpStatus.SC_PARTIAL_CONTENT ) {
                 std.error("Expected OK for GET request, got " + code);
                 String data = null;
 
@@ -1376,12 +1577,30 @@ public abstract class AbstractMethod {
             }
             else {
                 InputStream input = null;
-                
+
+                if( partial ) {
+                    String range = (customHeaders == null ? null : customHeaders.get("Range"));
+                    Header returned = response.getFirstHeader("Content-Range");
+                    String start = (range == null ? null : "bytes " + range.substring(range.indexOf('=') + 1, range.indexOf('-') + 1));
+
+                    if( code != HttpStatus.SC_PARTIAL_CONTENT || (start != null && returned != null && !returned.getValue().startsWith(start)) ) {
+                        release(response);
+                        std.error("getStream(): Range " + range + " not honored for " + resource + ": " + code + (returned == null ? "" : " " + returned.getValue()));
+                        throw new CloudException(CloudErrorType.COMMUNICATION, code, "rangeNotHonored", "Range " + range + " was not honored for " + resource);
+                    }
+                }
                 try {
                     HttpEntity entity = response.getEntity();
 
                     if( entity != null ) {
                         input = entity.getContent();
+                        if( code == HttpStatus.SC_OK && entity.getContentEncoding() == null ) {
+                            Header etag = response.getFirstHeader("ETag");
+
+                            if( etag != null && VerifyingInputStream.isMD5(etag.getValue()) ) {
+                                input = new VerifyingInputStream(input, etag.getValue(), resource);
+                            }
+                        }
                         if( wire.isDebugEnabled() ) {
                             wire.debug(" ---- BINARY DATA ---- ");
                             wire.debug("");
@@ -1413,6 +1632,54 @@ public abstract class AbstractMethod {
         }
     }
 
+    /**
+     * Executes the request, tracing it through {@link APITrace} and reporting its latency, status and response size
+     * to the {@link NovaMetrics} registry.
+     * @param client the client executing the request
+     * @param request the request to execute
+     * @param endpoint the service endpoint the request is made against
+     * @param resource the request path relative to the endpoint
+     * @return the response from the cloud
+     * @throws IOException an error occurred communicating with the cloud
+     */
+    protected @Nonnull HttpResponse execute(@Nonnull HttpClient client, @Nonnull HttpUriRequest request, @Nonnull String endpoint, @Nullable String resource) throws IOException {
+        String verb = request.getMethod();
+        String service = getServiceName(endpoint);
+        String template = NovaMetrics.toTemplate(service, resource);
+        long start = System.currentTimeMillis();
+        int status = 0;
+        long bytes = -1L;
+
+        APITrace.trace(provider, verb + " " + toAPIResource(resource));
+        lastService = service;
+        lastTemplate = template;
+        lastVerb = verb;
+        try {
+            HttpResponse response = client.execute(request);
+            HttpEntity entity = response.getEntity();
+
+            status = response.getStatusLine().getStatusCode();
+            if( status != HttpStatus.SC_UNAUTHORIZED ) {
+                // the token was accepted, so a later 401 on this instance starts a fresh series of retries
+                authRetries = 0;
+            }
+            if( entity != null ) {
+                bytes = entity.getContentLength();
+            }
+            return response;
+        }
+        finally {
+            NovaMetrics.getRegistry().recordCall(service, template, verb, status, System.currentTimeMillis() - start, bytes);
+        }
+    }
+
+    private @Nonnull String getServiceName(@Nonnull String endpoint) {
+        AuthenticationContext context = AuthenticationManager.getCurrentContext(provider);
+        String service = (context == null ? null : context.getServiceName(endpoint));
+
+        return (service == null ? "unknown" : service);
+    }
+
     protected @Nonnull HttpClient getClient() throws CloudException, InternalException {
         ProviderContext ctx = provider.getContext();
 
@@ -1445,6 +1712,7 @@ public abstract class AbstractMethod {
         //noinspection deprecation
         HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
         HttpProtocolParams.setUserAgent(params, "");
+        params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, HttpConnectionPool.getAcquireTimeout(ctx));
 
         Properties p = ctx.getCustomProperties();
 
@@ -1461,22 +1729,39 @@ public abstract class AbstractMethod {
                 params.setParameter(ConnRoutePNames.DEFAULT_PROXY, new HttpHost(proxyHost, port, ssl ? "https" : "http"));
             }
         }
-        DefaultHttpClient client = new DefaultHttpClient(params);
+        return new DefaultHttpClient(HttpConnectionPool.getConnectionManager(provider), params);
+    }
 
-        if( provider.isInsecure() ) {
-            try {
-                client.getConnectionManager().getSchemeRegistry().register(new Scheme("https", 443, new SSLSocketFactory(new TrustStrategy() {
+    /**
+     * Called when the cloud rejects a request as unauthorized. The rejected token is discarded (once, no matter how
+     * many threads were using it) so the retry picks up a fresh one. A method instance retries at most
+     * {@link #MAX_AUTH_RETRIES} times in a row so a token the cloud keeps rejecting fails instead of recursing forever.
+     * @param stale the authentication context used for the rejected request
+     * @return true if the request should be retried
+     * @throws CloudException no context is set for the provider
+     */
+    protected boolean reauthenticate(@Nonnull AuthenticationContext stale) throws CloudException {
+        if( authRetries >= MAX_AUTH_RETRIES ) {
+            NovaOpenStack.getLogger(NovaOpenStack.class, "std").warn("Giving up after " + authRetries + " re-authentication attempts");
+            return false;
+        }
+        authRetries++;
+        if( lastVerb != null ) {
+            NovaMetrics.getRegistry().recordRetry(lastService, lastTemplate, lastVerb);
+        }
+        AuthenticationManager.invalidate(provider, stale);
+        return true;
+    }
 
-                    public boolean isTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
-                        return true;
-                    }
-                }, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
-            }
-            catch( Throwable t ) {
-                t.printStackTrace();
-            }
+    /**
+     * Returns the connection behind the specified response to its pool. The response body is drained so the
+     * connection may be kept alive for the next request instead of being torn down.
+     * @param response the response to release, may be null if the request never completed
+     */
+    protected void release(@Nullable HttpResponse response) {
+        if( response != null ) {
+            EntityUtils.consumeQuietly(response.getEntity());
         }
-        return client;
     }
 
     public @Nullable Map<String,String> headResource(@Nonnull String service, @Nullable String resource, @Nullable String resourceId) throws CloudException, InternalException {
@@ -1499,10 +1784,8 @@ public abstract class AbstractMethod {
             return head(context.getAuthToken(), endpoint, resource);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return headResource(service, resource, resourceId);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return headResource(service, resource, null);
             }
             else {
                 throw ex;
@@ -1511,6 +1794,20 @@ public abstract class AbstractMethod {
     }
 
     protected @Nullable Map<String,String> head(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource) throws CloudException, InternalException {
+        return head(authToken, endpoint, resource, false);
+    }
+
+    /**
+     * Executes a HEAD, answering from {@link MetadataCache} when it holds a live entry for these credentials.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being checked
+     * @param fresh true to always ask the cloud, revalidating any cached entry, for callers that act on exact sizes
+     * @return the response headers, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable Map<String,String> head(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, boolean fresh) throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
         
@@ -1521,12 +1818,26 @@ public abstract class AbstractMethod {
             wire.debug("--------------------------------------------------------> " + endpoint + resource);
             wire.debug("");
         }
+        long ttl = MetadataCache.getTtl(provider);
+        MetadataCache.Entry cached = (ttl > 0L ? MetadataCache.get(authToken, endpoint, resource) : null);
+
+        if( cached != null && !fresh && !cached.isExpired() ) {
+            if( std.isTraceEnabled() ) {
+                std.trace("exit - " + AbstractMethod.class.getName() + ".head() from cache");
+            }
+            return cached.getHeaders();
+        }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpHead head = new HttpHead(endpoint + resource);
-            
+            String etag = (cached == null ? null : cached.getETag());
+
             head.addHeader("X-Auth-Token", authToken);
+            if( etag != null ) {
+                head.addHeader("If-None-Match", etag);
+            }
             if( wire.isDebugEnabled() ) {
                 wire.debug(head.getRequestLine().toString());
                 for( Header header : head.getAllHeaders() ) {
@@ -1534,11 +1845,8 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "HEAD " + toAPIResource(resource));
-                response = client.execute(head);
+                response = execute(client, head, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1555,8 +1863,15 @@ public abstract class AbstractMethod {
             int code = response.getStatusLine().getStatusCode();
 
             std.debug("HTTP STATUS: " + code);
+            if( code == HttpStatus.SC_NOT_MODIFIED && cached != null ) {
+                MetadataCache.put(authToken, endpoint, resource, cached.getHeaders(), ttl);
+                return cached.getHeaders();
+            }
             if( code != HttpStatus.SC_NO_CONTENT && code != HttpStatus.SC_OK ) {
                 if( code == HttpStatus.SC_NOT_FOUND ) {
+                    if( ttl > 0L ) {
+                        MetadataCache.put(authToken, endpoint, resource, null, ttl);
+                    }
                     return null;
                 }
                 std.error("Expected OK for HEAD request, got " + code);
@@ -1591,12 +1906,13 @@ public abstract class AbstractMethod {
             for( Header h : response.getAllHeaders() ) {
                 map.put(h.getName().trim(), h.getValue().trim());
             }
+            if( ttl > 0L ) {
+                MetadataCache.put(authToken, endpoint, resource, map, ttl);
+            }
             return map;
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".head()");
             }
@@ -1621,9 +1937,7 @@ public abstract class AbstractMethod {
             postHeaders(context.getAuthToken(), endpoint, resource + "/" + resourceId, headers);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 postResourceHeaders(service, resource, resourceId, headers);
             }
             else {
@@ -1645,6 +1959,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPost post = new HttpPost(endpoint + resource);
@@ -1666,11 +1981,8 @@ public abstract class AbstractMethod {
                 wire.debug("");
             }
 
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "POST " + toAPIResource(resource));
-                response = client.execute(post);
+                response = execute(client, post, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1791,9 +2103,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".postString()");
             }
@@ -1825,9 +2136,7 @@ public abstract class AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 return postString(service, resource, resourceId, extra, body);
             }
             else {
@@ -1860,10 +2169,8 @@ public abstract class AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return postString(service, resource, resourceId, body, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return postString(service, resource, null, body, false);
             }
             else {
                 throw ex;
@@ -1872,6 +2179,21 @@ public abstract class AbstractMethod {
     }
     
     protected @Nullable String postString(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nonnull String payload) throws CloudException, InternalException {
+        return postString(authToken, endpoint, resource, payload, "application/json");
+    }
+
+    /**
+     * Posts a payload of the specified content type. The response is always requested as JSON.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource receiving the post
+     * @param payload the body of the request
+     * @param contentType the content type of the body
+     * @return the response body, if any
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable String postString(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nonnull String payload, @Nonnull String contentType) throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
         
@@ -1883,11 +2205,13 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPost post = new HttpPost(endpoint + resource);
             
-            post.addHeader("Content-Type", "application/json");
+            post.addHeader("Content-Type", contentType);
+            post.addHeader("Accept", "application/json");
             post.addHeader("X-Auth-Token", authToken);
             if( wire.isDebugEnabled() ) {
                 wire.debug(post.getRequestLine().toString());
@@ -1899,7 +2223,7 @@ public abstract class AbstractMethod {
             if( payload != null ) {
                 try {
                     //noinspection deprecation
-                    post.setEntity(new StringEntity(payload == null ? "" : payload, "application/json", "UTF-8"));
+                    post.setEntity(new StringEntity(payload == null ? "" : payload, contentType, "UTF-8"));
                 }
                 catch( UnsupportedEncodingException e ) {
                     throw new InternalException(e);
@@ -1909,11 +2233,8 @@ public abstract class AbstractMethod {
 
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "POST " + toAPIResource(resource));
-                response = client.execute(post);
+                response = execute(client, post, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -1963,7 +2284,7 @@ public abstract class AbstractMethod {
                                 }
                                 try { Thread.sleep(CalendarWrapper.MINUTE * min); }
                                 catch( InterruptedException ignore ) { }
-                                return postString(authToken, endpoint, resource, payload);
+                                return postString(authToken, endpoint, resource, payload, contentType);
                             }
                         }
                     }
@@ -2041,9 +2362,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".postString()");
             }
@@ -2067,6 +2387,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPost post = new HttpPost(endpoint + resource);
@@ -2085,11 +2406,8 @@ public abstract class AbstractMethod {
             wire.debug(" ---- BINARY DATA ---- ");
             wire.debug("");
 
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "POST " + toAPIResource(resource));
-                response = client.execute(post);
+                response = execute(client, post, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -2178,9 +2496,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + NovaOpenStack.class.getName() + ".postStream()");
             }
@@ -2191,6 +2508,67 @@ public abstract class AbstractMethod {
         }
     }
 
+    /**
+     * Queues a call against the specified service with the {@link RequestExecutor}, subject to that endpoint's
+     * concurrency limit.
+     * @param service the catalog service being called
+     * @param call the call to make
+     * @param <T> the type of result produced by the call
+     * @return a future holding the result of the call
+     * @throws CloudException no endpoint exists for the service
+     * @throws InternalException an error occurred within Dasein Cloud authenticating
+     */
+    protected @Nonnull <T> Future<T> submit(@Nonnull String service, @Nonnull Callable<T> call) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getServiceUrl(service);
+
+        if( endpoint == null ) {
+            throw new CloudException("No " + service + " URL has been established in " + context.getMyRegion());
+        }
+        return RequestExecutor.submit(provider, service, endpoint, call);
+    }
+
+    public @Nonnull Future<Void> deleteResourceAsync(@Nonnull final String service, @Nonnull final String resource, @Nonnull final String resourceId, final String suffix) throws CloudException, InternalException {
+        return submit(service, new Callable<Void>() {
+            public Void call() throws CloudException, InternalException {
+                new NovaMethod(provider).deleteResource(service, resource, resourceId, suffix);
+                return null;
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONArray> getListAsync(@Nonnull final String service, @Nonnull final String resource, final boolean suffix) throws CloudException, InternalException {
+        return submit(service, new Callable<JSONArray>() {
+            public JSONArray call() throws CloudException, InternalException {
+                return new NovaMethod(provider).getList(service, resource, suffix);
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONObject> getResourceAsync(@Nonnull final String service, @Nonnull final String resource, @Nullable final String resourceId, final boolean suffix) throws CloudException, InternalException {
+        return submit(service, new Callable<JSONObject>() {
+            public JSONObject call() throws CloudException, InternalException {
+                return new NovaMethod(provider).getResource(service, resource, resourceId, suffix);
+            }
+        });
+    }
+
+    public @Nonnull Future<Map<String,String>> headResourceAsync(@Nonnull final String service, @Nullable final String resource, @Nullable final String resourceId) throws CloudException, InternalException {
+        return submit(service, new Callable<Map<String,String>>() {
+            public Map<String,String> call() throws CloudException, InternalException {
+                return new NovaMethod(provider).headResource(service, resource, resourceId);
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONObject> postStringAsync(@Nonnull final String service, @Nonnull final String resource, @Nullable final String resourceId, @Nonnull final JSONObject body, final boolean suffix) throws CloudException, InternalException {
+        return submit(service, new Callable<JSONObject>() {
+            public JSONObject call() throws CloudException, InternalException {
+                return new NovaMethod(provider).postString(service, resource, resourceId, body, suffix);
+            }
+        });
+    }
+
     public void putResourceHeaders(@Nonnull String service, @Nullable String resource, @Nullable String resourceId, @Nonnull Map<String,String> headers) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getServiceUrl(service);
@@ -2211,10 +2589,8 @@ public abstract class AbstractMethod {
             putHeaders(context.getAuthToken(), endpoint, resource, headers);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                putResourceHeaders(service, resource, resourceId, headers);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                putResourceHeaders(service, resource, null, headers);
             }
             else {
                 throw ex;
@@ -2235,6 +2611,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPut put = new HttpPut(endpoint + resource);
@@ -2256,11 +2633,8 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "PUT " + toAPIResource(resource));
-                response = client.execute(put);
+                response = execute(client, put, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -2338,9 +2712,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".putString()");
             }
@@ -2363,6 +2736,7 @@ public abstract class AbstractMethod {
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPut put = new HttpPut(endpoint + resource);
@@ -2390,11 +2764,8 @@ public abstract class AbstractMethod {
 
                 wire.debug("");
             }
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "PUT " + toAPIResource(resource));
-                response = client.execute(put);
+                response = execute(client, put, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -2472,9 +2843,8 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
                 std.trace("exit - " + AbstractMethod.class.getName() + ".putString()");
             }
@@ -2486,17 +2856,61 @@ public abstract class AbstractMethod {
     }
     
     protected @Nullable String putStream(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable String md5Hash, @Nonnull InputStream stream) throws CloudException, InternalException {
+        MessageDigest digest = VerifyingInputStream.newMD5();
+
+        return putEntity(authToken, endpoint, resource, md5Hash, new InputStreamEntity(new DigestInputStream(stream, digest), -1, ContentType.APPLICATION_OCTET_STREAM), digest, null);
+    }
+
+    /**
+     * Uploads a stream like {@link #putStream(String, String, String, String, InputStream)} and reports the MD5 of
+     * the bytes actually sent. The hash is taken as the stream is uploaded, so the content is read only once, and a
+     * cloud reporting a different <code>ETag</code> fails the upload.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being written
+     * @param md5Hash the hex MD5 of the payload sent as the <code>ETag</code>, or <code>null</code> to send none
+     * @param stream the content to upload
+     * @return the hex MD5 of the content sent
+     * @throws CloudException an error occurred with the cloud provider, including the stored content not matching what was sent
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nonnull String putVerifiedStream(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable String md5Hash, @Nonnull InputStream stream) throws CloudException, InternalException {
+        MessageDigest digest = VerifyingInputStream.newMD5();
+        String[] sent = new String[1];
+
+        putEntity(authToken, endpoint, resource, md5Hash, new InputStreamEntity(new DigestInputStream(stream, digest), -1, ContentType.APPLICATION_OCTET_STREAM), digest, sent);
+        return sent[0];
+    }
+
+    /**
+     * Uploads an in-memory payload. Unlike {@link #putStream(String, String, String, String, InputStream)}, the
+     * request carries an exact <code>Content-Length</code> and the entity is repeatable.
+     * @param authToken the authentication token for the request
+     * @param endpoint the endpoint against which the request is made
+     * @param resource the resource being written
+     * @param md5Hash the hex MD5 of the payload sent as the <code>ETag</code>, or <code>null</code> to send none
+     * @param payload the bytes to upload
+     * @return the response body of a <code>202 Accepted</code> response, if any
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    protected @Nullable String putBytes(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable String md5Hash, @Nonnull byte[] payload) throws CloudException, InternalException {
+        return putEntity(authToken, endpoint, resource, md5Hash, new ByteArrayEntity(payload, ContentType.APPLICATION_OCTET_STREAM), null, null);
+    }
+
+    private @Nullable String putEntity(@Nonnull String authToken, @Nonnull String endpoint, @Nonnull String resource, @Nullable String md5Hash, @Nonnull HttpEntity payload, @Nullable MessageDigest digest, @Nullable String[] verified) throws CloudException, InternalException {
         Logger std = NovaOpenStack.getLogger(NovaOpenStack.class, "std");
         Logger wire = NovaOpenStack.getLogger(NovaOpenStack.class, "wire");
         
         if( std.isTraceEnabled() ) {
-            std.trace("enter - " + AbstractMethod.class.getName() + ".putStream(" + authToken + "," + endpoint + "," + resource + "," + md5Hash + ",INPUTSTREAM)");
+            std.trace("enter - " + AbstractMethod.class.getName() + ".putEntity(" + authToken + "," + endpoint + "," + resource + "," + md5Hash + "," + payload.getContentLength() + ")");
         }
         if( wire.isDebugEnabled() ) {
             wire.debug("---------------------------------------------------------------------------------" + endpoint + resource);
             wire.debug("");
         }
         HttpClient client = null;
+        HttpResponse response = null;
         try {
             client = getClient();
             HttpPut put = new HttpPut(endpoint + resource);
@@ -2514,15 +2928,12 @@ public abstract class AbstractMethod {
                 }
                 wire.debug("");
             }
-            put.setEntity(new InputStreamEntity(stream, -1, ContentType.APPLICATION_OCTET_STREAM));
+            put.setEntity(payload);
             wire.debug(" ---- BINARY DATA ---- ");
             wire.debug("");
 
-            HttpResponse response;
-
             try {
-                APITrace.trace(provider, "PUT " + toAPIResource(resource));
-                response = client.execute(put);
+                response = execute(client, put, endpoint, resource);
                 if( wire.isDebugEnabled() ) {
                     wire.debug(response.getStatusLine().toString());
                     for( Header header : response.getAllHeaders() ) {
@@ -2540,18 +2951,8 @@ public abstract class AbstractMethod {
 
             std.debug("HTTP STATUS: " + code);
 
-            String responseHash = null;
-            
-            for( Header h : put.getAllHeaders() ) {
-                if( h.getName().equalsIgnoreCase("ETag") ) {
-                    responseHash = h.getValue(); 
-                }
-            }
-            if( responseHash != null && md5Hash != null && !responseHash.equals(md5Hash) ) {
-                throw new CloudException("MD5 hash values do not match, probably data corruption");
-            }
             if( code != HttpStatus.SC_CREATED && code != HttpStatus.SC_ACCEPTED && code != HttpStatus.SC_NO_CONTENT ) {
-                std.error("putStream(): Expected CREATED, ACCEPTED, or NO CONTENT for PUT request, got " + code);
+                std.error("putEntity(): Expected CREATED, ACCEPTED, or NO CONTENT for PUT request, got " + code);
                 String data = null;
 
                 try {
@@ -2579,10 +2980,21 @@ public abstract class AbstractMethod {
                     items.message = "itemNotFound";
                     items.details = "No such object: " + resource;
                 }
-                std.error("putStream(): [" +  code + " : " + items.message + "] " + items.details);
+                std.error("putEntity(): [" +  code + " : " + items.message + "] " + items.details);
                 throw new NovaException(items);
             }
             else {
+                Header etag = response.getFirstHeader("ETag");
+                // what was actually sent wins over what the caller said it was sending
+                String sent = (digest != null ? VerifyingInputStream.toHex(digest.digest()) : md5Hash);
+
+                if( etag != null && sent != null && VerifyingInputStream.isMD5(etag.getValue()) && !etag.getValue().equalsIgnoreCase(sent) ) {
+                    std.error("putEntity(): Cloud stored " + etag.getValue() + " for " + resource + " but sent " + sent);
+                    throw new CloudException(new ChecksumMismatchException(resource, etag.getValue(), sent));
+                }
+                if( verified != null ) {
+                    verified[0] = sent;
+                }
                 if( code == HttpStatus.SC_ACCEPTED ) {
                     String data = null;
 
@@ -2610,11 +3022,10 @@ public abstract class AbstractMethod {
             }
         }
         finally {
-            if (client != null) {
-                client.getConnectionManager().shutdown();
-            }
+            release(response);
+            MetadataCache.invalidate(endpoint, resource);
             if( std.isTraceEnabled() ) {
-                std.trace("exit - " + NovaOpenStack.class.getName() + ".putStream()");
+                std.trace("exit - " + NovaOpenStack.class.getName() + ".putEntity()");
             }
             if( wire.isDebugEnabled() ) {
                 wire.debug("");
@@ -2710,6 +3121,64 @@ public abstract class AbstractMethod {
 		return result;
 	}
 
+    /**
+     * Parses a Keystone token expiry such as <code>2014-11-20T12:34:56Z</code>,
+     * <code>2014-11-20T12:34:56.000000Z</code> or <code>2014-11-20T14:34:56+02:00</code>. A value without a zone is
+     * taken to be UTC.
+     * @param expires the expiry reported by Keystone
+     * @return the expiry in milliseconds since the epoch, or 0 if it could not be parsed
+     */
+    static long toExpiry(@Nonnull String expires) {
+        String value = expires.trim();
+        int idx = value.indexOf('.');
+
+        if( idx > -1 ) {
+            int end = idx + 1;
+
+            while( end < value.length() && Character.isDigit(value.charAt(end)) ) {
+                end++;
+            }
+            value = value.substring(0, idx) + value.substring(end);
+        }
+        long offset = 0L;
+
+        if( value.endsWith("Z") ) {
+            value = value.substring(0, value.length()-1);
+        }
+        else if( value.length() > 19 ) {
+            // an explicit offset such as +02:00, +0200 or +02
+            String zone = value.substring(19).replace(":", "");
+            char sign = zone.charAt(0);
+
+            if( (sign != '+' && sign != '-') || (zone.length() != 3 && zone.length() != 5) ) {
+                NovaOpenStack.getLogger(NovaOpenStack.class, "std").warn("Unable to parse token expiry: " + expires);
+                return 0L;
+            }
+            try {
+                int hours = Integer.parseInt(zone.substring(1, 3));
+                int minutes = (zone.length() == 5 ? Integer.parseInt(zone.substring(3, 5)) : 0);
+
+                offset = (hours * 60L + minutes) * 60000L * (sign == '-' ? -1L : 1L);
+            }
+            catch( NumberFormatException e ) {
+                NovaOpenStack.getLogger(NovaOpenStack.class, "std").warn("Unable to parse token expiry: " + expires);
+                return 0L;
+            }
+            value = value.substring(0, 19);
+        }
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            // local time at a zone ahead of UTC is later than the same wall clock time in UTC
+            return fmt.parse(value).getTime() - offset;
+        }
+        catch( ParseException e ) {
+            NovaOpenStack.getLogger(NovaOpenStack.class, "std").warn("Unable to parse token expiry: " + expires);
+            return 0L;
+        }
+    }
+
     private @Nonnull String toAPIResource(@Nonnull String resource) {
         if( resource == null || resource.equals("/") || resource.length() < 2 ) {
             return resource;
@@ -22,10 +22,15 @@ package org.dasein.cloud.openstack.nova.os;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.dasein.cloud.dc.Jurisdiction;
 import org.dasein.cloud.dc.Region;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,22 +38,35 @@ import javax.annotation.Nullable;
 public class AuthenticationContext { 
     private String                         authToken;
     private Map<String,Map<String,String>> endpoints;
+    private long                           expires;
     private String                         myRegion;
     private String                         storageToken;
     private String                         tenantId;
 
     public AuthenticationContext(@Nonnull String regionId, @Nonnull String token, @Nonnull String tenantId, @Nonnull Map<String,Map<String,String>> services, @Nullable String storageToken) {
+        this(regionId, token, tenantId, services, storageToken, 0L);
+    }
+
+    public AuthenticationContext(@Nonnull String regionId, @Nonnull String token, @Nonnull String tenantId, @Nonnull Map<String,Map<String,String>> services, @Nullable String storageToken, long expires) {
         myRegion = regionId;
         authToken = token;
         endpoints = services;
         this.tenantId = tenantId;
         this.storageToken = storageToken;
+        this.expires = expires;
     }
 
     public @Nonnull String getAuthToken() {
         return authToken;
     }
     
+    /**
+     * @return the time at which the cloud will stop honoring this token, or 0 if the cloud did not say
+     */
+    public long getExpires() {
+        return expires;
+    }
+
     public @Nullable String getComputeUrl() {
         Map<String,String> map = endpoints.get("compute");
         
@@ -107,6 +125,28 @@ public class AuthenticationContext {
         return endpoint;
     }
     
+    /**
+     * Identifies the catalog service whose endpoint the specified URL belongs to.
+     * @param endpoint an endpoint URL
+     * @return the catalog service name, or <code>null</code> if the endpoint is not in the catalog
+     */
+    public @Nullable String getServiceName(@Nonnull String endpoint) {
+        for( Map.Entry<String,Map<String,String>> service : endpoints.entrySet() ) {
+            for( String url : service.getValue().values() ) {
+                if( url == null ) {
+                    continue;
+                }
+                if( url.endsWith("/") ) {
+                    url = url.substring(0, url.length()-1);
+                }
+                if( endpoint.startsWith(url) ) {
+                    return service.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
     public @Nonnull Collection<Region> listRegions() {
         Map<String,String> map = endpoints.get("compute");
         
@@ -130,4 +170,63 @@ public class AuthenticationContext {
         }
         return regions;
     }
+
+    /**
+     * Captures this context, token and service catalog included, in a form {@link #fromJSON(JSONObject)} restores.
+     * @return the captured context
+     * @throws JSONException the context could not be represented as JSON
+     */
+    public @Nonnull JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        JSONObject services = new JSONObject();
+
+        for( Map.Entry<String,Map<String,String>> service : endpoints.entrySet() ) {
+            JSONArray urls = new JSONArray();
+
+            for( Map.Entry<String,String> url : service.getValue().entrySet() ) {
+                JSONArray pair = new JSONArray();
+
+                // catalog entries without a region are kept under a null key
+                pair.put(url.getKey() == null ? JSONObject.NULL : url.getKey());
+                pair.put(url.getValue() == null ? JSONObject.NULL : url.getValue());
+                urls.put(pair);
+            }
+            services.put(service.getKey(), urls);
+        }
+        json.put("region", myRegion);
+        json.put("token", authToken);
+        json.put("tenantId", tenantId);
+        json.put("storageToken", storageToken == null ? JSONObject.NULL : storageToken);
+        json.put("expires", expires);
+        json.put("services", services);
+        return json;
+    }
+
+    /**
+     * Restores a context captured by {@link #toJSON()}.
+     * @param json the captured context
+     * @return the restored context
+     * @throws JSONException the JSON is not a captured context
+     */
+    static public @Nonnull AuthenticationContext fromJSON(@Nonnull JSONObject json) throws JSONException {
+        HashMap<String,Map<String,String>> services = new HashMap<String, Map<String, String>>();
+        JSONObject catalog = json.getJSONObject("services");
+        Iterator<?> names = catalog.keys();
+
+        while( names.hasNext() ) {
+            String name = (String)names.next();
+            JSONArray urls = catalog.getJSONArray(name);
+            HashMap<String,String> map = new HashMap<String, String>();
+
+            for( int i=0; i<urls.length(); i++ ) {
+                JSONArray pair = urls.getJSONArray(i);
+
+                map.put(pair.isNull(0) ? null : pair.getString(0), pair.isNull(1) ? null : pair.getString(1));
+            }
+            services.put(name, map);
+        }
+        String storageToken = (json.isNull("storageToken") ? null : json.getString("storageToken"));
+
+        return new AuthenticationContext(json.getString("region"), json.getString("token"), json.getString("tenantId"), services, storageToken, json.getLong("expires"));
+    }
 }
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.util.CalendarWrapper;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Holds the current authentication token for each provider context. At most one authentication is in flight per
+ * context: threads that need a token while another thread is fetching one wait for and share its result. Tokens are
+ * replaced ahead of the <code>expires</code> time reported by Keystone; tokens without a known expiry are kept for a
+ * day, as before.
+ * <p>
+ * The token is published as an immutable snapshot, so reading a cached token takes no lock. Only re-authentication
+ * is serialized, and while a token that is due for refresh has not yet expired, threads other than the one
+ * refreshing it keep using it rather than wait.
+ * </p>
+ * <p>
+ * When {@link #WARM_START_CREDENTIALS} is <code>true</code> and a {@link WarmStartStore} is configured, tokens and
+ * their service catalog are also written to the store so that a new JVM can reuse them until they are due for
+ * refresh. The store then holds live bearer tokens, so this is off by default.
+ * </p>
+ */
+public class AuthenticationManager {
+    static private final Logger logger = NovaOpenStack.getLogger(AuthenticationManager.class, "std");
+
+    /**
+     * How long before a token's reported expiry it is replaced.
+     */
+    static public final long REFRESH_WINDOW   = CalendarWrapper.MINUTE * 5L;
+    /**
+     * How long a token with no reported expiry is used before it is replaced.
+     */
+    static public final long DEFAULT_LIFETIME = CalendarWrapper.DAY;
+
+    static public final String WARM_START_CREDENTIALS = "warmStartCredentials";
+
+    static class Token {
+        public final AuthenticationContext context;
+        public final long                  refreshAt;
+        public final long                  expiresAt;
+
+        public Token(@Nonnull AuthenticationContext context, long refreshAt, long expiresAt) {
+            this.context = context;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    static class Entry {
+        public final String                 key;
+        public final AtomicReference<Token> current = new AtomicReference<Token>();
+        public final ReentrantLock          lock    = new ReentrantLock();
+
+        public Entry(@Nonnull String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Obtains and persists the tokens of one context on behalf of the manager, which only decides when to ask.
+     */
+    static interface Authenticator {
+        public @Nullable AuthenticationContext restore();
+
+        public @Nullable AuthenticationContext authenticate() throws CloudException, InternalException;
+
+        public void store(@Nonnull AuthenticationContext auth, long ttl);
+    }
+
+    static private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Provides a valid authentication context for the provider's current context, authenticating if no token is
+     * held or the held token is about to expire.
+     * @param provider the provider whose context is being authenticated
+     * @return a valid authentication context
+     * @throws CloudException the cloud rejected the credentials or failed to authenticate
+     * @throws InternalException an error occurred within Dasein Cloud while authenticating
+     */
+    static public @Nonnull AuthenticationContext getAuthenticationContext(@Nonnull final NovaOpenStack provider) throws CloudException, InternalException {
+        return getAuthenticationContext(getEntry(provider), new Authenticator() {
+            public @Nullable AuthenticationContext restore() {
+                return AuthenticationManager.restore(provider);
+            }
+
+            public @Nullable AuthenticationContext authenticate() throws CloudException, InternalException {
+                return new NovaMethod(provider).authenticate();
+            }
+
+            public void store(@Nonnull AuthenticationContext auth, long ttl) {
+                AuthenticationManager.store(provider, auth, ttl);
+            }
+        });
+    }
+
+    static @Nonnull AuthenticationContext getAuthenticationContext(@Nonnull Entry entry, @Nonnull Authenticator authenticator) throws CloudException, InternalException {
+        Token token = entry.current.get();
+        long now = System.currentTimeMillis();
+
+        if( token != null && now < token.refreshAt ) {
+            return token.context;
+        }
+        if( token != null && now < token.expiresAt ) {
+            // due for refresh but still good; let whoever is already refreshing finish without waiting on them
+            if( !entry.lock.tryLock() ) {
+                return token.context;
+            }
+        }
+        else {
+            entry.lock.lock();
+        }
+        try {
+            Token latest = entry.current.get();
+
+            if( latest != null && latest != token && System.currentTimeMillis() < latest.refreshAt ) {
+                return latest.context;
+            }
+            if( latest == null ) {
+                AuthenticationContext stored = authenticator.restore();
+
+                if( stored != null ) {
+                    latest = toToken(stored);
+                    if( System.currentTimeMillis() < latest.refreshAt ) {
+                        entry.current.set(latest);
+                        return stored;
+                    }
+                }
+            }
+            AuthenticationContext auth = authenticator.authenticate();
+
+            if( auth == null ) {
+                NovaException.ExceptionItems items = new NovaException.ExceptionItems();
+
+                items.code = HttpStatus.SC_UNAUTHORIZED;
+                items.type = CloudErrorType.AUTHENTICATION;
+                items.message = "unauthorized";
+                items.details = "The API keys failed to authenticate with the specified endpoint.";
+                throw new NovaException(items);
+            }
+            latest = toToken(auth);
+            entry.current.set(latest);
+            authenticator.store(auth, latest.expiresAt - System.currentTimeMillis());
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Authenticated " + entry.key + ", refreshing at " + latest.refreshAt);
+            }
+            return auth;
+        }
+        finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Provides the token currently held for the provider's context without ever authenticating.
+     * @param provider the provider whose context is being checked
+     * @return the current authentication context, or <code>null</code> if none is held
+     */
+    static public @Nullable AuthenticationContext getCurrentContext(@Nonnull NovaOpenStack provider) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            return null;
+        }
+        Entry entry = entries.get(toKey(ctx));
+        Token token = (entry == null ? null : entry.current.get());
+
+        return (token == null ? null : token.context);
+    }
+
+    /**
+     * Discards the specified token after the cloud rejected it. Nothing happens if the token has already been
+     * replaced, so many threads failing on the same token trigger a single re-authentication.
+     * @param provider the provider whose context was rejected
+     * @param stale the authentication context whose token the cloud rejected
+     * @throws CloudException no context is set for the provider
+     */
+    static public void invalidate(@Nonnull NovaOpenStack provider, @Nonnull AuthenticationContext stale) throws CloudException {
+        if( invalidate(getEntry(provider), stale) && isWarmStart(provider) ) {
+            WarmStartStore.remove(provider.getContext(), "authentication");
+        }
+    }
+
+    static boolean invalidate(@Nonnull Entry entry, @Nonnull AuthenticationContext stale) {
+        Token token = entry.current.get();
+
+        return (token != null && token.context.getAuthToken().equals(stale.getAuthToken()) && entry.current.compareAndSet(token, null));
+    }
+
+    /**
+     * Discards every token held, forcing re-authentication on the next request for any context.
+     */
+    static public void clear() {
+        entries.clear();
+    }
+
+    static private @Nonnull Entry getEntry(@Nonnull NovaOpenStack provider) throws CloudException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context was set for this request");
+        }
+        return getEntry(toKey(ctx));
+    }
+
+    static @Nonnull Entry getEntry(@Nonnull String key) {
+        Entry entry = entries.get(key);
+
+        if( entry == null ) {
+            Entry created = new Entry(key);
+
+            entry = entries.putIfAbsent(key, created);
+            if( entry == null ) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    static private boolean isWarmStart(@Nonnull NovaOpenStack provider) {
+        ProviderContext ctx = provider.getContext();
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+
+        return (p != null && "true".equalsIgnoreCase(p.getProperty(WARM_START_CREDENTIALS)) && WarmStartStore.isEnabled(ctx));
+    }
+
+    static private @Nullable AuthenticationContext restore(@Nonnull NovaOpenStack provider) {
+        if( !isWarmStart(provider) ) {
+            return null;
+        }
+        String stored = WarmStartStore.get(provider.getContext(), "authentication", 1);
+
+        if( stored == null ) {
+            return null;
+        }
+        try {
+            return AuthenticationContext.fromJSON(new JSONObject(stored));
+        }
+        catch( JSONException e ) {
+            logger.warn("Ignoring unreadable warm start credentials: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static private void store(@Nonnull NovaOpenStack provider, @Nonnull AuthenticationContext auth, long ttl) {
+        if( !isWarmStart(provider) ) {
+            return;
+        }
+        try {
+            WarmStartStore.put(provider.getContext(), "authentication", 1, auth.toJSON().toString(), ttl);
+        }
+        catch( JSONException e ) {
+            logger.warn("Unable to store warm start credentials: " + e.getMessage());
+        }
+    }
+
+    static private @Nonnull String toKey(@Nonnull ProviderContext ctx) {
+        return ctx.getEndpoint() + "|" + ctx.getAccountNumber() + "|" + ctx.getRegionId();
+    }
+
+    static @Nonnull Token toToken(@Nonnull AuthenticationContext auth) {
+        long now = System.currentTimeMillis();
+        long expires = auth.getExpires();
+
+        if( expires < 1L ) {
+            return new Token(auth, now + DEFAULT_LIFETIME, now + DEFAULT_LIFETIME);
+        }
+        if( expires <= now ) {
+            // our clock disagrees with Keystone's; rely on a 401 to tell us when the token is really gone
+            return new Token(auth, now + REFRESH_WINDOW, now + REFRESH_WINDOW);
+        }
+        // refresh ahead of expiry, but never sooner than halfway through a short-lived token
+        return new Token(auth, Math.max(expires - REFRESH_WINDOW, now + ((expires - now) / 2)), expires);
+    }
+}
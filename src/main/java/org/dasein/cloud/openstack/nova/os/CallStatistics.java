@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Running totals and histograms for the calls made against one service, resource template and verb. Latencies are
+ * bucketed on a fixed millisecond scale, so percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class CallStatistics implements CallStatisticsMBean {
+    static private final long[] LATENCY_BUCKETS = { 10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L, 30000L, 60000L };
+    static private final long[] SIZE_BUCKETS    = { 1024L, 10240L, 102400L, 1048576L, 10485760L, 104857600L };
+
+    private String service;
+    private String template;
+    private String verb;
+
+    private final AtomicLong                           count        = new AtomicLong();
+    private final AtomicLong                           errors       = new AtomicLong();
+    private final AtomicLong                           unauthorized = new AtomicLong();
+    private final AtomicLong                           retries      = new AtomicLong();
+    private final AtomicLong                           totalBytes   = new AtomicLong();
+    private final AtomicLong                           totalLatency = new AtomicLong();
+    private final AtomicLong                           maxLatency   = new AtomicLong();
+    private final AtomicLongArray                      latencies    = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final AtomicLongArray                      sizes        = new AtomicLongArray(SIZE_BUCKETS.length + 1);
+    private final ConcurrentHashMap<Integer,AtomicLong> statuses     = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    public CallStatistics(@Nonnull String service, @Nonnull String template, @Nonnull String verb) {
+        this.service = service;
+        this.template = template;
+        this.verb = verb;
+    }
+
+    public void record(int status, @Nonnegative long latency, long bytes) {
+        count.incrementAndGet();
+        if( status == 0 || status >= 400 ) {
+            errors.incrementAndGet();
+        }
+        if( status == 401 ) {
+            unauthorized.incrementAndGet();
+        }
+        totalLatency.addAndGet(latency);
+        latencies.incrementAndGet(toBucket(LATENCY_BUCKETS, latency));
+        long max = maxLatency.get();
+
+        while( latency > max && !maxLatency.compareAndSet(max, latency) ) {
+            max = maxLatency.get();
+        }
+        if( bytes > -1L ) {
+            totalBytes.addAndGet(bytes);
+            sizes.incrementAndGet(toBucket(SIZE_BUCKETS, bytes));
+        }
+        AtomicLong c = statuses.get(status);
+
+        if( c == null ) {
+            AtomicLong created = new AtomicLong();
+
+            c = statuses.putIfAbsent(status, created);
+            if( c == null ) {
+                c = created;
+            }
+        }
+        c.incrementAndGet();
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    @Override
+    public @Nonnull String getService() {
+        return service;
+    }
+
+    @Override
+    public @Nonnull String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public @Nonnull String getVerb() {
+        return verb;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getUnauthorized() {
+        return unauthorized.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        long c = count.get();
+
+        return (c == 0L ? 0.0 : ((double)totalLatency.get())/c);
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    /**
+     * @param percentile the percentile sought, between 0 and 100
+     * @return the upper bound in milliseconds of the latency bucket holding the requested percentile
+     */
+    @Override
+    public long getLatencyPercentile(double percentile) {
+        return getPercentile(latencies, LATENCY_BUCKETS, percentile, maxLatency.get());
+    }
+
+    /**
+     * @param percentile the percentile sought, between 0 and 100
+     * @return the upper bound in bytes of the response size bucket holding the requested percentile
+     */
+    public long getSizePercentile(double percentile) {
+        return getPercentile(sizes, SIZE_BUCKETS, percentile, Long.MAX_VALUE);
+    }
+
+    @Override
+    public @Nonnull Map<Integer,Long> getStatusCounts() {
+        TreeMap<Integer,Long> counts = new TreeMap<Integer, Long>();
+
+        for( Map.Entry<Integer,AtomicLong> entry : statuses.entrySet() ) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        count.set(0L);
+        errors.set(0L);
+        unauthorized.set(0L);
+        retries.set(0L);
+        totalBytes.set(0L);
+        totalLatency.set(0L);
+        maxLatency.set(0L);
+        for( int i=0; i<latencies.length(); i++ ) {
+            latencies.set(i, 0L);
+        }
+        for( int i=0; i<sizes.length(); i++ ) {
+            sizes.set(i, 0L);
+        }
+        statuses.clear();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return verb + " " + service + template + " [count=" + getCount() + ", errors=" + getErrors() + ", retries=" + getRetries() + ", mean=" + Math.round(getMeanLatency()) + "ms, p95=" + getLatencyPercentile(95.0) + "ms, bytes=" + getTotalBytes() + "]";
+    }
+
+    static private int toBucket(@Nonnull long[] bounds, long value) {
+        for( int i=0; i<bounds.length; i++ ) {
+            if( value <= bounds[i] ) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    static private long getPercentile(@Nonnull AtomicLongArray buckets, @Nonnull long[] bounds, double percentile, long overflow) {
+        long total = 0L;
+
+        for( int i=0; i<buckets.length(); i++ ) {
+            total += buckets.get(i);
+        }
+        if( total == 0L ) {
+            return 0L;
+        }
+        long target = (long)Math.ceil(total * (percentile/100.0));
+        long seen = 0L;
+
+        for( int i=0; i<buckets.length(); i++ ) {
+            seen += buckets.get(i);
+            if( seen >= target ) {
+                return (i < bounds.length ? bounds[i] : overflow);
+            }
+        }
+        return overflow;
+    }
+}
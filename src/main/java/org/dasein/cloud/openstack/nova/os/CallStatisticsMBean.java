@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link CallStatistics} for one service, resource template and verb.
+ */
+public interface CallStatisticsMBean {
+    public String getService();
+
+    public String getTemplate();
+
+    public String getVerb();
+
+    public long getCount();
+
+    public long getErrors();
+
+    public long getUnauthorized();
+
+    public long getRetries();
+
+    public long getTotalBytes();
+
+    public double getMeanLatency();
+
+    public long getMaxLatency();
+
+    public long getLatencyPercentile(double percentile);
+
+    public Map<Integer,Long> getStatusCounts();
+
+    public void reset();
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The outcome of bringing a {@link DeltaSnapshot} up to date: the resources that appeared, the resources that
+ * changed, the IDs of those that went away and the full set of resources as they now stand.
+ * @param <T> the type of resource being synchronized
+ */
+public class ChangeSet<T> {
+    private List<T>      created;
+    private List<String> deleted;
+    private boolean      full;
+    private List<T>      resources;
+    private List<T>      updated;
+
+    public ChangeSet(boolean full, @Nonnull List<T> created, @Nonnull List<T> updated, @Nonnull List<String> deleted, @Nonnull List<T> resources) {
+        this.full = full;
+        this.created = Collections.unmodifiableList(created);
+        this.updated = Collections.unmodifiableList(updated);
+        this.deleted = Collections.unmodifiableList(deleted);
+        this.resources = Collections.unmodifiableList(resources);
+    }
+
+    /**
+     * @return the resources seen for the first time in this sync
+     */
+    public @Nonnull List<T> getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the IDs of the resources that no longer exist
+     */
+    public @Nonnull List<String> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return every resource in the snapshot after this sync
+     */
+    public @Nonnull List<T> getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the resources that changed since the previous sync
+     */
+    public @Nonnull List<T> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return true if nothing was created, updated or deleted
+     */
+    public boolean isEmpty() {
+        return (created.isEmpty() && updated.isEmpty() && deleted.isEmpty());
+    }
+
+    /**
+     * @return true if this sync listed the whole collection rather than only what changed
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (full ? "full" : "delta") + " [created=" + created.size() + ",updated=" + updated.size() + ",deleted=" + deleted.size() + ",total=" + resources.size() + "]";
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The MD5 of the bytes actually sent or received did not match the <code>ETag</code> reported by the cloud. Downloads
+ * raise it from the stream being read; uploads raise it as the cause of a {@link org.dasein.cloud.CloudException}.
+ */
+public class ChecksumMismatchException extends IOException {
+    private static final long serialVersionUID = -2486094237127355329L;
+
+    private String resource;
+    private String expected;
+    private String actual;
+
+    public ChecksumMismatchException(@Nonnull String resource, @Nonnull String expected, @Nonnull String actual) {
+        super("MD5 mismatch for " + resource + ": cloud reported " + expected + ", data hashed to " + actual);
+        this.resource = resource;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    /**
+     * @return the MD5 of the data as it was hashed locally
+     */
+    public @Nonnull String getActual() {
+        return actual;
+    }
+
+    /**
+     * @return the MD5 reported by the cloud in the <code>ETag</code>
+     */
+    public @Nonnull String getExpected() {
+        return expected;
+    }
+
+    /**
+     * @return the resource whose data did not match
+     */
+    public @Nonnull String getResource() {
+        return resource;
+    }
+}
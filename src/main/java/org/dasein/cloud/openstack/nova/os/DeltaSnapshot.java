@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A locally maintained copy of a collection of resources in one account, endpoint and region that is brought up to
+ * date incrementally. Each resource is
+ * held alongside a fingerprint of the raw data it was converted from, so a sync only converts the resources whose
+ * fingerprint changed. The snapshot also remembers when its last sync started so the next one can ask the cloud for
+ * only what changed since then, less {@link #CHANGES_SINCE_SKEW} seconds to allow for the local and cloud clocks
+ * disagreeing. A full listing is forced every {@link #FULL_SYNC_INTERVAL} seconds, an hour by default, to catch
+ * anything a delta could miss.
+ * <p>
+ * Every sync reports the changes since the previous sync of the same snapshot, so snapshots are kept per consumer as
+ * well as per context: two consumers sharing one snapshot would each see only the changes the other had not already
+ * collected. A consumer is named by the caller, and its snapshots outlive any one provider instance, so a new
+ * connection for the same consumer picks up where the last one left off.
+ * </p>
+ * @param <T> the type of resource held in the snapshot
+ */
+public class DeltaSnapshot<T> {
+    static private final Logger logger = NovaOpenStack.getLogger(DeltaSnapshot.class, "std");
+
+    static public final String FULL_SYNC_INTERVAL = "fullSyncInterval";
+    static public final String CHANGES_SINCE_SKEW = "changesSinceSkew";
+
+    static private final long DEFAULT_FULL_SYNC_INTERVAL = 3600L;
+    static private final long DEFAULT_CHANGES_SINCE_SKEW = 300L;
+
+    static private class Entry<T> {
+        public String fingerprint;
+        public T      resource;
+
+        public Entry(@Nonnull String fingerprint, @Nonnull T resource) {
+            this.fingerprint = fingerprint;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * Collects what a single listing found before it is applied to the snapshot.
+     * @param <T> the type of resource held in the snapshot
+     */
+    static public class Sync<T> {
+        private LinkedHashMap<String,Entry<T>> changed = new LinkedHashMap<String, Entry<T>>();
+        private HashSet<String>                deleted = new HashSet<String>();
+        private boolean                        full;
+        private HashSet<String>                seen    = new HashSet<String>();
+        private long                           started = System.currentTimeMillis();
+
+        /**
+         * Starts collecting a listing. Create the sync immediately before making the listing request, since its
+         * creation time becomes the starting point of the next delta.
+         * @param full true if the listing covers the whole collection, so anything not seen has gone away
+         */
+        public Sync(boolean full) {
+            this.full = full;
+        }
+
+        /**
+         * Records a resource whose data differs from what the snapshot holds.
+         * @param id the ID of the resource
+         * @param fingerprint the fingerprint of its raw data
+         * @param resource the converted resource
+         */
+        public void changed(@Nonnull String id, @Nonnull String fingerprint, @Nonnull T resource) {
+            seen.add(id);
+            changed.put(id, new Entry<T>(fingerprint, resource));
+        }
+
+        /**
+         * Records a resource reported as deleted.
+         * @param id the ID of the resource
+         */
+        public void deleted(@Nonnull String id) {
+            deleted.add(id);
+        }
+
+        public boolean isFull() {
+            return full;
+        }
+
+        /**
+         * Records a resource whose data matches what the snapshot holds.
+         * @param id the ID of the resource
+         */
+        public void unchanged(@Nonnull String id) {
+            seen.add(id);
+        }
+    }
+
+    /**
+     * Converts the raw JSON of a resource into its Dasein form.
+     * @param <T> the type of resource held in the snapshot
+     */
+    static public interface Converter<T> {
+        public @Nullable T convert(@Nonnull JSONObject json) throws CloudException, InternalException, JSONException;
+    }
+
+    /**
+     * The consumer whose snapshots the sync methods use when the caller names none.
+     */
+    static public final String DEFAULT_CONSUMER = "default";
+
+    static private final HashMap<String,DeltaSnapshot<?>> snapshots = new HashMap<String, DeltaSnapshot<?>>();
+
+    /**
+     * Provides a consumer's snapshot of the named collection in the context's account, endpoint and region.
+     * @param ctx the context whose resources are being synchronized
+     * @param consumer the name of the consumer, which must differ between callers that sync independently
+     * @param collection the name of the collection, such as <code>servers</code>
+     * @param <T> the type of resource held in the snapshot
+     * @return the consumer's snapshot
+     * @throws InternalException no context exists for the request
+     */
+    static public @Nonnull <T> DeltaSnapshot<T> getInstance(@Nullable ProviderContext ctx, @Nonnull String consumer, @Nonnull String collection) throws InternalException {
+        if( ctx == null ) {
+            throw new InternalException("No context exists for this request");
+        }
+        return getInstance(consumer, collection, ctx.getEndpoint(), ctx.getAccountNumber(), ctx.getRegionId(), getFullSyncInterval(ctx), getChangesSinceSkew(ctx));
+    }
+
+    @SuppressWarnings("unchecked")
+    static @Nonnull <T> DeltaSnapshot<T> getInstance(@Nonnull String consumer, @Nonnull String collection, @Nullable String endpoint, @Nullable String account, @Nullable String region, @Nonnegative long fullSyncInterval, @Nonnegative long skew) {
+        String key = consumer + "|" + collection + "|" + endpoint + "|" + account + "|" + region;
+
+        synchronized( snapshots ) {
+            DeltaSnapshot<T> snapshot = (DeltaSnapshot<T>)snapshots.get(key);
+
+            if( snapshot == null ) {
+                snapshot = new DeltaSnapshot<T>(collection, fullSyncInterval, skew);
+                snapshots.put(key, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    private final String                         collection;
+    private final LinkedHashMap<String,Entry<T>> entries = new LinkedHashMap<String, Entry<T>>();
+    private final long                           fullSyncInterval;
+    private final long                           skew;
+    private long                                 lastFull;
+    private String                               since;
+
+    DeltaSnapshot(@Nonnull String collection, @Nonnegative long fullSyncInterval, @Nonnegative long skew) {
+        this.collection = collection;
+        this.fullSyncInterval = fullSyncInterval;
+        this.skew = skew;
+    }
+
+    /**
+     * Applies a listing to the snapshot.
+     * @param sync what the listing found
+     * @return the changes the listing made to the snapshot
+     */
+    public synchronized @Nonnull ChangeSet<T> apply(@Nonnull Sync<T> sync) {
+        ArrayList<T> created = new ArrayList<T>();
+        ArrayList<T> updated = new ArrayList<T>();
+        ArrayList<String> deleted = new ArrayList<String>();
+
+        for( Map.Entry<String,Entry<T>> change : sync.changed.entrySet() ) {
+            Entry<T> previous = entries.put(change.getKey(), change.getValue());
+
+            if( previous == null ) {
+                created.add(change.getValue().resource);
+            }
+            else {
+                updated.add(change.getValue().resource);
+            }
+        }
+        for( String id : sync.deleted ) {
+            if( !sync.seen.contains(id) && entries.remove(id) != null ) {
+                deleted.add(id);
+            }
+        }
+        if( sync.full ) {
+            Iterator<String> it = entries.keySet().iterator();
+
+            while( it.hasNext() ) {
+                String id = it.next();
+
+                if( !sync.seen.contains(id) ) {
+                    it.remove();
+                    deleted.add(id);
+                }
+            }
+            lastFull = sync.started;
+        }
+        since = toTimestamp(sync.started - skew);
+        ArrayList<T> resources = new ArrayList<T>();
+
+        for( Entry<T> entry : entries.values() ) {
+            resources.add(entry.resource);
+        }
+        ChangeSet<T> changes = new ChangeSet<T>(sync.full, created, updated, deleted, resources);
+
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Synchronized " + collection + ": " + changes);
+        }
+        return changes;
+    }
+
+    /**
+     * @return the collection this snapshot holds
+     */
+    public @Nonnull String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return every resource currently in the snapshot
+     */
+    public synchronized @Nonnull ArrayList<T> getResources() {
+        ArrayList<T> resources = new ArrayList<T>();
+
+        for( Entry<T> entry : entries.values() ) {
+            resources.add(entry.resource);
+        }
+        return resources;
+    }
+
+    /**
+     * @return the time from which the next delta should start, as an ISO 8601 UTC timestamp, or <code>null</code> if
+     * the next sync should list the whole collection
+     */
+    public synchronized @Nullable String getSince() {
+        if( since == null || System.currentTimeMillis() - lastFull >= fullSyncInterval ) {
+            return null;
+        }
+        return since;
+    }
+
+    /**
+     * Provides a handler that feeds a streamed listing into a sync, converting only the resources whose fingerprint
+     * differs from what the snapshot holds. Resources listed with a status of <code>DELETED</code>, as
+     * <code>changes-since</code> reports them, are recorded as deleted.
+     * @param sync the sync collecting the listing
+     * @param converter the conversion for changed resources
+     * @return the handler
+     */
+    public @Nonnull JSONStreamParser.Handler newHandler(@Nonnull final Sync<T> sync, @Nonnull final Converter<T> converter) {
+        return new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject json) throws CloudException, InternalException, JSONException {
+                if( !json.has("id") ) {
+                    return;
+                }
+                String id = json.getString("id");
+
+                if( "DELETED".equalsIgnoreCase(json.optString("status")) ) {
+                    sync.deleted(id);
+                    return;
+                }
+                String fingerprint = toFingerprint(json);
+
+                if( isCurrent(id, fingerprint) ) {
+                    sync.unchanged(id);
+                }
+                else {
+                    T resource = converter.convert(json);
+
+                    if( resource != null ) {
+                        sync.changed(id, fingerprint, resource);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @param id the ID of a resource
+     * @param fingerprint the fingerprint of the resource's current raw data
+     * @return true if the snapshot already holds the resource as converted from identical data
+     */
+    public synchronized boolean isCurrent(@Nonnull String id, @Nonnull String fingerprint) {
+        Entry<T> entry = entries.get(id);
+
+        return (entry != null && entry.fingerprint.equals(fingerprint));
+    }
+
+    /**
+     * Discards the snapshot so that the next sync lists the whole collection and reports everything as created.
+     */
+    public synchronized void reset() {
+        entries.clear();
+        since = null;
+        lastFull = 0L;
+    }
+
+    /**
+     * Summarizes the raw JSON of a resource as its status, its change time and a hash of the whole document, which
+     * catches changes the cloud makes without touching the change time.
+     * @param json the raw resource
+     * @return the fingerprint
+     */
+    static public @Nonnull String toFingerprint(@Nonnull JSONObject json) {
+        String updated = (json.has("updated_at") ? json.optString("updated_at") : json.optString("updated"));
+
+        return json.optString("status") + "|" + updated + "|" + Integer.toHexString(json.toString().hashCode());
+    }
+
+    static private @Nonnull String toTimestamp(long time) {
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fmt.format(new Date(time));
+    }
+
+    static private long getChangesSinceSkew(@Nonnull ProviderContext ctx) {
+        return NovaOpenStack.getNumericProperty(ctx, CHANGES_SINCE_SKEW, DEFAULT_CHANGES_SINCE_SKEW, 0L) * 1000L;
+    }
+
+    static private long getFullSyncInterval(@Nonnull ProviderContext ctx) {
+        return NovaOpenStack.getNumericProperty(ctx, FULL_SYNC_INTERVAL, DEFAULT_FULL_SYNC_INTERVAL, 1L) * 1000L;
+    }
+}
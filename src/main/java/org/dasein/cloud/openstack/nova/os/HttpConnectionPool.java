@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.ProviderContext;
+
+/**
+ * Keep-alive connection pools shared by every {@link AbstractMethod} issued against the same endpoint and
+ * provider context. Each pool is sized from the custom properties {@link #MAX_CONNECTIONS_PER_ROUTE} and
+ * {@link #MAX_CONNECTIONS}, and connections idle longer than {@link #IDLE_CONNECTION_TIMEOUT} seconds are
+ * evicted by a single background thread. A request waits at most {@link #CONNECTION_ACQUIRE_TIMEOUT} seconds for a
+ * connection from an exhausted pool before failing, so a stalled endpoint cannot block callers indefinitely.
+ */
+public class HttpConnectionPool {
+    static private final Logger logger = NovaOpenStack.getLogger(HttpConnectionPool.class, "std");
+
+    static public final String MAX_CONNECTIONS            = "maxConnections";
+    static public final String MAX_CONNECTIONS_PER_ROUTE  = "maxConnectionsPerRoute";
+    static public final String IDLE_CONNECTION_TIMEOUT    = "idleConnectionTimeout";
+    static public final String CONNECTION_ACQUIRE_TIMEOUT = "connectionAcquireTimeout";
+
+    static private final int  DEFAULT_MAX_CONNECTIONS            = 100;
+    static private final int  DEFAULT_MAX_CONNECTIONS_PER_ROUTE  = 20;
+    static private final long DEFAULT_IDLE_CONNECTION_TIMEOUT    = 30L;
+    static private final long DEFAULT_CONNECTION_ACQUIRE_TIMEOUT = 60L;
+
+    static private class Pool {
+        public PoolingClientConnectionManager manager;
+        public long                           idleSeconds;
+    }
+
+    static private final HashMap<String,Pool> pools = new HashMap<String, Pool>();
+    static private Thread                     evictor;
+
+    static public @Nonnull ClientConnectionManager getConnectionManager(@Nonnull NovaOpenStack provider) throws CloudException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context was defined for this request");
+        }
+        boolean insecure = provider.isInsecure();
+        String key = ctx.getEndpoint() + "|" + ctx.getAccountNumber() + "|" + ctx.getRegionId() + "|" + insecure;
+
+        synchronized( pools ) {
+            Pool pool = pools.get(key);
+
+            if( pool == null ) {
+                pool = new Pool();
+                pool.manager = new PoolingClientConnectionManager(getSchemeRegistry(insecure));
+                pool.manager.setMaxTotal((int)NovaOpenStack.getNumericProperty(ctx, MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS, 1L));
+                pool.manager.setDefaultMaxPerRoute((int)NovaOpenStack.getNumericProperty(ctx, MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, 1L));
+                pool.idleSeconds = NovaOpenStack.getNumericProperty(ctx, IDLE_CONNECTION_TIMEOUT, DEFAULT_IDLE_CONNECTION_TIMEOUT, 1L);
+                pools.put(key, pool);
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Created connection pool for " + key + " (total=" + pool.manager.getMaxTotal() + ", perRoute=" + pool.manager.getDefaultMaxPerRoute() + ", idle=" + pool.idleSeconds + "s)");
+                }
+                startEvictor();
+            }
+            return pool.manager;
+        }
+    }
+
+    /**
+     * Provides how long a request may wait for a pooled connection when every connection to its route is in use.
+     * @param ctx the context of the request
+     * @return the wait in milliseconds
+     */
+    static public long getAcquireTimeout(@Nonnull ProviderContext ctx) {
+        return NovaOpenStack.getNumericProperty(ctx, CONNECTION_ACQUIRE_TIMEOUT, DEFAULT_CONNECTION_ACQUIRE_TIMEOUT, 1L) * 1000L;
+    }
+
+    /**
+     * Closes every pooled connection. Pools are recreated lazily on the next request.
+     */
+    static public void shutdown() {
+        ArrayList<Pool> list;
+
+        synchronized( pools ) {
+            list = new ArrayList<Pool>(pools.values());
+            pools.clear();
+        }
+        for( Pool pool : list ) {
+            pool.manager.shutdown();
+        }
+    }
+
+    static private @Nonnull SchemeRegistry getSchemeRegistry(boolean insecure) {
+        SchemeRegistry registry = SchemeRegistryFactory.createDefault();
+
+        if( insecure ) {
+            try {
+                registry.register(new Scheme("https", 443, new SSLSocketFactory(new TrustStrategy() {
+
+                    public boolean isTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+                        return true;
+                    }
+                }, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+            }
+            catch( Throwable t ) {
+                t.printStackTrace();
+            }
+        }
+        return registry;
+    }
+
+    static private void startEvictor() {
+        if( evictor != null ) {
+            return;
+        }
+        evictor = new Thread() {
+            public void run() {
+                while( true ) {
+                    try { Thread.sleep(5000L); }
+                    catch( InterruptedException e ) { return; }
+                    ArrayList<Pool> list;
+
+                    synchronized( pools ) {
+                        list = new ArrayList<Pool>(pools.values());
+                    }
+                    for( Pool pool : list ) {
+                        try {
+                            pool.manager.closeExpiredConnections();
+                            pool.manager.closeIdleConnections(pool.idleSeconds, TimeUnit.SECONDS);
+                        }
+                        catch( Throwable t ) {
+                            logger.warn("Failed to evict idle connections: " + t.getMessage());
+                        }
+                    }
+                }
+            }
+        };
+        evictor.setName("Nova Idle Connection Evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+    }
+}
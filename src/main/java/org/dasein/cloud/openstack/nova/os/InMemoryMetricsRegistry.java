@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The default {@link MetricsRegistry}, which keeps a {@link CallStatistics} for every service, resource template and
+ * verb seen. Statistics can be read with {@link #getStatistics()} or, once {@link #setJmxEnabled(boolean)} has been
+ * called (or the <code>metricsJmx</code> system property set to <code>true</code>), browsed as MBeans under the
+ * {@link #JMX_DOMAIN} domain.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+    static private final Logger logger = NovaOpenStack.getLogger(InMemoryMetricsRegistry.class, "std");
+
+    static public final String JMX_DOMAIN = "org.dasein.cloud.openstack.nova";
+
+    private final ConcurrentHashMap<String,CallStatistics> statistics = new ConcurrentHashMap<String, CallStatistics>();
+    private volatile boolean                               jmx        = "true".equalsIgnoreCase(System.getProperty("metricsJmx"));
+
+    @Override
+    public void recordCall(@Nonnull String service, @Nonnull String template, @Nonnull String verb, int status, @Nonnegative long latency, long bytes) {
+        getOrCreate(service, template, verb).record(status, latency, bytes);
+    }
+
+    @Override
+    public void recordRetry(@Nonnull String service, @Nonnull String template, @Nonnull String verb) {
+        getOrCreate(service, template, verb).recordRetry();
+    }
+
+    /**
+     * @return the statistics for every call recorded so far
+     */
+    public @Nonnull Collection<CallStatistics> getStatistics() {
+        return new ArrayList<CallStatistics>(statistics.values());
+    }
+
+    /**
+     * @param service the catalog service
+     * @param template the resource template
+     * @param verb the HTTP verb
+     * @return the statistics for the specified call, or <code>null</code> if no such call has been made
+     */
+    public @Nullable CallStatistics getStatistics(@Nonnull String service, @Nonnull String template, @Nonnull String verb) {
+        return statistics.get(verb + " " + service + template);
+    }
+
+    /**
+     * Zeroes every statistic while leaving any JMX registrations in place.
+     */
+    public void reset() {
+        for( CallStatistics stats : statistics.values() ) {
+            stats.reset();
+        }
+    }
+
+    public boolean isJmxEnabled() {
+        return jmx;
+    }
+
+    /**
+     * Turns the JMX export on or off, registering or unregistering an MBean for every call seen so far.
+     * @param enabled true to export statistics over JMX
+     */
+    public synchronized void setJmxEnabled(boolean enabled) {
+        if( enabled == jmx ) {
+            return;
+        }
+        jmx = enabled;
+        for( CallStatistics stats : statistics.values() ) {
+            if( enabled ) {
+                register(stats);
+            }
+            else {
+                unregister(stats);
+            }
+        }
+    }
+
+    private @Nonnull CallStatistics getOrCreate(@Nonnull String service, @Nonnull String template, @Nonnull String verb) {
+        String key = verb + " " + service + template;
+        CallStatistics stats = statistics.get(key);
+
+        if( stats == null ) {
+            CallStatistics created = new CallStatistics(service, template, verb);
+
+            stats = statistics.putIfAbsent(key, created);
+            if( stats == null ) {
+                stats = created;
+                if( jmx ) {
+                    register(stats);
+                }
+            }
+        }
+        return stats;
+    }
+
+    private void register(@Nonnull CallStatistics stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = toObjectName(stats);
+
+            if( !server.isRegistered(name) ) {
+                server.registerMBean(stats, name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to register JMX statistics for " + stats.getVerb() + " " + stats.getService() + stats.getTemplate() + ": " + t.getMessage());
+        }
+    }
+
+    private void unregister(@Nonnull CallStatistics stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = toObjectName(stats);
+
+            if( server.isRegistered(name) ) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to unregister JMX statistics for " + stats.getVerb() + " " + stats.getService() + stats.getTemplate() + ": " + t.getMessage());
+        }
+    }
+
+    private @Nonnull ObjectName toObjectName(@Nonnull CallStatistics stats) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=CallStatistics,service=" + ObjectName.quote(stats.getService()) + ",verb=" + stats.getVerb() + ",template=" + ObjectName.quote(stats.getTemplate()));
+    }
+}
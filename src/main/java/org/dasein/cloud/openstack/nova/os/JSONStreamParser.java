@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.io.Reader;
+
+import javax.annotation.Nonnull;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Pulls the members of a single collection out of an OpenStack list response (<code>{"servers": [ {...}, ... ],
+ * "servers_links": [...]}</code>) one element at a time, straight off the wire. Only the element currently being
+ * converted is held in memory; every other top-level member is collected into a small envelope object so callers
+ * can still read pagination links. Responses that are a bare array, such as Swift listings, are streamed with
+ * {@link #parseArray(Reader, Handler)}.
+ */
+public class JSONStreamParser {
+    /**
+     * Receives each element of the streamed collection as soon as it has been parsed.
+     */
+    static public interface Handler {
+        public void handle(@Nonnull JSONObject item) throws CloudException, InternalException, JSONException;
+    }
+
+    /**
+     * Parses a JSON object from the specified reader, handing every element of the named array member to the
+     * handler as it is read.
+     * @param reader the source of the JSON text
+     * @param collection the name of the top-level array to stream
+     * @param handler the handler receiving each element of the array
+     * @return an object holding all other top-level members of the response
+     * @throws CloudException the handler failed to process an element
+     * @throws InternalException the handler failed to process an element
+     * @throws JSONException the JSON text was malformed
+     */
+    static public @Nonnull JSONObject parse(@Nonnull Reader reader, @Nonnull String collection, @Nonnull Handler handler) throws CloudException, InternalException, JSONException {
+        JSONTokener x = new JSONTokener(reader);
+        JSONObject envelope = new JSONObject();
+
+        if( x.nextClean() != '{' ) {
+            throw x.syntaxError("A JSONObject text must begin with '{'");
+        }
+        while( true ) {
+            char c = x.nextClean();
+            String key;
+
+            switch( c ) {
+                case 0: throw x.syntaxError("A JSONObject text must end with '}'");
+                case '}': return envelope;
+                default:
+                    x.back();
+                    key = x.nextValue().toString();
+            }
+            c = x.nextClean();
+            if( c == '=' ) {
+                if( x.next() != '>' ) {
+                    x.back();
+                }
+            }
+            else if( c != ':' ) {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+            if( key.equals(collection) ) {
+                parseArray(x, handler);
+            }
+            else {
+                envelope.put(key, x.nextValue());
+            }
+            switch( x.nextClean() ) {
+                case ';':
+                case ',':
+                    if( x.nextClean() == '}' ) {
+                        return envelope;
+                    }
+                    x.back();
+                    break;
+                case '}': return envelope;
+                default: throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Parses a JSON array from the specified reader, handing every element to the handler as it is read. An empty
+     * body is treated as an empty array.
+     * @param reader the source of the JSON text
+     * @param handler the handler receiving each element of the array
+     * @return the number of elements in the array
+     * @throws CloudException the handler failed to process an element
+     * @throws InternalException the handler failed to process an element
+     * @throws JSONException the JSON text was malformed
+     */
+    static public int parseArray(@Nonnull Reader reader, @Nonnull Handler handler) throws CloudException, InternalException, JSONException {
+        JSONTokener x = new JSONTokener(reader);
+
+        if( x.nextClean() == 0 ) {
+            return 0;
+        }
+        x.back();
+        return parseArray(x, handler);
+    }
+
+    static private int parseArray(@Nonnull JSONTokener x, @Nonnull Handler handler) throws CloudException, InternalException, JSONException {
+        char c = x.nextClean();
+        int count = 0;
+
+        if( c != '[' && c != '(' ) {
+            x.back();
+            Object value = x.nextValue();
+
+            if( value == null || JSONObject.NULL.equals(value) ) {
+                return 0;
+            }
+            throw x.syntaxError("A JSONArray text must start with '['");
+        }
+        if( x.nextClean() == ']' ) {
+            return 0;
+        }
+        x.back();
+        while( true ) {
+            Object value = x.nextValue();
+
+            count++;
+            if( value instanceof JSONObject ) {
+                handler.handle((JSONObject)value);
+            }
+            switch( x.nextClean() ) {
+                case ';':
+                case ',':
+                    if( x.nextClean() == ']' ) {
+                        return count;
+                    }
+                    x.back();
+                    break;
+                case ']':
+                case ')':
+                    return count;
+                default: throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+}
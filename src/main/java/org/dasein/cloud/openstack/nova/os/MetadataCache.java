@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers the result of recent HEAD requests, keyed by endpoint and path, so that repeated existence and size
+ * checks against the same containers and objects do not each cost a round trip. A missing resource is remembered as
+ * well. Each entry records the credentials that fetched it and is only served to requests made with the same ones,
+ * since users sharing an endpoint may not see the same resources. Entries live for {@link #METADATA_CACHE_TTL} seconds; an expired entry with an <code>ETag</code> is
+ * revalidated with <code>If-None-Match</code> rather than simply refetched. The cache holds at most
+ * {@link #METADATA_CACHE_SIZE} entries, dropping the least recently used first.
+ * <p>
+ * Every write or delete made through {@link AbstractMethod} invalidates the entries for its path and for the
+ * containing container and account, whose HEAD results report object counts and sizes.
+ * </p>
+ */
+public class MetadataCache {
+    static private final Logger logger = NovaOpenStack.getLogger(MetadataCache.class, "std");
+
+    static public final String METADATA_CACHE_TTL  = "metadataCacheTtl";
+    static public final String METADATA_CACHE_SIZE = "metadataCacheSize";
+
+    static private final long DEFAULT_METADATA_CACHE_TTL  = 30L;
+    static private final int  DEFAULT_METADATA_CACHE_SIZE = 10000;
+
+    /**
+     * A remembered HEAD result.
+     */
+    static public class Entry {
+        private final Map<String,String> headers;
+        private final String             identity;
+        private final long               expiresAt;
+
+        private Entry(@Nonnull String identity, @Nullable Map<String,String> headers, long expiresAt) {
+            this.identity = identity;
+            this.headers = headers;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return the <code>ETag</code> reported for the resource, or <code>null</code> if it had none
+         */
+        public @Nullable String getETag() {
+            if( headers == null ) {
+                return null;
+            }
+            for( Map.Entry<String,String> header : headers.entrySet() ) {
+                if( header.getKey().equalsIgnoreCase("ETag") ) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return a copy of the remembered headers, or <code>null</code> if the resource did not exist
+         */
+        public @Nullable Map<String,String> getHeaders() {
+            return (headers == null ? null : new HashMap<String, String>(headers));
+        }
+
+        public boolean isExpired() {
+            return (System.currentTimeMillis() >= expiresAt);
+        }
+    }
+
+    static private final int                         maxEntries = (int)NovaOpenStack.getNumericProperty(null, METADATA_CACHE_SIZE, DEFAULT_METADATA_CACHE_SIZE, 1L);
+    static private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        private static final long serialVersionUID = 4129837530192349187L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+            return (size() > maxEntries);
+        }
+    };
+
+    /**
+     * Provides how long HEAD results are kept for the provider's context.
+     * @param provider the provider making the request
+     * @return the lifetime of an entry in milliseconds, or 0 if caching is disabled
+     */
+    static public long getTtl(@Nonnull NovaOpenStack provider) {
+        return NovaOpenStack.getNumericProperty(provider.getContext(), METADATA_CACHE_TTL, DEFAULT_METADATA_CACHE_TTL, 0L) * 1000L;
+    }
+
+    /**
+     * Looks up a remembered HEAD result.
+     * @param identity the credentials of the request, such as its auth token
+     * @param endpoint the endpoint the path belongs to
+     * @param resource the path being checked
+     * @return the entry, or <code>null</code> if nothing was remembered for these credentials
+     */
+    static public @Nullable Entry get(@Nonnull String identity, @Nonnull String endpoint, @Nonnull String resource) {
+        Entry entry;
+
+        synchronized( entries ) {
+            entry = entries.get(toKey(endpoint, resource));
+        }
+        return (entry == null || !entry.identity.equals(identity) ? null : entry);
+    }
+
+    /**
+     * Remembers a HEAD result, replacing whatever was remembered for the path under any credentials.
+     * @param identity the credentials of the request, such as its auth token
+     * @param endpoint the endpoint the path belongs to
+     * @param resource the path that was checked
+     * @param headers the response headers, or <code>null</code> if the resource does not exist
+     * @param ttl the lifetime of the entry in milliseconds
+     */
+    static public void put(@Nonnull String identity, @Nonnull String endpoint, @Nonnull String resource, @Nullable Map<String,String> headers, long ttl) {
+        Entry entry = new Entry(identity, headers == null ? null : new HashMap<String, String>(headers), System.currentTimeMillis() + ttl);
+
+        synchronized( entries ) {
+            entries.put(toKey(endpoint, resource), entry);
+        }
+    }
+
+    /**
+     * Forgets everything known about a path and the container and account holding it. Invalidating the root of an
+     * endpoint forgets everything under it.
+     * @param endpoint the endpoint the path belongs to
+     * @param resource the path that was written or deleted
+     */
+    static public void invalidate(@Nonnull String endpoint, @Nullable String resource) {
+        String path = toPath(resource);
+
+        synchronized( entries ) {
+            if( path.equals("/") ) {
+                Iterator<String> it = entries.keySet().iterator();
+                String prefix = endpoint + "/";
+
+                while( it.hasNext() ) {
+                    if( it.next().startsWith(prefix) ) {
+                        it.remove();
+                    }
+                }
+                return;
+            }
+            entries.remove(endpoint + path);
+            entries.remove(endpoint + "/");
+            int idx = path.indexOf('/', 1);
+
+            if( idx > -1 ) {
+                entries.remove(endpoint + path.substring(0, idx));
+            }
+        }
+    }
+
+    /**
+     * Forgets every remembered HEAD result.
+     */
+    static public void clear() {
+        synchronized( entries ) {
+            entries.clear();
+        }
+    }
+
+    static private @Nonnull String toKey(@Nonnull String endpoint, @Nonnull String resource) {
+        return endpoint + toPath(resource);
+    }
+
+    static private @Nonnull String toPath(@Nullable String resource) {
+        if( resource == null || resource.length() < 1 ) {
+            return "/";
+        }
+        int idx = resource.indexOf('?');
+
+        if( idx > -1 ) {
+            resource = resource.substring(0, idx);
+        }
+        if( !resource.startsWith("/") ) {
+            resource = "/" + resource;
+        }
+        return resource;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Receives a record of every REST call made by {@link AbstractMethod}. Install an implementation with
+ * {@link NovaMetrics#setRegistry(MetricsRegistry)} to feed calls into an external metrics system; the default
+ * {@link InMemoryMetricsRegistry} aggregates them in process.
+ * <p>
+ * Calls are keyed by the catalog service (<code>compute</code>, <code>object-store</code>, ...), a resource template
+ * in which IDs and object names have been replaced with placeholders (<code>/servers/{id}/action</code>), and the
+ * HTTP verb. Implementations are called from every request thread and must be thread safe and cheap.
+ * </p>
+ */
+public interface MetricsRegistry {
+    /**
+     * Records a completed call.
+     * @param service the catalog service the call was made against
+     * @param template the resource template for the call
+     * @param verb the HTTP verb
+     * @param status the HTTP status returned, or 0 if the call failed with an I/O error
+     * @param latency the time in milliseconds from sending the request to receiving the response headers
+     * @param bytes the size of the response body as reported by the cloud, or -1 if unknown
+     */
+    public void recordCall(@Nonnull String service, @Nonnull String template, @Nonnull String verb, int status, @Nonnegative long latency, long bytes);
+
+    /**
+     * Records that a call was rejected as unauthorized and is being retried with a fresh token.
+     * @param service the catalog service the call was made against
+     * @param template the resource template for the call
+     * @param verb the HTTP verb
+     */
+    public void recordRetry(@Nonnull String service, @Nonnull String template, @Nonnull String verb);
+}
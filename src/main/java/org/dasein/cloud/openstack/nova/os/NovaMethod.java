@@ -20,24 +20,68 @@
 package org.dasein.cloud.openstack.nova.os;
 
 import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.openstack.nova.os.ext.hp.cdn.HPCDN;
-import org.dasein.cloud.util.Cache;
-import org.dasein.cloud.util.CacheLevel;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class NovaMethod extends AbstractMethod {
+    static private final Logger logger = NovaOpenStack.getLogger(NovaMethod.class, "std");
+
+    /**
+     * The number of elements requested per page by {@link #streamPages(String, String, String, int, JSONStreamParser.Handler)}.
+     */
+    static public final int DEFAULT_PAGE_SIZE = 1000;
+
     public NovaMethod(NovaOpenStack provider) { super(provider); }
+
+    /**
+     * Identifies the marker for the page following a paginated list response. The marker is taken from the
+     * <code>next</code> entry of the <code>&lt;collection&gt;_links</code> array when the cloud provides one.
+     * @param page the list response
+     * @param collection the name of the collection in the response, such as <code>servers</code>
+     * @param lastId the ID of the last item in the page if the page was full, used when the cloud advertises no links
+     * @return the marker for the next page or <code>null</code> if this was the last page
+     * @throws JSONException the links in the response were malformed
+     */
+    static public @Nullable String getNextMarker(@Nonnull JSONObject page, @Nonnull String collection, @Nullable String lastId) throws JSONException {
+        String key = collection + "_links";
+
+        if( page.has(key) && !page.isNull(key) ) {
+            JSONArray links = page.getJSONArray(key);
+
+            for( int i=0; i<links.length(); i++ ) {
+                JSONObject link = links.getJSONObject(i);
+
+                if( link.has("rel") && link.getString("rel").equals("next") ) {
+                    String href = (link.has("href") ? link.getString("href") : null);
+                    int idx = (href == null ? -1 : href.indexOf("marker="));
+
+                    if( idx > -1 ) {
+                        String marker = href.substring(idx + "marker=".length());
+
+                        idx = marker.indexOf('&');
+                        return (idx > -1 ? marker.substring(0, idx) : marker);
+                    }
+                    return lastId;
+                }
+            }
+            return null;
+        }
+        return lastId;
+    }
     
     public void deleteServers(@Nonnull String resource, @Nonnull String resourceId) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
@@ -50,9 +94,7 @@ public class NovaMethod extends AbstractMethod {
             delete(context.getAuthToken(), endpoint, resource + "/" + resourceId);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 deleteServers(resource, resourceId);
             }
             else {
@@ -75,9 +117,7 @@ public class NovaMethod extends AbstractMethod {
             delete(context.getAuthToken(), endpoint, resource + "/" + resourceId);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 deleteNetworks(resource, resourceId);
             }
             else {
@@ -111,9 +151,7 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 return null; //todo?
             }
             else {
@@ -149,10 +187,116 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return getServers(resource, resourceId, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getServers(resource, null, false);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Streams every page of a collection into the handler, following <code>limit</code> and <code>marker</code> until
+     * the cloud reports no further page. A caller treating the listing as complete, for example to infer deletions
+     * from what is absent, must list through this method rather than trust a single response, which the cloud may
+     * have truncated at its own maximum page size. Paging stops with a warning if the cloud ignores the marker.
+     * @param service the service from the catalog to list from, or <code>null</code> for the compute endpoint
+     * @param resource the resource being listed, optionally with a query string of its own
+     * @param collection the name of the array in each response holding the listed elements
+     * @param pageSize the number of elements to request per page
+     * @param handler the handler receiving each element
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void streamPages(@Nullable String service, @Nonnull String resource, @Nonnull String collection, @Nonnegative int pageSize, @Nonnull final JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        String query = resource + (resource.indexOf('?') > -1 ? "&" : "?") + "limit=" + pageSize;
+        String marker = null;
+
+        do {
+            String page = (marker == null ? query : query + "&marker=" + marker);
+            final String[] last = new String[1];
+            final int[] count = new int[1];
+            JSONStreamParser.Handler counter = new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject item) throws CloudException, InternalException, JSONException {
+                    count[0]++;
+                    if( item.has("id") ) {
+                        last[0] = item.getString("id");
+                    }
+                    handler.handle(item);
+                }
+            };
+            JSONObject ob = (service == null ? streamServers(page, collection, counter) : streamResource(service, page, null, false, collection, counter));
+            String previous = marker;
+
+            try {
+                marker = (ob == null ? null : getNextMarker(ob, collection, count[0] >= pageSize ? last[0] : null));
+            }
+            catch( JSONException e ) {
+                logger.error("streamPages(): Unable to identify expected values in JSON: " + e.getMessage());
+                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for " + collection + "_links in " + page);
+            }
+            if( marker != null && marker.equals(previous) ) {
+                logger.warn("streamPages(): Cloud ignored the paging marker " + marker + " for " + resource + ", stopping");
+                marker = null;
+            }
+        } while( marker != null );
+    }
+
+    /**
+     * Streams the named collection from a compute resource into the handler one element at a time.
+     * @param resource the compute resource being listed, including any query string
+     * @param collection the name of the array in the response holding the listed elements
+     * @param handler the handler receiving each element
+     * @return the remaining top-level members of the response (such as pagination links), or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable JSONObject streamServers(@Nonnull String resource, @Nonnull String collection, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getComputeUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No compute URL has been established in " + context.getMyRegion());
+        }
+        try {
+            return streamJSON(context.getAuthToken(), endpoint, resource, collection, handler);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return streamServers(resource, collection, handler);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Streams the named collection from a network resource into the handler one element at a time.
+     * @param resource the network resource being listed, including any query string
+     * @param collection the name of the array in the response holding the listed elements
+     * @param handler the handler receiving each element
+     * @return the remaining top-level members of the response, or <code>null</code> if the resource does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable JSONObject streamNetworks(@Nonnull String resource, @Nonnull String collection, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getNetworkUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No network URL has been established in " + context.getMyRegion());
+        }
+        if( !endpoint.endsWith("/") && !resource.startsWith("/") ) {
+            endpoint = endpoint+"/";
+        }
+        try {
+            return streamJSON(context.getAuthToken(), endpoint, resource, collection, handler);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return streamNetworks(resource, collection, handler);
             }
             else {
                 throw ex;
@@ -191,10 +335,8 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return getNetworks(resource, resourceId, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getNetworks(resource, null, false);
             }
             else {
                 throw ex;
@@ -217,10 +359,8 @@ public class NovaMethod extends AbstractMethod {
             return postString(context.getAuthToken(), computeEndpoint, resource, body.toString());
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return postServersForString(resource, resourceId, body, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return postServersForString(resource, null, body, false);
             }
             else {
                 throw ex;
@@ -253,10 +393,8 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return postServers(resource, resourceId, body, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return postServers(resource, null, body, false);
             }
             else {
                 throw ex;
@@ -293,10 +431,8 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return postNetworks(resource, resourceId, body, suffix);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return postNetworks(resource, null, body, false);
             }
             else {
                 throw ex;
@@ -304,6 +440,39 @@ public class NovaMethod extends AbstractMethod {
         }
     }
 
+    public @Nonnull Future<Void> deleteServersAsync(@Nonnull final String resource, @Nonnull final String resourceId) throws CloudException, InternalException {
+        return submit("compute", new Callable<Void>() {
+            public Void call() throws CloudException, InternalException {
+                new NovaMethod(provider).deleteServers(resource, resourceId);
+                return null;
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONObject> getServersAsync(@Nonnull final String resource, @Nullable final String resourceId, final boolean suffix) throws CloudException, InternalException {
+        return submit("compute", new Callable<JSONObject>() {
+            public JSONObject call() throws CloudException, InternalException {
+                return new NovaMethod(provider).getServers(resource, resourceId, suffix);
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONObject> getNetworksAsync(@Nonnull final String resource, @Nullable final String resourceId, final boolean suffix) throws CloudException, InternalException {
+        return submit("network", new Callable<JSONObject>() {
+            public JSONObject call() throws CloudException, InternalException {
+                return new NovaMethod(provider).getNetworks(resource, resourceId, suffix);
+            }
+        });
+    }
+
+    public @Nonnull Future<JSONObject> postServersAsync(@Nonnull final String resource, @Nullable final String resourceId, @Nonnull final JSONObject body, final boolean suffix) throws CloudException, InternalException {
+        return submit("compute", new Callable<JSONObject>() {
+            public JSONObject call() throws CloudException, InternalException {
+                return new NovaMethod(provider).postServers(resource, resourceId, body, suffix);
+            }
+        });
+    }
+
     public @Nullable String getHPCDN(@Nullable String resourceId) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getServiceUrl(HPCDN.SERVICE);
@@ -315,9 +484,7 @@ public class NovaMethod extends AbstractMethod {
             return getString(context.getAuthToken(), endpoint, resourceId == null ? "" : ("/" + resourceId));
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 return getHPCDN(resourceId);
             }
             else {
@@ -347,9 +514,7 @@ public class NovaMethod extends AbstractMethod {
             }
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 putHPCDN(container);
             }
             else {
@@ -372,9 +537,7 @@ public class NovaMethod extends AbstractMethod {
             postHeaders(context.getAuthToken(), endpoint, "/" + container, headers);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 postHPCDN(container, headers);
             }
             else {
@@ -394,9 +557,7 @@ public class NovaMethod extends AbstractMethod {
             delete(context.getAuthToken(), endpoint, "/" + container);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 deleteHPCDN(container);
             }
             else {
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Access point for the {@link MetricsRegistry} that {@link AbstractMethod} reports every REST call to. Callers can
+ * read the default registry with <code>((InMemoryMetricsRegistry)NovaMetrics.getRegistry()).getStatistics()</code>
+ * or replace it to forward calls to their own metrics system.
+ */
+public class NovaMetrics {
+    static private volatile MetricsRegistry registry = new InMemoryMetricsRegistry();
+
+    static public @Nonnull MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    static public void setRegistry(@Nonnull MetricsRegistry registry) {
+        NovaMetrics.registry = registry;
+    }
+
+    /**
+     * Reduces a request path to a template in which IDs, names and query strings are replaced by placeholders, so
+     * calls against different instances of the same resource are aggregated together.
+     * @param service the catalog service the request is made against
+     * @param resource the request path relative to the service endpoint
+     * @return the resource template
+     */
+    static public @Nonnull String toTemplate(@Nonnull String service, @Nullable String resource) {
+        if( resource == null || resource.equals("") ) {
+            return "/";
+        }
+        int idx = resource.indexOf('?');
+
+        if( idx > -1 ) {
+            resource = resource.substring(0, idx);
+        }
+        StringBuilder template = new StringBuilder();
+        int segment = 0;
+
+        for( String part : resource.split("/") ) {
+            if( part.equals("") ) {
+                continue;
+            }
+            template.append('/');
+            if( service.equals("object-store") ) {
+                // every path element under a Swift account is a user-chosen container or object name
+                template.append(segment == 0 ? "{container}" : "{object}");
+                if( segment > 0 ) {
+                    break;
+                }
+            }
+            else if( isIdentifier(part) ) {
+                template.append("{id}");
+            }
+            else {
+                template.append(part);
+            }
+            segment++;
+        }
+        return (template.length() == 0 ? "/" : template.toString());
+    }
+
+    static private boolean isIdentifier(@Nonnull String part) {
+        int digits = 0;
+
+        if( part.endsWith(".json") ) {
+            part = part.substring(0, part.length() - 5);
+        }
+        if( part.matches("v[0-9.]+") ) {
+            return false;
+        }
+        for( int i=0; i<part.length(); i++ ) {
+            char c = part.charAt(i);
+
+            if( Character.isDigit(c) ) {
+                digits++;
+            }
+            else if( !Character.isLetter(c) && c != '-' && c != '_' ) {
+                return true;
+            }
+        }
+        // plain words such as "servers", "detail" or "os-floating-ips" are part of the API; anything carrying digits
+        // (numeric IDs, UUIDs, tenant IDs) is treated as an instance
+        return (digits > 0);
+    }
+}
@@ -21,7 +21,6 @@ package org.dasein.cloud.openstack.nova.os;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Properties;
 import java.util.Random;
 
@@ -29,10 +28,8 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.AbstractCloud;
-import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.ContextRequirements;
 import org.dasein.cloud.InternalException;
@@ -46,10 +43,6 @@ import org.dasein.cloud.openstack.nova.os.storage.SwiftStorageServices;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.storage.StorageServices;
 import org.dasein.cloud.util.APITrace;
-import org.dasein.cloud.util.Cache;
-import org.dasein.cloud.util.CacheLevel;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
 
 public class NovaOpenStack extends AbstractCloud {
     static private final Logger logger = getLogger(NovaOpenStack.class, "std");
@@ -97,42 +90,10 @@ public class NovaOpenStack extends AbstractCloud {
     
     public NovaOpenStack() { }
     
-    public synchronized @Nonnull AuthenticationContext getAuthenticationContext() throws CloudException, InternalException {
+    public @Nonnull AuthenticationContext getAuthenticationContext() throws CloudException, InternalException {
         APITrace.begin(this, "Cloud.getAuthenticationContext");
         try {
-            Cache<AuthenticationContext> cache = Cache.getInstance(this, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-            ProviderContext ctx = getContext();
-
-            if( ctx == null ) {
-                throw new CloudException("No context was set for this request");
-            }
-            Iterable<AuthenticationContext> current = cache.get(ctx);
-            AuthenticationContext authenticationContext = null;
-
-            NovaMethod method = new NovaMethod(this);
-
-            if( current != null ) {
-                authenticationContext = current.iterator().next();
-            }
-            else {
-                try {
-                    authenticationContext = method.authenticate();
-                }
-                finally {
-                    if( authenticationContext == null ) {
-                        NovaException.ExceptionItems items = new NovaException.ExceptionItems();
-
-                        items.code = HttpStatus.SC_UNAUTHORIZED;
-                        items.type = CloudErrorType.AUTHENTICATION;
-                        items.message = "unauthorized";
-                        items.details = "The API keys failed to authenticate with the specified endpoint.";
-                        throw new NovaException(items);
-                    }
-                    cache.put(ctx, Collections.singletonList(authenticationContext));
-                    return authenticationContext;
-                }
-            }
-            return authenticationContext;
+            return AuthenticationManager.getAuthenticationContext(this);
         }
         finally {
             APITrace.end();
@@ -330,6 +291,66 @@ public class NovaOpenStack extends AbstractCloud {
         return (value != null && value.equalsIgnoreCase("true"));
     }
 
+    /**
+     * Indicates whether list responses are parsed straight off the wire rather than read into a string and parsed
+     * as a whole. On by default; set the custom property <code>streamJson</code> to <code>false</code> to disable.
+     * @return true if list responses should be streamed
+     */
+    public boolean isStreamingJSON() {
+        ProviderContext ctx = getContext();
+        String value;
+
+        if( ctx == null ) {
+            value = null;
+        }
+        else {
+            Properties p = ctx.getCustomProperties();
+
+            if( p == null ) {
+                value = null;
+            }
+            else {
+                value = p.getProperty("streamJson");
+            }
+        }
+        if( value == null ) {
+            value = System.getProperty("streamJson");
+        }
+        return (value == null || !value.equalsIgnoreCase("false"));
+    }
+
+    /**
+     * Reads a numeric setting from the custom properties of the context, falling back to a system property of the
+     * same name. Values that are not numbers or fall below the minimum are logged and ignored.
+     * @param ctx the context whose custom properties are consulted, if any
+     * @param name the name of the property
+     * @param defaultValue the value used when the property is missing or invalid
+     * @param minimum the smallest acceptable value
+     * @return the value of the setting
+     */
+    static public long getNumericProperty(@Nullable ProviderContext ctx, @Nonnull String name, long defaultValue, long minimum) {
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+        String value = (p == null ? null : p.getProperty(name));
+
+        if( value == null ) {
+            value = System.getProperty(name);
+        }
+        if( value != null ) {
+            try {
+                long v = Long.parseLong(value.trim());
+
+                if( v >= minimum ) {
+                    return v;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the warning below
+            }
+            logger.warn("Ignoring invalid value for " + name + ": " + value);
+        }
+        return defaultValue;
+    }
+
     public boolean isRackspace() {
         return getCloudProvider().equals(OpenStackProvider.RACKSPACE);
     }
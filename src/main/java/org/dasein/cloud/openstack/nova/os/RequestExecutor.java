@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+
+/**
+ * Runs blocking REST calls on a shared worker pool for the <code>*Async</code> verbs of {@link AbstractMethod},
+ * {@link NovaMethod} and {@link SwiftMethod}, and for the concurrent lookups, segments and ranges of the compute and
+ * storage support. This is not a non-blocking engine: every call in flight occupies a worker thread for as long as
+ * the underlying {@link org.apache.http.client.HttpClient} call takes. Calls are queued per service and endpoint, and
+ * at most {@link #MAX_CONCURRENT_REQUESTS} of them (default 20) are in flight in any one queue; only calls waiting in
+ * a queue hold no thread. The limit can be set for a single catalog service with a property such as
+ * <code>maxConcurrentRequests.compute</code> and is read from the submitting provider's context on every submit.
+ * Waiting on many resources at once is done without a thread per resource by {@link Waiter} and
+ * {@link StatusTracker}, which batch their checks.
+ */
+public class RequestExecutor {
+    static private final Logger logger = NovaOpenStack.getLogger(RequestExecutor.class, "std");
+
+    static public final String MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+
+    static private final int DEFAULT_MAX_CONCURRENT_REQUESTS = 20;
+
+    static private class Lane {
+        public int                  active;
+        public int                  limit;
+        public LinkedList<Runnable> queue = new LinkedList<Runnable>();
+    }
+
+    static private final HashMap<String,Lane> lanes   = new HashMap<String, Lane>();
+    static private final ExecutorService      workers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Nova Request " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Queues a call against the specified endpoint. The submitting provider's limit for the service applies to the
+     * queue from this call on.
+     * @param provider the provider making the call
+     * @param service the catalog service being called, which together with the endpoint selects the queue and its limit
+     * @param endpoint the endpoint being called
+     * @param call the call to make
+     * @param <T> the type of result produced by the call
+     * @return a future holding the result of the call
+     */
+    static public @Nonnull <T> Future<T> submit(@Nonnull NovaOpenStack provider, @Nonnull String service, @Nonnull String endpoint, @Nonnull Callable<T> call) {
+        final Lane lane = getLane(service, endpoint);
+        int limit = getLimit(provider, service);
+        final FutureTask<T> task = new FutureTask<T>(call);
+        Runnable r = new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                }
+                finally {
+                    Runnable next;
+
+                    synchronized( lane ) {
+                        next = lane.queue.poll();
+                        if( next == null ) {
+                            lane.active--;
+                        }
+                    }
+                    if( next != null ) {
+                        workers.execute(next);
+                    }
+                }
+            }
+        };
+        LinkedList<Runnable> start = new LinkedList<Runnable>();
+
+        synchronized( lane ) {
+            if( lane.limit != limit && logger.isDebugEnabled() ) {
+                logger.debug("Allowing " + limit + " concurrent " + service + " requests against " + endpoint);
+            }
+            lane.limit = limit;
+            lane.queue.add(r);
+            // a raised limit may let queued calls start along with this one
+            while( lane.active < lane.limit && !lane.queue.isEmpty() ) {
+                lane.active++;
+                start.add(lane.queue.poll());
+            }
+        }
+        for( Runnable next : start ) {
+            workers.execute(next);
+        }
+        return task;
+    }
+
+    /**
+     * Waits for a call submitted through this executor and unwraps any failure into the exception the synchronous
+     * call would have thrown.
+     * @param future the future of the submitted call
+     * @param <T> the type of result produced by the call
+     * @return the result of the call
+     * @throws CloudException the call failed with an error from the cloud
+     * @throws InternalException the call failed within Dasein Cloud or the wait was interrupted
+     */
+    static public @Nullable <T> T await(@Nonnull Future<T> future) throws CloudException, InternalException {
+        try {
+            return future.get();
+        }
+        catch( InterruptedException e ) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( ExecutionException e ) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Waits up to the specified time for a call submitted through this executor. The call is cancelled if it does
+     * not complete in time.
+     * @param future the future of the submitted call
+     * @param timeout the maximum time to wait in milliseconds
+     * @param <T> the type of result produced by the call
+     * @return the result of the call
+     * @throws CloudException the call failed with an error from the cloud
+     * @throws InternalException the call failed within Dasein Cloud, timed out or the wait was interrupted
+     */
+    static public @Nullable <T> T await(@Nonnull Future<T> future, @Nonnegative long timeout) throws CloudException, InternalException {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch( InterruptedException e ) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalException(e);
+        }
+        catch( TimeoutException e ) {
+            future.cancel(true);
+            throw new InternalException("Request did not complete within " + timeout + "ms");
+        }
+        catch( ExecutionException e ) {
+            throw unwrap(e);
+        }
+    }
+
+    static private @Nonnull CloudException unwrap(@Nonnull ExecutionException e) throws InternalException {
+        Throwable t = e.getCause();
+
+        if( t instanceof CloudException ) {
+            return (CloudException)t;
+        }
+        if( t instanceof InternalException ) {
+            throw (InternalException)t;
+        }
+        if( t instanceof RuntimeException ) {
+            throw (RuntimeException)t;
+        }
+        if( t instanceof Error ) {
+            throw (Error)t;
+        }
+        throw new InternalException(t == null ? e : t);
+    }
+
+    static private @Nonnull Lane getLane(@Nonnull String service, @Nonnull String endpoint) {
+        String key = service + "|" + endpoint;
+
+        synchronized( lanes ) {
+            Lane lane = lanes.get(key);
+
+            if( lane == null ) {
+                lane = new Lane();
+                lanes.put(key, lane);
+            }
+            return lane;
+        }
+    }
+
+    static private int getLimit(@Nonnull NovaOpenStack provider, @Nonnull String service) {
+        ProviderContext ctx = provider.getContext();
+        long limit = NovaOpenStack.getNumericProperty(ctx, MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS, 1L);
+
+        return (int)NovaOpenStack.getNumericProperty(ctx, MAX_CONCURRENT_REQUESTS + "." + service, limit, 1L);
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.network.LoadBalancerSupport;
+import org.dasein.cloud.network.VLANSupport;
+
+/**
+ * Tracks the status of many resources of one type with a single list-status call per interval rather than a GET per
+ * resource. Anything interested in a resource subscribes with {@link #watch(String, Listener)} or waits for a target
+ * status with {@link #waitFor(String, Collection, long)}; every change seen in the listing is fanned out to the
+ * subscribers of that resource. There is one tracker per resource type and provider instance, so a tracker always
+ * lists through the provider, and therefore the credentials, of the callers it serves. It only polls while something
+ * is watching, and stops for good once its provider has been discarded. Polling is timed by the shared {@link Waiter} scheduler: the first listing
+ * runs as soon as a tracker starts and later ones every {@link #STATUS_POLL_INTERVAL} seconds. A wait that outlives a
+ * failed tracker is still bounded by its caller, which should always use
+ * {@link RequestExecutor#await(Future, long)} on the future from {@link #waitFor(String, Collection, long)}.
+ */
+public class StatusTracker {
+    static private final Logger logger = NovaOpenStack.getLogger(StatusTracker.class, "std");
+
+    static public final String STATUS_POLL_INTERVAL = "statusPollInterval";
+
+    static private final long DEFAULT_POLL_INTERVAL = 15L;
+
+    public enum ResourceType { VIRTUAL_MACHINE, VOLUME, SNAPSHOT, IMAGE, VLAN, LOAD_BALANCER }
+
+    /**
+     * Receives status changes for a watched resource.
+     */
+    static public interface Listener {
+        /**
+         * @param type the type of the resource
+         * @param resourceId the ID of the resource
+         * @param oldStatus the status previously seen, or <code>null</code> if this is the first sighting
+         * @param newStatus the current status, or <code>null</code> if the resource no longer appears in the listing
+         */
+        public void statusChanged(@Nonnull ResourceType type, @Nonnull String resourceId, @Nullable Object oldStatus, @Nullable Object newStatus);
+    }
+
+    private class Waiting implements Listener {
+        private final long          deadline;
+        private final Collection<?> targets;
+        private volatile Object     status;
+
+        public final FutureTask<Object> future = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() {
+                return status;
+            }
+        });
+
+        public Waiting(@Nonnull Collection<?> targets, long timeout) {
+            this.targets = targets;
+            this.deadline = System.currentTimeMillis() + timeout;
+        }
+
+        public boolean matches(@Nullable Object status) {
+            return (status != null && (targets.isEmpty() || targets.contains(status)));
+        }
+
+        public void statusChanged(@Nonnull ResourceType type, @Nonnull String resourceId, @Nullable Object oldStatus, @Nullable Object newStatus) {
+            if( matches(newStatus) ) {
+                complete(newStatus);
+            }
+        }
+
+        public void complete(@Nullable Object status) {
+            this.status = status;
+            future.run();
+        }
+    }
+
+    static private final WeakHashMap<NovaOpenStack,EnumMap<ResourceType,StatusTracker>> trackers = new WeakHashMap<NovaOpenStack, EnumMap<ResourceType, StatusTracker>>();
+
+    /**
+     * Provides the provider's tracker for resources of the specified type.
+     * @param provider the provider through which status is listed
+     * @param type the type of resource to track
+     * @return the provider's tracker
+     * @throws InternalException no context exists for the provider
+     */
+    static public @Nonnull StatusTracker getInstance(@Nonnull NovaOpenStack provider, @Nonnull ResourceType type) throws InternalException {
+        if( provider.getContext() == null ) {
+            throw new InternalException("No context exists for this request");
+        }
+        synchronized( trackers ) {
+            EnumMap<ResourceType,StatusTracker> owned = trackers.get(provider);
+
+            if( owned == null ) {
+                owned = new EnumMap<ResourceType, StatusTracker>(ResourceType.class);
+                trackers.put(provider, owned);
+            }
+            StatusTracker tracker = owned.get(type);
+
+            if( tracker == null ) {
+                tracker = new StatusTracker(provider, type);
+                owned.put(type, tracker);
+            }
+            return tracker;
+        }
+    }
+
+    private final ResourceType                          type;
+    private final HashMap<String,LinkedList<Listener>>  watchers = new HashMap<String, LinkedList<Listener>>();
+    private final HashMap<String,Object>                statuses = new HashMap<String, Object>();
+    private boolean                                     polling;
+    // weak so that the registry, which holds trackers by their provider, never keeps a provider alive
+    private final WeakReference<NovaOpenStack>          provider;
+
+    private StatusTracker(@Nonnull NovaOpenStack provider, @Nonnull ResourceType type) {
+        this.provider = new WeakReference<NovaOpenStack>(provider);
+        this.type = type;
+    }
+
+    public @Nonnull ResourceType getType() {
+        return type;
+    }
+
+    /**
+     * @param resourceId the ID of a watched resource
+     * @return the status seen in the most recent listing, or <code>null</code> if it has not been seen
+     */
+    public synchronized @Nullable Object getStatus(@Nonnull String resourceId) {
+        return statuses.get(resourceId);
+    }
+
+    /**
+     * Subscribes to the status changes of a resource.
+     * @param resourceId the ID of the resource
+     * @param listener the listener to receive changes
+     */
+    public void watch(@Nonnull String resourceId, @Nonnull Listener listener) {
+        boolean start;
+
+        synchronized( this ) {
+            LinkedList<Listener> list = watchers.get(resourceId);
+
+            if( list == null ) {
+                list = new LinkedList<Listener>();
+                watchers.put(resourceId, list);
+            }
+            list.add(listener);
+            start = !polling;
+            polling = true;
+        }
+        if( start ) {
+            poll();
+        }
+    }
+
+    /**
+     * Cancels a subscription made through {@link #watch(String, Listener)}.
+     * @param resourceId the ID of the resource
+     * @param listener the listener to remove
+     */
+    public synchronized void unwatch(@Nonnull String resourceId, @Nonnull Listener listener) {
+        LinkedList<Listener> list = watchers.get(resourceId);
+
+        if( list != null ) {
+            list.remove(listener);
+            if( list.isEmpty() ) {
+                watchers.remove(resourceId);
+                statuses.remove(resourceId);
+            }
+        }
+    }
+
+    /**
+     * Waits for a resource to show up in the listing with one of the target statuses.
+     * @param resourceId the ID of the resource
+     * @param targets the statuses that end the wait, or an empty collection to end it on any status
+     * @param timeout the longest time to wait in milliseconds
+     * @return a future holding the status reached, or <code>null</code> if the wait timed out
+     */
+    public @Nonnull Future<Object> waitFor(@Nonnull final String resourceId, @Nonnull Collection<?> targets, @Nonnegative long timeout) {
+        final Waiting waiting = new Waiting(targets, timeout);
+        Object current;
+
+        synchronized( this ) {
+            current = statuses.get(resourceId);
+        }
+        if( waiting.matches(current) ) {
+            waiting.complete(current);
+        }
+        else {
+            watch(resourceId, waiting);
+        }
+        return waiting.future;
+    }
+
+    private void poll() {
+        long interval = getInterval();
+
+        // the first check is due at once; the multiplier then takes the interval straight to its maximum
+        Waiter.submit(new Waiter.Check<Boolean>() {
+            public @Nullable Boolean check() {
+                return refresh();
+            }
+        }, new Waiter.Backoff(1L, interval, Long.MAX_VALUE/2, interval, 0.1));
+    }
+
+    private @Nullable Boolean refresh() {
+        Boolean done = null;
+        boolean finished = false;
+
+        try {
+            done = update();
+            finished = true;
+        }
+        finally {
+            if( !finished ) {
+                // let the next watch start a fresh poll instead of trusting one that has died
+                logger.error("Status tracking for " + type + " stopped unexpectedly");
+                synchronized( this ) {
+                    polling = false;
+                }
+            }
+        }
+        return done;
+    }
+
+    private @Nullable Boolean update() {
+        NovaOpenStack provider = this.provider.get();
+
+        if( provider == null ) {
+            return discard();
+        }
+        HashMap<String,Object> current = new HashMap<String, Object>();
+        boolean listed = false;
+
+        try {
+            for( ResourceStatus status : list(provider) ) {
+                current.put(status.getProviderResourceId(), status.getResourceStatus());
+            }
+            listed = true;
+        }
+        catch( CloudException e ) {
+            logger.warn("Unable to list " + type + " status: " + e.getMessage());
+        }
+        catch( InternalException e ) {
+            logger.warn("Unable to list " + type + " status: " + e.getMessage());
+        }
+        catch( RuntimeException e ) {
+            logger.error("Unexpected error listing " + type + " status: " + e.getMessage());
+        }
+        ArrayList<Object[]> events = new ArrayList<Object[]>();
+        long now = System.currentTimeMillis();
+
+        synchronized( this ) {
+            Iterator<Map.Entry<String,LinkedList<Listener>>> it = watchers.entrySet().iterator();
+
+            while( it.hasNext() ) {
+                Map.Entry<String,LinkedList<Listener>> entry = it.next();
+                String id = entry.getKey();
+                LinkedList<Listener> list = entry.getValue();
+                Iterator<Listener> lit = list.iterator();
+
+                while( lit.hasNext() ) {
+                    Listener listener = lit.next();
+
+                    if( listener instanceof Waiting ) {
+                        Waiting waiting = (Waiting)listener;
+
+                        if( waiting.future.isDone() ) {
+                            lit.remove();
+                        }
+                        else if( now >= waiting.deadline && !waiting.matches(current.get(id)) ) {
+                            waiting.complete(null);
+                            lit.remove();
+                        }
+                    }
+                }
+                if( list.isEmpty() ) {
+                    it.remove();
+                    statuses.remove(id);
+                    continue;
+                }
+                if( listed ) {
+                    Object was = statuses.get(id);
+                    Object is = current.get(id);
+
+                    if( was == null ? is != null : !was.equals(is) ) {
+                        if( is == null ) {
+                            statuses.remove(id);
+                        }
+                        else {
+                            statuses.put(id, is);
+                        }
+                        for( Listener listener : list ) {
+                            events.add(new Object[] { listener, id, was, is });
+                        }
+                    }
+                }
+            }
+        }
+        for( Object[] event : events ) {
+            try {
+                ((Listener)event[0]).statusChanged(type, (String)event[1], event[2], event[3]);
+            }
+            catch( RuntimeException e ) {
+                logger.error("Status listener failed for " + type + " " + event[1] + ": " + e.getMessage());
+            }
+        }
+        synchronized( this ) {
+            Iterator<Map.Entry<String,LinkedList<Listener>>> it = watchers.entrySet().iterator();
+
+            while( it.hasNext() ) {
+                Map.Entry<String,LinkedList<Listener>> entry = it.next();
+                Iterator<Listener> lit = entry.getValue().iterator();
+
+                while( lit.hasNext() ) {
+                    Listener listener = lit.next();
+
+                    if( listener instanceof Waiting && ((Waiting)listener).future.isDone() ) {
+                        lit.remove();
+                    }
+                }
+                if( entry.getValue().isEmpty() ) {
+                    it.remove();
+                    statuses.remove(entry.getKey());
+                }
+            }
+            if( watchers.isEmpty() ) {
+                polling = false;
+                return true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Ends every wait and subscription once the provider is gone, since nothing is left to list status through.
+     * @return true, ending the poll
+     */
+    private @Nonnull Boolean discard() {
+        ArrayList<Waiting> waits = new ArrayList<Waiting>();
+
+        synchronized( this ) {
+            for( LinkedList<Listener> list : watchers.values() ) {
+                for( Listener listener : list ) {
+                    if( listener instanceof Waiting ) {
+                        waits.add((Waiting)listener);
+                    }
+                }
+            }
+            watchers.clear();
+            statuses.clear();
+            polling = false;
+        }
+        logger.warn("Stopped tracking " + type + " status: the provider has been discarded");
+        for( Waiting waiting : waits ) {
+            if( !waiting.future.isDone() ) {
+                waiting.complete(null);
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    private @Nonnull Iterable<ResourceStatus> list(@Nonnull NovaOpenStack provider) throws CloudException, InternalException {
+        switch( type ) {
+            case VIRTUAL_MACHINE: return provider.getComputeServices().getVirtualMachineSupport().listVirtualMachineStatus();
+            case VOLUME: return provider.getComputeServices().getVolumeSupport().listVolumeStatus();
+            case SNAPSHOT: return provider.getComputeServices().getSnapshotSupport().listSnapshotStatus();
+            case IMAGE: return provider.getComputeServices().getImageSupport().listImageStatus(ImageClass.MACHINE);
+            case VLAN:
+                VLANSupport vlans = provider.getNetworkServices().getVlanSupport();
+
+                return (vlans == null ? Collections.<ResourceStatus>emptyList() : vlans.listVlanStatus());
+            case LOAD_BALANCER:
+                LoadBalancerSupport lbs = provider.getNetworkServices().getLoadBalancerSupport();
+
+                return (lbs == null ? Collections.<ResourceStatus>emptyList() : lbs.listLoadBalancerStatus());
+        }
+        throw new InternalException("Unknown resource type: " + type);
+    }
+
+    private long getInterval() {
+        NovaOpenStack provider = this.provider.get();
+        ProviderContext ctx = (provider == null ? null : provider.getContext());
+
+        return NovaOpenStack.getNumericProperty(ctx, STATUS_POLL_INTERVAL, DEFAULT_POLL_INTERVAL, 1L) * 1000L;
+    }
+}
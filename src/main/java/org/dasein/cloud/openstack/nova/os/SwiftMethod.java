@@ -20,22 +20,37 @@
 package org.dasein.cloud.openstack.nova.os;
 
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.http.HttpStatus;
+import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
-import org.dasein.cloud.util.Cache;
-import org.dasein.cloud.util.CacheLevel;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 public class SwiftMethod extends AbstractMethod {
+    /**
+     * The most entries Swift returns in a single listing page.
+     */
+    static public final int LIST_LIMIT = 10000;
+    /**
+     * The most paths Swift accepts in a single bulk delete request.
+     */
+    static public final int BULK_DELETE_LIMIT = 10000;
+
     public SwiftMethod(NovaOpenStack provider) { super(provider); }
         
     public void delete(@Nonnull String bucket) throws CloudException, InternalException {
@@ -49,9 +64,7 @@ public class SwiftMethod extends AbstractMethod {
             delete(context.getAuthToken(), endpoint, "/" + bucket);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 delete(bucket);
             }
             else {
@@ -60,6 +73,58 @@ public class SwiftMethod extends AbstractMethod {
         }
     }
     
+    /**
+     * Deletes many objects in a single request through Swift's bulk delete middleware.
+     * @param bucket the container holding the objects
+     * @param objects the names of the objects to delete, at most {@link #BULK_DELETE_LIMIT}
+     * @return the middleware's report, with <code>Number Deleted</code>, <code>Number Not Found</code> and
+     * <code>Errors</code> listing each path that could not be deleted with its status, or <code>null</code> if
+     * the cloud does not support bulk delete
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable JSONObject bulkDelete(@Nonnull String bucket, @Nonnull Collection<String> objects) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        StringBuilder body = new StringBuilder();
+
+        for( String object : objects ) {
+            body.append("/").append(encodePath(bucket)).append("/").append(encodePath(object)).append("\n");
+        }
+        String response;
+
+        try {
+            response = postString(context.getAuthToken(), endpoint, "/?bulk-delete", body.toString(), "text/plain");
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return bulkDelete(bucket, objects);
+            }
+            else if( ex.getHttpCode() == HttpStatus.SC_NOT_FOUND || ex.getHttpCode() == HttpStatus.SC_METHOD_NOT_ALLOWED || ex.getHttpCode() == HttpStatus.SC_NOT_IMPLEMENTED ) {
+                return null;
+            }
+            else {
+                throw ex;
+            }
+        }
+        // without the middleware, the POST lands on the account itself and comes back empty
+        if( response == null || !response.trim().startsWith("{") ) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(response);
+
+            return (json.has("Number Deleted") ? json : null);
+        }
+        catch( JSONException e ) {
+            throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", response);
+        }
+    }
+
     public void delete(@Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
 
@@ -72,9 +137,7 @@ public class SwiftMethod extends AbstractMethod {
             delete(context.getAuthToken(), endpoint, "/" + bucket + "/" + object);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 delete(bucket, object);
             }
             else {
@@ -83,41 +146,135 @@ public class SwiftMethod extends AbstractMethod {
         }
     }
     
+    /**
+     * Lists the names of all containers in the account, or all objects in a container.
+     * @param bucket the container to list, or <code>null</code> to list the containers
+     * @return the names of the listed containers or objects
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
     public @Nonnull List<String> get(@Nullable String bucket) throws CloudException, InternalException {
+        final ArrayList<String> entries = new ArrayList<String>();
+
+        list(bucket, null, null, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject item) throws JSONException {
+                if( item.has("name") ) {
+                    entries.add(item.getString("name"));
+                }
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Lists the containers in the account, or the objects in a container, in Swift's JSON format, following
+     * <code>marker</code> from page to page until the listing is exhausted. Each entry is handed to the handler as it
+     * is read, so only one page is ever in flight. When a delimiter is given, names sharing a prefix up to the
+     * delimiter are rolled up into a single <code>{"subdir": ...}</code> entry rather than listed individually.
+     * @param bucket the container to list, or <code>null</code> to list the containers
+     * @param prefix only list names beginning with this prefix
+     * @param delimiter the character at which names are rolled up into pseudo-directories
+     * @param handler the handler receiving each entry
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void list(@Nullable String bucket, @Nullable String prefix, @Nullable String delimiter, @Nonnull JSONStreamParser.Handler handler) throws CloudException, InternalException {
+        String marker = null;
+
+        do {
+            marker = list(bucket, prefix, delimiter, marker, LIST_LIMIT, handler);
+        } while( marker != null );
+    }
+
+    /**
+     * Lists a single page of containers or objects in Swift's JSON format.
+     * @param bucket the container to list, or <code>null</code> to list the containers
+     * @param prefix only list names beginning with this prefix
+     * @param delimiter the character at which names are rolled up into pseudo-directories
+     * @param marker list only names after this one
+     * @param limit the maximum number of entries to list
+     * @param handler the handler receiving each entry
+     * @return the marker for the next page, or <code>null</code> if this was the last page
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable String list(@Nullable String bucket, @Nullable String prefix, @Nullable String delimiter, @Nullable String marker, int limit, @Nonnull final JSONStreamParser.Handler handler) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getStorageUrl();
 
         if( endpoint == null ) {
             throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
         }
-        try {
-            String response = getString(context.getAuthToken(), endpoint, bucket == null ? "/" : "/" + bucket);
-
-            ArrayList<String> entries = new ArrayList<String>();
+        StringBuilder resource = new StringBuilder();
 
-            if( response != null ) {
-                response = response.trim();
-                if( response.length() > 0 ) {
-                    String[] lines = response.split("\n");
+        resource.append(bucket == null ? "/" : "/" + bucket);
+        resource.append("?format=json&limit=").append(limit);
+        if( prefix != null ) {
+            resource.append("&prefix=").append(encode(prefix));
+        }
+        if( delimiter != null ) {
+            resource.append("&delimiter=").append(encode(delimiter));
+        }
+        if( marker != null ) {
+            resource.append("&marker=").append(encode(marker));
+        }
+        final String[] last = new String[1];
+        int count;
 
-                    if( lines.length < 1 ) {
-                        entries.add(response);
+        try {
+            count = streamJSONArray(context.getAuthToken(), endpoint, resource.toString(), new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject item) throws CloudException, InternalException, JSONException {
+                    if( item.has("name") ) {
+                        last[0] = item.getString("name");
                     }
-                    else {
-                        for( String line : lines ) {
-                            entries.add(line.trim());
-                        }
+                    else if( item.has("subdir") ) {
+                        last[0] = item.getString("subdir");
                     }
-
+                    handler.handle(item);
                 }
+            });
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return list(bucket, prefix, delimiter, marker, limit, handler);
+            }
+            else {
+                throw ex;
             }
-            return entries;
+        }
+        if( count < limit ) {
+            return null;
+        }
+        return last[0];
+    }
+
+    /**
+     * Copies an object within Swift through <code>X-Copy-From</code>, without its content passing through the
+     * client. A large object copied this way is joined into a single object, which Swift refuses beyond 5 GB; use
+     * the storage support's copy, which copies large objects segment by segment, for anything that may be one.
+     * @param sourceBucket the container holding the object to copy
+     * @param sourceObject the name of the object to copy
+     * @param targetBucket the container receiving the copy
+     * @param targetObject the name of the copy
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void copy(@Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        HashMap<String,String> headers = new HashMap<String, String>();
+
+        headers.put("X-Copy-From", "/" + encodePath(sourceBucket) + "/" + encodePath(sourceObject));
+        try {
+            putHeaders(context.getAuthToken(), endpoint, "/" + targetBucket + "/" + targetObject, headers);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return get(bucket);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                copy(sourceBucket, sourceObject, targetBucket, targetObject);
             }
             else {
                 throw ex;
@@ -136,9 +293,7 @@ public class SwiftMethod extends AbstractMethod {
             return getStream(context.getAuthToken(), endpoint, "/" + bucket + "/" + object);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 return get(bucket, object);
             }
             else {
@@ -147,7 +302,67 @@ public class SwiftMethod extends AbstractMethod {
         }
     }
     
-    @SuppressWarnings("unused")
+    /**
+     * Fetches a byte range of an object. Only a <code>206 Partial Content</code> response for the requested range is
+     * accepted; a cloud that answers with the whole object fails the request instead. Callers wanting the whole
+     * object should use {@link #get(String, String)}.
+     * @param bucket the container holding the object
+     * @param object the name of the object
+     * @param from the offset of the first byte to fetch
+     * @param to the offset of the last byte to fetch, inclusive
+     * @return the requested bytes, or <code>null</code> if the object does not exist
+     * @throws CloudException an error occurred with the cloud provider, including the range not being honored
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable InputStream get(@Nonnull String bucket, @Nonnull String object, long from, long to) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        HashMap<String,String> headers = new HashMap<String, String>();
+
+        headers.put("Range", "bytes=" + from + "-" + to);
+        try {
+            return getStream(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, headers, true);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return get(bucket, object, from, to);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Fetches the metadata of the account itself, such as its temp URL keys and usage.
+     * @return the account headers
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable Map<String,String> head() throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        try {
+            return head(context.getAuthToken(), endpoint, "/");
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return head();
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
     public @Nullable Map<String,String> head(@Nonnull String bucket) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getStorageUrl();
@@ -159,9 +374,7 @@ public class SwiftMethod extends AbstractMethod {
             return head(context.getAuthToken(), endpoint, "/" + bucket);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 return head(bucket);
             }
             else {
@@ -171,6 +384,19 @@ public class SwiftMethod extends AbstractMethod {
     }
     
     public @Nullable Map<String,String> head(@Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
+        return head(bucket, object, false);
+    }
+
+    /**
+     * Fetches the metadata of an object.
+     * @param bucket the container holding the object
+     * @param object the name of the object
+     * @param fresh true to bypass {@link MetadataCache}, as a download sized from the result must
+     * @return the object headers, or <code>null</code> if the object does not exist
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable Map<String,String> head(@Nonnull String bucket, @Nonnull String object, boolean fresh) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getStorageUrl();
 
@@ -178,13 +404,11 @@ public class SwiftMethod extends AbstractMethod {
             throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
         }
         try {
-            return head(context.getAuthToken(), endpoint, "/" + bucket + "/" + object);
+            return head(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, fresh);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                return head(bucket, object);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return head(bucket, object, fresh);
             }
             else {
                 throw ex;
@@ -203,9 +427,7 @@ public class SwiftMethod extends AbstractMethod {
             putString(context.getAuthToken(), endpoint, "/" + bucket, null);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
                 put(bucket);
             }
             else {
@@ -213,26 +435,272 @@ public class SwiftMethod extends AbstractMethod {
             }
         }
     }
-    
-    public void put(@Nonnull String bucket, @Nonnull String object, @Nullable String md5Hash, @Nonnull InputStream payload) throws CloudException, InternalException {
+
+    /**
+     * Uploads an object from a stream, hashing it as it is sent. A stream cannot be sent twice, so an upload the
+     * cloud rejects as unauthorized is not retried; the rejected token is discarded and the caller may retry with a
+     * fresh stream.
+     * @param bucket the container receiving the object
+     * @param object the name of the object
+     * @param md5Hash the hex MD5 of the content, sent as the <code>ETag</code> so Swift rejects corruption, or <code>null</code>
+     * @param payload the content of the object
+     * @return the hex MD5 of the content sent, which the cloud confirmed if it reported an <code>ETag</code>
+     * @throws CloudException an error occurred with the cloud provider, including the stored content not matching what was sent
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull String put(@Nonnull String bucket, @Nonnull String object, @Nullable String md5Hash, @Nonnull InputStream payload) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        try {
+            return putVerifiedStream(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, md5Hash, payload);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED ) {
+                // the payload has been consumed, so retrying here would send an empty body
+                AuthenticationManager.invalidate(provider, context);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Uploads an object held in memory with an exact <code>Content-Length</code> and its MD5 as the <code>ETag</code>,
+     * so Swift rejects the object if it arrives corrupted.
+     * @param bucket the container for the object
+     * @param object the name of the object
+     * @param content the content of the object
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void put(@Nonnull String bucket, @Nonnull String object, @Nonnull byte[] content) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        try {
+            putBytes(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, toMD5(content), content);
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                put(bucket, object, content);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Commits a Static Large Object manifest that joins previously uploaded segments into a single object.
+     * @param bucket the container of the large object
+     * @param object the name of the large object
+     * @param segments the segments in order, each with its <code>path</code>, <code>etag</code> and <code>size_bytes</code>
+     * @throws CloudException an error occurred with the cloud provider, including a segment not matching its etag
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void putManifest(@Nonnull String bucket, @Nonnull String object, @Nonnull JSONArray segments) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        try {
+            putString(context.getAuthToken(), endpoint, "/" + bucket + "/" + object + "?multipart-manifest=put", segments.toString());
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                putManifest(bucket, object, segments);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Commits a Dynamic Large Object manifest that serves every object under the segment prefix, in name order, as a
+     * single object.
+     * @param bucket the container of the large object
+     * @param object the name of the large object
+     * @param segmentPrefix the <code>container/prefix</code> under which the segments were uploaded
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void putManifest(@Nonnull String bucket, @Nonnull String object, @Nonnull String segmentPrefix) throws CloudException, InternalException {
         AuthenticationContext context = provider.getAuthenticationContext();
         String endpoint = context.getStorageUrl();
 
         if( endpoint == null ) {
             throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
         }
+        HashMap<String,String> headers = new HashMap<String, String>();
+
+        headers.put("X-Object-Manifest", segmentPrefix);
         try {
-            putStream(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, md5Hash, payload);
+            putHeaders(context.getAuthToken(), endpoint, "/" + bucket + "/" + object, headers);
         }
         catch (NovaException ex) {
-            if (ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED) {
-                Cache<AuthenticationContext> cache = Cache.getInstance(provider, "authenticationContext", AuthenticationContext.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-                cache.clear();
-                put(bucket, object, md5Hash, payload);
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                putManifest(bucket, object, segmentPrefix);
             }
             else {
                 throw ex;
             }
         }
     }
+
+    /**
+     * Fetches the manifest of a Static Large Object rather than its joined content.
+     * @param bucket the container of the large object
+     * @param object the name of the large object
+     * @return the segments in order, each with its <code>name</code> as <code>/container/object</code>, its
+     * <code>hash</code> and its <code>bytes</code>, or <code>null</code> if the object does not exist
+     * @throws CloudException an error occurred with the cloud provider, including the object not being a Static Large Object
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable JSONArray getManifest(@Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        String response;
+
+        try {
+            response = getString(context.getAuthToken(), endpoint, "/" + bucket + "/" + object + "?multipart-manifest=get");
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                return getManifest(bucket, object);
+            }
+            else {
+                throw ex;
+            }
+        }
+        if( response == null ) {
+            return null;
+        }
+        try {
+            return new JSONArray(response);
+        }
+        catch( JSONException e ) {
+            throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Not a large object manifest: " + bucket + "/" + object);
+        }
+    }
+
+    /**
+     * Deletes a Static Large Object together with every segment named in its manifest.
+     * @param bucket the container of the large object
+     * @param object the name of the large object
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void deleteManifest(@Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
+        AuthenticationContext context = provider.getAuthenticationContext();
+        String endpoint = context.getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + context.getMyRegion());
+        }
+        try {
+            delete(context.getAuthToken(), endpoint, "/" + bucket + "/" + object + "?multipart-manifest=delete");
+        }
+        catch (NovaException ex) {
+            if( ex.getHttpCode() == HttpStatus.SC_UNAUTHORIZED && reauthenticate(context) ) {
+                deleteManifest(bucket, object);
+            }
+            else {
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Looks up a response header regardless of the case in which the cloud returned its name.
+     * @param headers the response headers
+     * @param name the name of the header
+     * @return the value of the header, or <code>null</code> if it is not present
+     */
+    static public @Nullable String getHeader(@Nonnull Map<String,String> headers, @Nonnull String name) {
+        for( Map.Entry<String,String> header : headers.entrySet() ) {
+            if( header.getKey() != null && header.getKey().equalsIgnoreCase(name) ) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * URL-encodes each element of a container or object path, leaving the separating slashes in place.
+     * @param path the path to encode
+     * @return the encoded path
+     * @throws InternalException the platform lacks UTF-8 support
+     */
+    static public @Nonnull String encodePath(@Nonnull String path) throws InternalException {
+        String[] parts = path.split("/", -1);
+        StringBuilder encoded = new StringBuilder();
+
+        for( int i=0; i<parts.length; i++ ) {
+            if( i > 0 ) {
+                encoded.append("/");
+            }
+            encoded.append(encode(parts[i]).replace("+", "%20"));
+        }
+        return encoded.toString();
+    }
+
+    static private @Nonnull String toMD5(@Nonnull byte[] content) {
+        return VerifyingInputStream.toHex(VerifyingInputStream.newMD5().digest(content));
+    }
+
+    static private @Nonnull String encode(@Nonnull String value) throws InternalException {
+        try {
+            return URLEncoder.encode(value, "utf-8");
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    public @Nonnull Future<Void> deleteAsync(@Nonnull final String bucket, @Nonnull final String object) throws CloudException, InternalException {
+        return submit("object-store", new Callable<Void>() {
+            public Void call() throws CloudException, InternalException {
+                new SwiftMethod(provider).delete(bucket, object);
+                return null;
+            }
+        });
+    }
+
+    public @Nonnull Future<InputStream> getAsync(@Nonnull final String bucket, @Nonnull final String object) throws CloudException, InternalException {
+        return submit("object-store", new Callable<InputStream>() {
+            public InputStream call() throws CloudException, InternalException {
+                return new SwiftMethod(provider).get(bucket, object);
+            }
+        });
+    }
+
+    public @Nonnull Future<Map<String,String>> headAsync(@Nonnull final String bucket, @Nonnull final String object) throws CloudException, InternalException {
+        return submit("object-store", new Callable<Map<String,String>>() {
+            public Map<String,String> call() throws CloudException, InternalException {
+                return new SwiftMethod(provider).head(bucket, object);
+            }
+        });
+    }
+
+    public @Nonnull Future<Void> putStreamAsync(@Nonnull final String bucket, @Nonnull final String object, @Nullable final String md5Hash, @Nonnull final InputStream payload) throws CloudException, InternalException {
+        return submit("object-store", new Callable<Void>() {
+            public Void call() throws CloudException, InternalException {
+                new SwiftMethod(provider).put(bucket, object, md5Hash, payload);
+                return null;
+            }
+        });
+    }
 }
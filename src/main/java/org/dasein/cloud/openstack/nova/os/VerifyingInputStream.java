@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Hashes a response body with MD5 as it is read and, on reaching the end of the stream, checks the hash against the
+ * <code>ETag</code> the cloud reported for it. A stream closed before its end is not checked. The static helpers are
+ * shared by everything in this provider that hashes content.
+ */
+public class VerifyingInputStream extends FilterInputStream {
+    /**
+     * Decides whether an <code>ETag</code> is a plain MD5 of the body. Large object manifests report a quoted hash
+     * of their segments' hashes, which cannot be checked against the bytes.
+     * @param etag the <code>ETag</code> reported by the cloud
+     * @return true if the value can be compared to an MD5 of the body
+     */
+    static public boolean isMD5(@Nullable String etag) {
+        return (etag != null && etag.matches("[0-9a-fA-F]{32}"));
+    }
+
+    /**
+     * Creates a message digest for MD5, which every JVM is required to provide.
+     * @return a new MD5 digest
+     */
+    static public @Nonnull MessageDigest newMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Formats a digest as lowercase hex, as Swift reports it.
+     * @param digest the raw digest
+     * @return the hex form of the digest
+     */
+    static public @Nonnull String toHex(@Nonnull byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+
+        for( int i=0; i<digest.length; i++ ) {
+            hex[i*2] = HEX[(digest[i] >> 4) & 0x0f];
+            hex[i*2 + 1] = HEX[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    static private final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private MessageDigest digest;
+    private String        etag;
+    private String        resource;
+    private boolean       verified;
+
+    VerifyingInputStream(@Nonnull InputStream in, @Nonnull String etag, @Nonnull String resource) {
+        super(in);
+        this.digest = newMD5();
+        this.etag = etag;
+        this.resource = resource;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+
+        if( b == -1 ) {
+            verify();
+        }
+        else {
+            digest.update((byte)b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] buffer, int off, int len) throws IOException {
+        int count = super.read(buffer, off, len);
+
+        if( count == -1 ) {
+            verify();
+        }
+        else if( count > 0 ) {
+            digest.update(buffer, off, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes still have to be hashed
+        byte[] buffer = new byte[(int)Math.min(8192L, Math.max(n, 1L))];
+        long skipped = 0L;
+
+        while( skipped < n ) {
+            int count = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+
+            if( count == -1 ) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    private void verify() throws ChecksumMismatchException {
+        if( verified ) {
+            return;
+        }
+        verified = true;
+        String actual = toHex(digest.digest());
+
+        if( !actual.equalsIgnoreCase(etag) ) {
+            throw new ChecksumMismatchException(resource, etag, actual);
+        }
+    }
+}
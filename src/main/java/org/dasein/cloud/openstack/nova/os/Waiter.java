@@ -0,0 +1,437 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+/**
+ * Waits for resources to reach a target state without pinning a thread per resource. Every pending wait is timed by
+ * a single scheduler thread; the checks themselves run on a small pool of worker threads. The interval between checks
+ * starts short and grows exponentially up to a ceiling, with random jitter so that waits started together do not
+ * poll in lock step. Waits registered against the same {@link BatchCheck} are coalesced so that every resource due
+ * for a check is covered by one call.
+ */
+public class Waiter {
+    static private final Logger logger = NovaOpenStack.getLogger(Waiter.class, "std");
+
+    /**
+     * Checks whether a single wait is over.
+     * @param <T> the type of result produced once the wait is over
+     */
+    static public interface Check<T> {
+        /**
+         * @return the result once the target state is reached, or <code>null</code> to keep waiting
+         * @throws CloudException an error occurred with the cloud provider, ending the wait
+         * @throws InternalException an error occurred within Dasein Cloud, ending the wait
+         */
+        public @Nullable T check() throws CloudException, InternalException;
+    }
+
+    /**
+     * Checks many waits with a single call, typically a list call.
+     * @param <T> the type of result produced once a wait is over
+     */
+    static public interface BatchCheck<T> {
+        /**
+         * @param ids the IDs of the resources due for a check
+         * @return the results for those resources that have reached their target state; the rest keep waiting
+         * @throws CloudException an error occurred with the cloud provider, ending every wait in the call
+         * @throws InternalException an error occurred within Dasein Cloud, ending every wait in the call
+         */
+        public @Nonnull Map<String,T> check(@Nonnull Collection<String> ids) throws CloudException, InternalException;
+    }
+
+    /**
+     * Describes how often a wait is checked and for how long.
+     */
+    static public class Backoff {
+        private long   initial;
+        private long   maximum;
+        private long   timeout;
+        private double multiplier;
+        private double jitter;
+
+        /**
+         * Doubles the interval after every check with up to 20% jitter.
+         * @param initial the delay before the first check in milliseconds
+         * @param maximum the longest interval between checks in milliseconds
+         * @param timeout how long to wait in total in milliseconds
+         */
+        public Backoff(@Nonnegative long initial, @Nonnegative long maximum, @Nonnegative long timeout) {
+            this(initial, maximum, timeout, 2.0, 0.2);
+        }
+
+        /**
+         * @param initial the delay before the first check in milliseconds
+         * @param maximum the longest interval between checks in milliseconds
+         * @param timeout how long to wait in total in milliseconds
+         * @param multiplier the factor by which the interval grows after each check
+         * @param jitter the fraction of each interval by which the actual delay is randomly moved
+         */
+        public Backoff(@Nonnegative long initial, @Nonnegative long maximum, @Nonnegative long timeout, double multiplier, double jitter) {
+            this.initial = Math.max(1L, initial);
+            this.maximum = Math.max(this.initial, maximum);
+            this.timeout = timeout;
+            this.multiplier = Math.max(1.0, multiplier);
+            this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+        }
+
+        public long getInitial() {
+            return initial;
+        }
+
+        public double getJitter() {
+            return jitter;
+        }
+
+        public long getMaximum() {
+            return maximum;
+        }
+
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        private long next(long interval) {
+            return Math.min(maximum, (long)(interval * multiplier));
+        }
+
+        private long jitter(long interval) {
+            if( jitter <= 0.0 ) {
+                return interval;
+            }
+            double offset = (random.nextDouble() * 2.0 - 1.0) * jitter;
+
+            return Math.max(1L, (long)(interval * (1.0 + offset)));
+        }
+    }
+
+    static private class Pending<T> {
+        public final String  id;
+        public final Backoff backoff;
+        public final long    deadline;
+        public long          interval;
+        public long          due;
+
+        private volatile T         result;
+        private volatile Exception error;
+
+        public final FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                if( error != null ) {
+                    throw error;
+                }
+                return result;
+            }
+        });
+
+        public Pending(@Nonnull String id, @Nonnull Backoff backoff) {
+            long now = System.currentTimeMillis();
+
+            this.id = id;
+            this.backoff = backoff;
+            this.deadline = now + backoff.getTimeout();
+            this.interval = backoff.getInitial();
+            this.due = Math.min(deadline, now + backoff.jitter(interval));
+        }
+
+        public void complete(@Nullable T result) {
+            this.result = result;
+            future.run();
+        }
+
+        public void fail(@Nonnull Exception error) {
+            this.error = error;
+            future.run();
+        }
+    }
+
+    static private class Group<T> implements Runnable {
+        private final BatchCheck<T>            check;
+        private final LinkedList<Pending<T>>   members = new LinkedList<Pending<T>>();
+        private final boolean                  shared;
+        private boolean                        running;
+        private ScheduledFuture<?>             tick;
+        private long                           tickAt;
+
+        public Group(@Nonnull BatchCheck<T> check, boolean shared) {
+            this.check = check;
+            this.shared = shared;
+        }
+
+        public synchronized void add(@Nonnull Pending<T> pending) {
+            members.add(pending);
+            schedule();
+        }
+
+        public synchronized boolean isEmpty() {
+            return members.isEmpty();
+        }
+
+        public void run() {
+            final ArrayList<Pending<T>> due = new ArrayList<Pending<T>>();
+
+            synchronized( this ) {
+                tick = null;
+                if( running ) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                Iterator<Pending<T>> it = members.iterator();
+
+                while( it.hasNext() ) {
+                    Pending<T> p = it.next();
+
+                    if( p.future.isDone() ) {
+                        it.remove();
+                    }
+                    // anything due within half its interval rides along with this call
+                    else if( p.due <= now + p.interval/2 ) {
+                        due.add(p);
+                    }
+                }
+                if( !due.isEmpty() ) {
+                    running = true;
+                }
+                else {
+                    schedule();
+                }
+            }
+            if( due.isEmpty() ) {
+                if( shared ) {
+                    release(this);
+                }
+                return;
+            }
+            checkers.execute(new Runnable() {
+                public void run() {
+                    poll(due);
+                }
+            });
+        }
+
+        private void poll(@Nonnull Collection<Pending<T>> due) {
+            ArrayList<String> ids = new ArrayList<String>();
+            Map<String,T> results = null;
+            Exception error = null;
+
+            for( Pending<T> p : due ) {
+                ids.add(p.id);
+            }
+            try {
+                results = check.check(ids);
+            }
+            catch( CloudException e ) {
+                error = e;
+            }
+            catch( InternalException e ) {
+                error = e;
+            }
+            catch( RuntimeException e ) {
+                logger.error("Unexpected error while waiting on " + ids + ": " + e.getMessage());
+                error = e;
+            }
+            synchronized( this ) {
+                long now = System.currentTimeMillis();
+
+                for( Pending<T> p : due ) {
+                    if( error != null ) {
+                        p.fail(error);
+                        members.remove(p);
+                    }
+                    else if( results.containsKey(p.id) ) {
+                        p.complete(results.get(p.id));
+                        members.remove(p);
+                    }
+                    else if( now >= p.deadline ) {
+                        if( logger.isDebugEnabled() ) {
+                            logger.debug("Timed out waiting on " + p.id);
+                        }
+                        p.complete(null);
+                        members.remove(p);
+                    }
+                    else {
+                        p.interval = p.backoff.next(p.interval);
+                        p.due = Math.min(p.deadline, now + p.backoff.jitter(p.interval));
+                    }
+                }
+                running = false;
+                schedule();
+            }
+            if( shared ) {
+                release(this);
+            }
+        }
+
+        private void schedule() {
+            if( running ) {
+                return;
+            }
+            long next = Long.MAX_VALUE;
+
+            for( Pending<T> p : members ) {
+                if( !p.future.isDone() && p.due < next ) {
+                    next = p.due;
+                }
+            }
+            if( next == Long.MAX_VALUE ) {
+                return;
+            }
+            if( tick != null ) {
+                if( tickAt <= next ) {
+                    return;
+                }
+                tick.cancel(false);
+            }
+            tickAt = next;
+            tick = scheduler.schedule(this, Math.max(0L, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static private final Random random = new Random();
+
+    static private final IdentityHashMap<BatchCheck<?>,Group<?>> groups = new IdentityHashMap<BatchCheck<?>, Group<?>>();
+
+    static private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Nova Waiter");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static private final ExecutorService checkers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Nova Waiter Check " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Starts waiting on a single resource.
+     * @param check the check that decides when the wait is over
+     * @param backoff the schedule of checks
+     * @param <T> the type of result produced once the wait is over
+     * @return a future holding the result of the check, or <code>null</code> if the wait timed out
+     */
+    static public @Nonnull <T> Future<T> submit(@Nonnull final Check<T> check, @Nonnull Backoff backoff) {
+        Group<T> group = new Group<T>(new BatchCheck<T>() {
+            public @Nonnull Map<String, T> check(@Nonnull Collection<String> ids) throws CloudException, InternalException {
+                T result = check.check();
+
+                if( result == null ) {
+                    return Collections.emptyMap();
+                }
+                return Collections.singletonMap(ids.iterator().next(), result);
+            }
+        }, false);
+        Pending<T> pending = new Pending<T>("", backoff);
+
+        group.add(pending);
+        return pending.future;
+    }
+
+    /**
+     * Starts waiting on a resource that is checked together with every other resource waiting on the same batch check.
+     * @param check the batch check that decides when the waits are over
+     * @param id the ID of the resource to wait on
+     * @param backoff the schedule of checks for this resource
+     * @param <T> the type of result produced once the wait is over
+     * @return a future holding the result for this resource, or <code>null</code> if the wait timed out
+     */
+    @SuppressWarnings("unchecked")
+    static public @Nonnull <T> Future<T> submit(@Nonnull BatchCheck<T> check, @Nonnull String id, @Nonnull Backoff backoff) {
+        Pending<T> pending = new Pending<T>(id, backoff);
+
+        synchronized( groups ) {
+            Group<T> group = (Group<T>)groups.get(check);
+
+            if( group == null ) {
+                group = new Group<T>(check, true);
+                groups.put(check, group);
+            }
+            group.add(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Checks once right away and, if the target state is not yet reached, waits for it through the scheduler.
+     * @param check the check that decides when the wait is over
+     * @param backoff the schedule of checks
+     * @param <T> the type of result produced once the wait is over
+     * @return the result of the check, or <code>null</code> if the wait timed out
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud or the wait was interrupted
+     */
+    static public @Nullable <T> T await(@Nonnull Check<T> check, @Nonnull Backoff backoff) throws CloudException, InternalException {
+        T result = check.check();
+
+        if( result != null ) {
+            return result;
+        }
+        return RequestExecutor.await(submit(check, backoff));
+    }
+
+    static private void release(@Nonnull Group<?> group) {
+        synchronized( groups ) {
+            if( groups.get(group.check) == group && group.isEmpty() ) {
+                groups.remove(group.check);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.ProviderContext;
+
+/**
+ * An optional on-disk store of discovery results, such as flavors and volume types, that lets a freshly started JVM
+ * answer those lookups without first repeating the discovery calls. Each record is kept in its own small binary file
+ * keyed by name, endpoint, account and region, and carries an expiry time and a data version; a record that is
+ * expired, was written by a different format or data version, or cannot be read is simply ignored.
+ * <p>
+ * The store is off unless {@link #WARM_START_DIRECTORY} names a directory, either as a custom property or as a system
+ * property. Failures to read or write the store never fail the lookup it backs.
+ * </p>
+ */
+public class WarmStartStore {
+    static private final Logger logger = NovaOpenStack.getLogger(WarmStartStore.class, "std");
+
+    static public final String WARM_START_DIRECTORY = "warmStartDirectory";
+
+    static private final int MAGIC          = 0x4E4F5753;
+    static private final int FORMAT_VERSION = 1;
+
+    /**
+     * Reads a record.
+     * @param ctx the context the record belongs to
+     * @param name the name of the record
+     * @param version the data version the caller understands
+     * @return the stored payload, or <code>null</code> if the store is off or holds no current record
+     */
+    static public @Nullable String get(@Nonnull ProviderContext ctx, @Nonnull String name, int version) {
+        String key = toKey(ctx, name);
+        File file = getFile(ctx, key);
+
+        if( file == null || !file.exists() ) {
+            return null;
+        }
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF()) || in.readInt() != version ) {
+                return null;
+            }
+            if( in.readLong() <= System.currentTimeMillis() ) {
+                return null;
+            }
+            byte[] payload = new byte[in.readInt()];
+
+            in.readFully(payload);
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Warm start from " + file + " for " + key);
+            }
+            return new String(payload, "utf-8");
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to read warm start record " + file + ": " + e.getMessage());
+            return null;
+        }
+        finally {
+            if( in != null ) {
+                try { in.close(); }
+                catch( IOException ignore ) { }
+            }
+        }
+    }
+
+    /**
+     * Writes a record, replacing any previous one atomically. Files are readable by their owner only.
+     * @param ctx the context the record belongs to
+     * @param name the name of the record
+     * @param version the data version of the payload
+     * @param payload the payload to store
+     * @param ttl how long the record remains current in milliseconds
+     */
+    static public void put(@Nonnull ProviderContext ctx, @Nonnull String name, int version, @Nonnull String payload, @Nonnegative long ttl) {
+        String key = toKey(ctx, name);
+        File file = getFile(ctx, key);
+
+        if( file == null || ttl < 1L ) {
+            return;
+        }
+        DataOutputStream out = null;
+        File tmp = null;
+
+        try {
+            byte[] bytes = payload.getBytes("utf-8");
+
+            // a uniquely named file this call created, so concurrent writers in any process never share one
+            tmp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+            tmp.setReadable(false, false);
+            tmp.setReadable(true, true);
+            tmp.setWritable(false, false);
+            tmp.setWritable(true, true);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeInt(version);
+            out.writeLong(System.currentTimeMillis() + ttl);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if( !tmp.renameTo(file) ) {
+                // some platforms refuse to rename over an existing file
+                file.delete();
+                if( !tmp.renameTo(file) ) {
+                    logger.warn("Unable to replace warm start record " + file);
+                }
+            }
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to write warm start record " + file + ": " + e.getMessage());
+        }
+        finally {
+            if( out != null ) {
+                try { out.close(); }
+                catch( IOException ignore ) { }
+            }
+            if( tmp != null && tmp.exists() ) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes a record.
+     * @param ctx the context the record belongs to
+     * @param name the name of the record
+     */
+    static public void remove(@Nonnull ProviderContext ctx, @Nonnull String name) {
+        File file = getFile(ctx, toKey(ctx, name));
+
+        if( file != null && file.exists() && !file.delete() ) {
+            logger.warn("Unable to delete warm start record " + file);
+        }
+    }
+
+    /**
+     * @param ctx the context being checked
+     * @return true if the store is configured for the context
+     */
+    static public boolean isEnabled(@Nonnull ProviderContext ctx) {
+        return (getDirectory(ctx) != null);
+    }
+
+    static private @Nullable File getDirectory(@Nonnull ProviderContext ctx) {
+        Properties p = ctx.getCustomProperties();
+        String path = (p == null ? null : p.getProperty(WARM_START_DIRECTORY));
+
+        if( path == null ) {
+            path = System.getProperty(WARM_START_DIRECTORY);
+        }
+        if( path == null || path.trim().length() < 1 ) {
+            return null;
+        }
+        File dir = new File(path.trim());
+
+        if( !dir.isDirectory() && !dir.mkdirs() ) {
+            logger.warn("Unable to create warm start directory " + dir);
+            return null;
+        }
+        return dir;
+    }
+
+    static private @Nullable File getFile(@Nonnull ProviderContext ctx, @Nonnull String key) {
+        File dir = getDirectory(ctx);
+
+        if( dir == null ) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            return new File(dir, VerifyingInputStream.toHex(digest.digest(key.getBytes("utf-8"))) + ".cache");
+        }
+        catch( NoSuchAlgorithmException e ) {
+            logger.warn("Unable to name warm start record: " + e.getMessage());
+            return null;
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to name warm start record: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static private @Nonnull String toKey(@Nonnull ProviderContext ctx, @Nonnull String name) {
+        return name + "|" + ctx.getEndpoint() + "|" + ctx.getAccountNumber() + "|" + ctx.getRegionId();
+    }
+}
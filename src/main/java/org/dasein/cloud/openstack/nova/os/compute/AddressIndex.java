@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.compute;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.dasein.cloud.network.IpAddress;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.network.VLAN;
+
+/**
+ * The floating addresses and networks a server listing joins each server against. Each list is walked once, when
+ * the index is built, and every later lookup is a hash lookup, so converting a listing costs time linear in the
+ * number of servers rather than in servers times addresses. Where several entries share a key the first one wins,
+ * as it did when each server scanned the lists in order.
+ */
+class AddressIndex {
+    private final HashMap<String,IpAddress> ipv4ByAddress = new HashMap<String, IpAddress>();
+    private final HashMap<String,IpAddress> ipv6ByAddress = new HashMap<String, IpAddress>();
+    private final HashMap<String,IpAddress> ipsByServer   = new HashMap<String, IpAddress>();
+    private final HashMap<String,VLAN>      vlansByName   = new HashMap<String, VLAN>();
+
+    AddressIndex(@Nonnull Iterable<IpAddress> ipv4, @Nonnull Iterable<IpAddress> ipv6, @Nonnull Iterable<VLAN> networks) {
+        index(ipv4, ipv4ByAddress);
+        index(ipv6, ipv6ByAddress);
+        for( VLAN network : networks ) {
+            if( network.getName() != null && !vlansByName.containsKey(network.getName()) ) {
+                vlansByName.put(network.getName(), network);
+            }
+        }
+    }
+
+    private void index(@Nonnull Iterable<IpAddress> addresses, @Nonnull Map<String,IpAddress> byAddress) {
+        for( IpAddress addr : addresses ) {
+            RawAddress raw = addr.getRawAddress();
+            String serverId = addr.getServerId();
+
+            if( raw != null && raw.getIpAddress() != null && !byAddress.containsKey(raw.getIpAddress()) ) {
+                byAddress.put(raw.getIpAddress(), addr);
+            }
+            if( serverId != null && !ipsByServer.containsKey(serverId) ) {
+                ipsByServer.put(serverId, addr);
+            }
+        }
+    }
+
+    @Nullable IpAddress getIpv4(@Nonnull String address) {
+        return ipv4ByAddress.get(address);
+    }
+
+    @Nullable IpAddress getIpv6(@Nonnull String address) {
+        return ipv6ByAddress.get(address);
+    }
+
+    /**
+     * @param serverId the ID of a server
+     * @return the first IPv4 or, failing that, IPv6 address assigned to the server
+     */
+    @Nullable IpAddress getByServer(@Nonnull String serverId) {
+        return ipsByServer.get(serverId);
+    }
+
+    @Nullable VLAN getNetwork(@Nonnull String name) {
+        return vlansByName.get(name);
+    }
+}
@@ -32,6 +32,9 @@ import org.dasein.cloud.compute.SnapshotCreateOptions;
 import org.dasein.cloud.compute.SnapshotFilterOptions;
 import org.dasein.cloud.compute.SnapshotState;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.openstack.nova.os.ChangeSet;
+import org.dasein.cloud.openstack.nova.os.DeltaSnapshot;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
 import org.dasein.cloud.openstack.nova.os.NovaMethod;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
 import org.dasein.cloud.util.APITrace;
@@ -214,28 +217,17 @@ public class CinderSnapshot extends AbstractSnapshotSupport {
         APITrace.begin(getProvider(), "Snapshot.listSnapshots");
         try {
             NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
-
-            JSONObject json = method.getResource(SERVICE, getResource(), null, false);
+            final ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
 
-            if( json != null && json.has("snapshots") ) {
-                try {
-                    JSONArray list = json.getJSONArray("snapshots");
+            method.streamResource(SERVICE, getResource(), null, false, "snapshots", new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject json) throws CloudException, InternalException {
+                    Snapshot snapshot = toSnapshot(json);
 
-                    for( int i=0; i<list.length(); i++ ) {
-                        Snapshot snapshot = toSnapshot(list.getJSONObject(i));
-
-                        if( snapshot != null ) {
-                            snapshots.add(snapshot);
-                        }
+                    if( snapshot != null ) {
+                        snapshots.add(snapshot);
                     }
                 }
-                catch( JSONException e ) {
-                    logger.error("listSnapshots(): Unable to identify expected values in JSON: " + e.getMessage());
-                    e.printStackTrace();
-                    throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for snapshots in " + json.toString());
-                }
-            }
+            });
             return snapshots;
         }
         finally {
@@ -243,6 +235,47 @@ public class CinderSnapshot extends AbstractSnapshotSupport {
         }
     }
 
+    /**
+     * Brings the locally maintained snapshot of this account's volume snapshots up to date and reports what changed.
+     * Cinder offers no <code>changes-since</code> filter, so the collection is listed in full, but only snapshots
+     * whose fingerprint differs from the local copy are converted. Syncs the local copy of
+     * {@link DeltaSnapshot#DEFAULT_CONSUMER}.
+     * @return the snapshots created, updated and deleted since the previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the snapshots
+     * @throws CloudException an error occurred with the cloud provider while listing the snapshots
+     */
+    public @Nonnull ChangeSet<Snapshot> syncSnapshots() throws InternalException, CloudException {
+        return syncSnapshots(DeltaSnapshot.DEFAULT_CONSUMER);
+    }
+
+    /**
+     * Brings the named consumer's copy of this account's volume snapshots up to date and reports what changed since
+     * that consumer's previous sync.
+     * @param consumer the name of the consumer, which must differ between callers that sync independently
+     * @return the snapshots created, updated and deleted since the consumer's previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the snapshots
+     * @throws CloudException an error occurred with the cloud provider while listing the snapshots
+     */
+    public @Nonnull ChangeSet<Snapshot> syncSnapshots(@Nonnull String consumer) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "Snapshot.syncSnapshots");
+        try {
+            NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
+            DeltaSnapshot<Snapshot> snapshot = DeltaSnapshot.getInstance(getContext(), consumer, "snapshots");
+            DeltaSnapshot.Sync<Snapshot> sync = new DeltaSnapshot.Sync<Snapshot>(true);
+
+            // a full sync treats missing snapshots as deleted, so it must see every page
+            method.streamPages(SERVICE, getResource(), "snapshots", NovaMethod.DEFAULT_PAGE_SIZE, snapshot.newHandler(sync, new DeltaSnapshot.Converter<Snapshot>() {
+                public @Nullable Snapshot convert(@Nonnull JSONObject json) throws CloudException, InternalException {
+                    return toSnapshot(json);
+                }
+            }));
+            return snapshot.apply(sync);
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
     @Override
     public void remove(@Nonnull String snapshotId) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Snapshot.remove");
@@ -35,9 +35,13 @@ import org.dasein.cloud.compute.VolumeFormat;
 import org.dasein.cloud.compute.VolumeProduct;
 import org.dasein.cloud.compute.VolumeState;
 import org.dasein.cloud.compute.VolumeType;
+import org.dasein.cloud.openstack.nova.os.ChangeSet;
+import org.dasein.cloud.openstack.nova.os.DeltaSnapshot;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
 import org.dasein.cloud.openstack.nova.os.NovaMethod;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
 import org.dasein.cloud.openstack.nova.os.OpenStackProvider;
+import org.dasein.cloud.openstack.nova.os.WarmStartStore;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
@@ -306,10 +310,26 @@ public class CinderVolume extends AbstractVolumeSupport {
             if( current != null ) {
                 return current;
             }
-            NovaMethod method = new NovaMethod(((NovaOpenStack)getProvider()));
             ArrayList<VolumeProduct> products = new ArrayList<VolumeProduct>();
+            JSONObject json = null;
+            String stored = WarmStartStore.get(getContext(), "volumeTypes", 1);
 
-            JSONObject json = method.getResource(SERVICE, getTypesResource(), null, false);
+            if( stored != null ) {
+                try {
+                    json = new JSONObject(stored);
+                }
+                catch( JSONException e ) {
+                    logger.warn("listVolumeProducts(): Ignoring unreadable warm start volume types");
+                }
+            }
+            if( json == null ) {
+                NovaMethod method = new NovaMethod(((NovaOpenStack)getProvider()));
+
+                json = method.getResource(SERVICE, getTypesResource(), null, false);
+                if( json != null ) {
+                    WarmStartStore.put(getContext(), "volumeTypes", 1, json.toString(), CalendarWrapper.DAY);
+                }
+            }
 
             if( json != null && json.has("volume_types") ) {
                 try {
@@ -398,32 +418,66 @@ public class CinderVolume extends AbstractVolumeSupport {
     public @Nonnull Iterable<Volume> listVolumes() throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Volume.listVolumes");
         try {
-            Iterable<VolumeProduct> products = listVolumeProducts();
+            final Iterable<VolumeProduct> products = listVolumeProducts();
             NovaMethod method = new NovaMethod(((NovaOpenStack)getProvider()));
-            ArrayList<Volume> volumes = new ArrayList<Volume>();
+            final ArrayList<Volume> volumes = new ArrayList<Volume>();
 
-            JSONObject json = method.getResource(SERVICE, getResource(), null, false);
+            method.streamResource(SERVICE, getResource(), null, false, "volumes", new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject v) throws CloudException, InternalException {
+                    Volume volume = toVolume(v, products);
 
-            if( json != null && json.has("volumes") ) {
-                try {
-                    JSONArray list = json.getJSONArray("volumes");
+                    if( volume != null ) {
+                        volumes.add(volume);
+                    }
+                }
+            });
+            return volumes;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
 
-                    for( int i=0; i<list.length(); i++ ) {
-                        JSONObject v = list.getJSONObject(i);
-                        Volume volume = toVolume(v, products);
+    /**
+     * Brings the locally maintained snapshot of this account's volumes up to date and reports what changed. Cinder
+     * offers no <code>changes-since</code> filter, so the collection is listed in full, but only volumes whose
+     * fingerprint differs from the snapshot are converted. Syncs the snapshot of {@link DeltaSnapshot#DEFAULT_CONSUMER}.
+     * @return the volumes created, updated and deleted since the previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the volumes
+     * @throws CloudException an error occurred with the cloud provider while listing the volumes
+     */
+    public @Nonnull ChangeSet<Volume> syncVolumes() throws InternalException, CloudException {
+        return syncVolumes(DeltaSnapshot.DEFAULT_CONSUMER);
+    }
 
-                        if( volume != null ) {
-                            volumes.add(volume);
-                        }
+    /**
+     * Brings the named consumer's snapshot of this account's volumes up to date and reports what changed since that
+     * consumer's previous sync.
+     * @param consumer the name of the consumer, which must differ between callers that sync independently
+     * @return the volumes created, updated and deleted since the consumer's previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the volumes
+     * @throws CloudException an error occurred with the cloud provider while listing the volumes
+     */
+    @SuppressWarnings("unchecked")
+    public @Nonnull ChangeSet<Volume> syncVolumes(@Nonnull String consumer) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "Volume.syncVolumes");
+        try {
+            NovaMethod method = new NovaMethod(((NovaOpenStack)getProvider()));
+            DeltaSnapshot<Volume> snapshot = DeltaSnapshot.getInstance(getContext(), consumer, "volumes");
+            DeltaSnapshot.Sync<Volume> sync = new DeltaSnapshot.Sync<Volume>(true);
+            final Iterable<VolumeProduct>[] products = new Iterable[1];
+
+            // a full sync treats missing volumes as deleted, so it must see every page
+            method.streamPages(SERVICE, getResource(), "volumes", NovaMethod.DEFAULT_PAGE_SIZE, snapshot.newHandler(sync, new DeltaSnapshot.Converter<Volume>() {
+                public @Nullable Volume convert(@Nonnull JSONObject json) throws CloudException, InternalException {
+                    // only load the volume types when something actually needs converting
+                    if( products[0] == null ) {
+                        products[0] = listVolumeProducts();
                     }
+                    return toVolume(json, products[0]);
                 }
-                catch( JSONException e ) {
-                    logger.error("listVolumes(): Unable to identify expected values in JSON: " + e.getMessage());
-                    e.printStackTrace();
-                    throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for volumes in " + json.toString());
-                }
-            }
-            return volumes;
+            }));
+            return snapshot.apply(sync);
         }
         finally {
             APITrace.end();
@@ -19,6 +19,8 @@
 
 package org.dasein.cloud.openstack.nova.os.compute;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -49,9 +51,15 @@ import org.dasein.cloud.compute.Platform;
 import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
 import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.openstack.nova.os.ChangeSet;
+import org.dasein.cloud.openstack.nova.os.DeltaSnapshot;
 import org.dasein.cloud.openstack.nova.os.NovaException;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
 import org.dasein.cloud.openstack.nova.os.NovaMethod;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.StatusTracker;
+import org.dasein.cloud.openstack.nova.os.Waiter;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.util.CalendarWrapper;
 import org.json.JSONArray;
@@ -119,42 +127,44 @@ public class NovaImage extends AbstractImageSupport<NovaOpenStack> {
             if( task != null ) {
                 task.setStartTime(System.currentTimeMillis());
             }
-            String vmId = options.getVirtualMachineId();
+            final String vmId = options.getVirtualMachineId();
             Platform platform = null;
 
             if( vmId != null ) {
-                long timeout = (System.currentTimeMillis() + CalendarWrapper.MINUTE*10L);
+                final Platform[] seen = new Platform[1];
 
-                while( timeout > System.currentTimeMillis() ) {
-                    try {
-                        ComputeServices services = getProvider().getComputeServices();
-                        VirtualMachine vm = null;
+                Waiter.await(new Waiter.Check<VirtualMachine>() {
+                    public @Nullable VirtualMachine check() {
+                        try {
+                            ComputeServices services = getProvider().getComputeServices();
+                            VirtualMachine vm = null;
 
-                        if( services != null ) {
-                            VirtualMachineSupport support = services.getVirtualMachineSupport();
+                            if( services != null ) {
+                                VirtualMachineSupport support = services.getVirtualMachineSupport();
 
-                            if( support != null ) {
-                                vm = support.getVirtualMachine(vmId);
+                                if( support != null ) {
+                                    vm = support.getVirtualMachine(vmId);
+                                }
                             }
-                        }
-                        if( vm == null ) {
-                            throw new CloudException("No such virtual machine: " + vmId);
-                        }
-                        platform = vm.getPlatform();
-                        if( !VmState.PENDING.equals(vm.getCurrentState()) ) {
-                            String tag = (String)vm.getTag("OS-EXT-STS:task_state");
+                            if( vm == null ) {
+                                throw new CloudException("No such virtual machine: " + vmId);
+                            }
+                            seen[0] = vm.getPlatform();
+                            if( !VmState.PENDING.equals(vm.getCurrentState()) ) {
+                                String tag = (String)vm.getTag("OS-EXT-STS:task_state");
 
-                            if( tag == null || !tag.equalsIgnoreCase("image_snapshot") ) {
-                                break;
+                                if( tag == null || !tag.equalsIgnoreCase("image_snapshot") ) {
+                                    return vm;
+                                }
                             }
                         }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
+                        return null;
                     }
-                    catch( Throwable ignore ) {
-                        // ignore
-                    }
-                    try { Thread.sleep(15000L); }
-                    catch( InterruptedException ignore ) { }
-                }
+                }, new Waiter.Backoff(5000L, 15000L, CalendarWrapper.MINUTE*10L));
+                platform = seen[0];
             }
             JSONObject result;
 
@@ -196,25 +206,24 @@ public class NovaImage extends AbstractImageSupport<NovaOpenStack> {
             }
             else if( result != null && result.has("location") ) {
                 try {
-                    long timeout = System.currentTimeMillis() + CalendarWrapper.MINUTE * 20L;
                     String location = result.getString("location");
                     int idx = location.lastIndexOf('/');
 
                     if( idx > 0 ) {
                         location = location.substring(idx+1);
                     }
+                    StatusTracker tracker = StatusTracker.getInstance((NovaOpenStack)getProvider(), StatusTracker.ResourceType.IMAGE);
+                    MachineImage image = null;
 
-                    while( timeout > System.currentTimeMillis() ) {
-                        MachineImage image = getImage(location);
+                    if( RequestExecutor.await(tracker.waitFor(location, Collections.emptyList(), CalendarWrapper.MINUTE * 20L), CalendarWrapper.MINUTE * 21L) != null ) {
+                        image = getImage(location);
+                    }
 
-                        if( image != null ) {
-                            if( task != null ) {
-                                task.completeWithResult(image);
-                            }
-                            return image;
+                    if( image != null ) {
+                        if( task != null ) {
+                            task.completeWithResult(image);
                         }
-                        try { Thread.sleep(15000L); }
-                        catch( InterruptedException ignore ) { }
+                        return image;
                     }
                 }
                 catch( JSONException e ) {
@@ -359,27 +368,13 @@ public class NovaImage extends AbstractImageSupport<NovaOpenStack> {
                     options.withAccountNumber(getTenantId());
                 }
             }
-            NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            JSONObject ob = method.getServers("/images", null, true);
             ArrayList<MachineImage> images = new ArrayList<MachineImage>();
 
-            try {
-                if( ob != null && ob.has("images") ) {
-                    JSONArray list = ob.getJSONArray("images");
-
-                    for( int i=0; i<list.length(); i++ ) {
-                        JSONObject image = list.getJSONObject(i);
-                        MachineImage img = toImage(image);
-
-                        if( img != null && options.matches(img) ) {
-                            images.add(img);
-                        }
-                    }
+            for( MachineImage img : listAllImages() ) {
+                if( options.matches(img) ) {
+                    images.add(img);
                 }
             }
-            catch( JSONException e ) {
-                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for images: " + e.getMessage());
-            }
             return images;
         }
         finally {
@@ -387,56 +382,134 @@ public class NovaImage extends AbstractImageSupport<NovaOpenStack> {
         }
     }
 
-    @Override
-    public void remove(@Nonnull String providerImageId, boolean checkState) throws CloudException, InternalException {
-        APITrace.begin(getProvider(), "Image.remove");
+    /**
+     * Brings the locally maintained snapshot of every image visible to this account up to date and reports what
+     * changed. After the first call only the images changed since the previous sync are requested through
+     * <code>changes-since</code>, and only images whose details differ from the snapshot are converted. The whole
+     * collection is listed again whenever the cloud rejects <code>changes-since</code> and every
+     * {@link DeltaSnapshot#FULL_SYNC_INTERVAL} seconds. Syncs the snapshot of {@link DeltaSnapshot#DEFAULT_CONSUMER}.
+     * @return the images created, updated and deleted since the previous sync
+     * @throws CloudException an error occurred with the cloud provider while listing the images
+     * @throws InternalException an error occurred within Dasein Cloud while listing the images
+     */
+    public @Nonnull ChangeSet<MachineImage> syncImages() throws CloudException, InternalException {
+        return syncImages(DeltaSnapshot.DEFAULT_CONSUMER);
+    }
+
+    /**
+     * Brings the named consumer's snapshot of the images visible to this account up to date and reports what changed
+     * since that consumer's previous sync.
+     * @param consumer the name of the consumer, which must differ between callers that sync independently
+     * @return the images created, updated and deleted since the consumer's previous sync
+     * @throws CloudException an error occurred with the cloud provider while listing the images
+     * @throws InternalException an error occurred within Dasein Cloud while listing the images
+     */
+    public @Nonnull ChangeSet<MachineImage> syncImages(@Nonnull String consumer) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Image.syncImages");
         try {
             NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            long timeout = System.currentTimeMillis() + CalendarWrapper.HOUR;
+            DeltaSnapshot<MachineImage> snapshot = DeltaSnapshot.getInstance(getContext(), consumer, "images");
+            DeltaSnapshot.Converter<MachineImage> converter = new DeltaSnapshot.Converter<MachineImage>() {
+                public @Nullable MachineImage convert(@Nonnull JSONObject json) throws CloudException, InternalException {
+                    return toImage(json);
+                }
+            };
+            String since = snapshot.getSince();
+
+            if( since != null ) {
+                DeltaSnapshot.Sync<MachineImage> sync = new DeltaSnapshot.Sync<MachineImage>(false);
 
-            do {
                 try {
-                    method.deleteServers("/images", providerImageId);
-                    return;
+                    method.streamPages(null, "/images/detail?changes-since=" + URLEncoder.encode(since, "utf-8"), "images", NovaMethod.DEFAULT_PAGE_SIZE, snapshot.newHandler(sync, converter));
+                    return snapshot.apply(sync);
+                }
+                catch( UnsupportedEncodingException e ) {
+                    throw new InternalException(e);
                 }
                 catch( NovaException e ) {
-                    if( e.getHttpCode() != HttpStatus.SC_CONFLICT ) {
+                    if( e.getHttpCode() != HttpStatus.SC_BAD_REQUEST ) {
                         throw e;
                     }
+                    logger.warn("syncImages(): changes-since was rejected, listing all images: " + e.getMessage());
                 }
-                try { Thread.sleep(CalendarWrapper.MINUTE); }
-                catch( InterruptedException e ) { /* ignore */ }
-            } while( System.currentTimeMillis() < timeout );
+            }
+            DeltaSnapshot.Sync<MachineImage> sync = new DeltaSnapshot.Sync<MachineImage>(true);
+
+            // a full sync treats missing images as deleted, so it must see every page
+            method.streamPages(null, "/images/detail", "images", NovaMethod.DEFAULT_PAGE_SIZE, snapshot.newHandler(sync, converter));
+            return snapshot.apply(sync);
         }
         finally {
             APITrace.end();
         }
     }
 
-    public @Nonnull Iterable<MachineImage> searchPublicImages(@Nonnull ImageFilterOptions options) throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "Image.searchPublicImages");
+    /**
+     * Lists every image visible to this account, public or private, with a single call against the image
+     * detail resource.
+     * @return all images visible to this account
+     * @throws CloudException an error occurred with the cloud provider while listing the images
+     * @throws InternalException an error occurred within Dasein Cloud while listing the images
+     */
+    public @Nonnull Iterable<MachineImage> listAllImages() throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Image.listAllImages");
         try {
             NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            JSONObject ob = method.getServers("/images", null, true);
-            ArrayList<MachineImage> images = new ArrayList<MachineImage>();
-            String me = getTenantId();
+            final ArrayList<MachineImage> images = new ArrayList<MachineImage>();
 
-            try {
-                if( ob != null && ob.has("images") ) {
-                    JSONArray list = ob.getJSONArray("images");
+            method.streamServers("/images/detail", "images", new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject image) throws CloudException, InternalException {
+                    MachineImage img = toImage(image);
 
-                    for( int i=0; i<list.length(); i++ ) {
-                        JSONObject image = list.getJSONObject(i);
-                        MachineImage img = toImage(image);
+                    if( img != null ) {
+                        images.add(img);
+                    }
+                }
+            });
+            return images;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
 
-                        if( img != null && !img.getProviderOwnerId().equals(me) && options.matches(img) ) {
-                            images.add(img);
+    @Override
+    public void remove(@Nonnull final String providerImageId, boolean checkState) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Image.remove");
+        try {
+            final NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
+
+            // an image still being saved refuses deletion with a conflict, so keep trying for an hour
+            Waiter.await(new Waiter.Check<Boolean>() {
+                public @Nullable Boolean check() throws CloudException, InternalException {
+                    try {
+                        method.deleteServers("/images", providerImageId);
+                        return true;
+                    }
+                    catch( NovaException e ) {
+                        if( e.getHttpCode() != HttpStatus.SC_CONFLICT ) {
+                            throw e;
                         }
+                        return null;
                     }
                 }
-            }
-            catch( JSONException e ) {
-                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for images: " + e.getMessage());
+            }, new Waiter.Backoff(5000L, CalendarWrapper.MINUTE, CalendarWrapper.HOUR));
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    public @Nonnull Iterable<MachineImage> searchPublicImages(@Nonnull ImageFilterOptions options) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "Image.searchPublicImages");
+        try {
+            ArrayList<MachineImage> images = new ArrayList<MachineImage>();
+            String me = getTenantId();
+
+            for( MachineImage img : listAllImages() ) {
+                if( !img.getProviderOwnerId().equals(me) && options.matches(img) ) {
+                    images.add(img);
+                }
             }
             return images;
         }
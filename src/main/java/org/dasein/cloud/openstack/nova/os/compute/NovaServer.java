@@ -20,7 +20,13 @@
 package org.dasein.cloud.openstack.nova.os.compute;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -54,16 +60,27 @@ import org.dasein.cloud.network.RawAddress;
 import org.dasein.cloud.network.VLAN;
 import org.dasein.cloud.network.VLANSupport;
 import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.openstack.nova.os.AuthenticationContext;
+import org.dasein.cloud.openstack.nova.os.ChangeSet;
+import org.dasein.cloud.openstack.nova.os.DeltaSnapshot;
 import org.dasein.cloud.openstack.nova.os.NovaException;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
 import org.dasein.cloud.openstack.nova.os.NovaMethod;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
 import org.dasein.cloud.openstack.nova.os.OpenStackProvider;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.StatusTracker;
+import org.dasein.cloud.openstack.nova.os.Waiter;
+import org.dasein.cloud.openstack.nova.os.WarmStartStore;
 import org.dasein.cloud.openstack.nova.os.network.NovaNetworkServices;
 import org.dasein.cloud.openstack.nova.os.network.Quantum;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
 import org.dasein.util.CalendarWrapper;
+import org.dasein.util.Jiterator;
+import org.dasein.util.JiteratorPopulator;
+import org.dasein.util.PopulatorThread;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Megabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -87,6 +104,14 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
 
     static public final String SERVICE = "compute";
 
+    /**
+     * Custom property holding the number of seconds to wait for the IP and network lookups made while listing
+     * servers before listing without them.
+     */
+    static public final String LOOKUP_TIMEOUT = "lookupTimeout";
+
+    static private final long DEFAULT_LOOKUP_TIMEOUT = 30L;
+
     NovaServer(NovaOpenStack provider) {
         super(provider);
     }
@@ -155,39 +180,10 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
             if( ob == null ) {
                 return null;
             }
-            Iterable<IpAddress> ipv4, ipv6;
-            Iterable<VLAN> networks;
-
-            NetworkServices services = getProvider().getNetworkServices();
-
-            if( services != null ) {
-                IpAddressSupport support = services.getIpAddressSupport();
-
-                if( support != null ) {
-                    ipv4 = support.listIpPool(IPVersion.IPV4, false);
-                    ipv6 = support.listIpPool(IPVersion.IPV6, false);
-                }
-                else {
-                    ipv4 = ipv6 = Collections.emptyList();
-                }
-
-                VLANSupport vs = services.getVlanSupport();
-
-                if( vs != null ) {
-                    networks = vs.listVlans();
-                }
-                else {
-                    networks = Collections.emptyList();
-                }
-            }
-            else {
-                ipv4 = ipv6 = Collections.emptyList();
-                networks = Collections.emptyList();
-            }
             try {
                 if( ob.has("server") ) {
                     JSONObject server = ob.getJSONObject("server");
-                    VirtualMachine vm = toVirtualMachine(server, ipv4, ipv6, networks);
+                    VirtualMachine vm = toVirtualMachine(server, newLookups(false));
 
                     if( vm != null ) {
                         return vm;
@@ -205,6 +201,46 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
         }
     }
 
+    /**
+     * Loads the addresses and networks needed to convert servers outside of a full listing.
+     * @param bulk true if many servers will be converted
+     * @return the lookups
+     * @throws InternalException an error occurred within Dasein Cloud while loading the lookups
+     * @throws CloudException an error occurred with the cloud provider while loading the lookups
+     */
+    private @Nonnull ServerLookups newLookups(boolean bulk) throws InternalException, CloudException {
+        Iterable<IpAddress> ipv4, ipv6;
+        Iterable<VLAN> networks;
+
+        NetworkServices services = getProvider().getNetworkServices();
+
+        if( services != null ) {
+            IpAddressSupport support = services.getIpAddressSupport();
+
+            if( support != null ) {
+                ipv4 = support.listIpPool(IPVersion.IPV4, false);
+                ipv6 = support.listIpPool(IPVersion.IPV6, false);
+            }
+            else {
+                ipv4 = ipv6 = Collections.emptyList();
+            }
+
+            VLANSupport vs = services.getVlanSupport();
+
+            if( vs != null ) {
+                networks = vs.listVlans();
+            }
+            else {
+                networks = Collections.emptyList();
+            }
+        }
+        else {
+            ipv4 = ipv6 = Collections.emptyList();
+            networks = Collections.emptyList();
+        }
+        return new ServerLookups(ipv4, ipv6, networks, bulk);
+    }
+
     @Override
     public boolean isSubscribed() throws CloudException, InternalException {
         APITrace.begin(getProvider(), "VM.isSubscribed");
@@ -380,16 +416,18 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
                     Collection<VLAN> nets = Collections.emptyList();
 
                     JSONObject server = result.getJSONObject("server");
-                    vm = toVirtualMachine(server, ips, ips, nets);
+                    vm = toVirtualMachine(server, new ServerLookups(ips, ips, nets, false));
 
                     if( vm != null ) {
                         String vmId = vm.getProviderVirtualMachineId();
-                        long timeout = System.currentTimeMillis() + 5 * 60 * 1000;
-                        while(( vm == null || vm.getCurrentState() == null ) && System.currentTimeMillis() < timeout ) {
-                            try {
-                                Thread.sleep(5000);
-                            } catch (InterruptedException ignore) {}
-                            vm = getVirtualMachine(vmId);
+
+                        if( vm.getCurrentState() == null ) {
+                            // many concurrent launches share one status listing per interval
+                            StatusTracker tracker = StatusTracker.getInstance(getProvider(), StatusTracker.ResourceType.VIRTUAL_MACHINE);
+
+                            if( RequestExecutor.await(tracker.waitFor(vmId, Collections.emptyList(), 5 * CalendarWrapper.MINUTE), 6 * CalendarWrapper.MINUTE) != null ) {
+                                vm = getVirtualMachine(vmId);
+                            }
                         }
                         if( vm == null || vm.getCurrentState() == null ) {
                             throw new CloudException("VM failed to launch with a meaningful status");
@@ -425,22 +463,9 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
         return round.intValue();
     }
 
-    private @Nonnull Iterable<String> listFirewalls(@Nonnull String vmId, @Nonnull JSONObject server) throws InternalException, CloudException {
+    private @Nonnull Iterable<String> listFirewalls(@Nonnull String vmId, @Nonnull JSONObject server, @Nonnull ServerLookups lookups) throws InternalException, CloudException {
         try {
             if( server.has("security_groups") ) {
-                NetworkServices services = getProvider().getNetworkServices();
-                Collection<Firewall> firewalls = null;
-
-                if( services != null ) {
-                    FirewallSupport support = services.getFirewallSupport();
-
-                    if( support != null ) {
-                        firewalls = support.list();
-                    }
-                }
-                if( firewalls == null ) {
-                    firewalls = Collections.emptyList();
-                }
                 JSONArray groups = server.getJSONArray("security_groups");
                 ArrayList<String> results = new ArrayList<String>();
 
@@ -449,16 +474,16 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
                     String id = group.has("id") ? group.getString("id") : null;
                     String name = group.has("name") ? group.getString("name") : null;
 
-                    if( id != null || name != null  ) {
-                        for( Firewall fw : firewalls ) {
-                            if( id != null ) {
-                                if( id.equals(fw.getProviderFirewallId()) ) {
-                                    results.add(id);
-                                }
-                            }
-                            else if( name.equals(fw.getName()) ) {
-                                results.add(fw.getProviderFirewallId());
-                            }
+                    if( id != null ) {
+                        if( lookups.getFirewallIds().contains(id) ) {
+                            results.add(id);
+                        }
+                    }
+                    else if( name != null ) {
+                        List<String> ids = lookups.getFirewallIdsByName().get(name);
+
+                        if( ids != null ) {
+                            results.addAll(ids);
                         }
                     }
                 }
@@ -506,7 +531,10 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
                 if( ob.has("server") ) {
                     JSONObject server = ob.getJSONObject("server");
 
-                    return listFirewalls(vmId, server);
+                    List<IpAddress> ips = Collections.emptyList();
+                    List<VLAN> nets = Collections.emptyList();
+
+                    return listFirewalls(vmId, server, new ServerLookups(ips, ips, nets, false));
                 }
                 throw new CloudException("No such server: " + vmId);
             }
@@ -528,6 +556,120 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
         public String toString() { return (id + " -> " + product); }
     }
 
+    /**
+     * Related resources consulted while converting servers into virtual machines. A listing builds one of these
+     * per call and joins every server against it in memory, so subnets, images and security groups are fetched
+     * at most once and addresses and networks are matched by hash lookup no matter how many servers are converted.
+     */
+    private class ServerLookups {
+        private AddressIndex                   addresses;
+        private boolean                        bulk;
+        private HashMap<String,List<Subnet>>   subnetsByVlan;
+        private HashMap<String,MachineImage>   images;
+        private HashSet<String>                firewallIds;
+        private HashMap<String,List<String>>   firewallIdsByName;
+
+        /**
+         * @param bulk true if many servers will be converted, in which case all images are listed up front
+         *             instead of being fetched one by one
+         */
+        ServerLookups(@Nonnull Iterable<IpAddress> ipv4, @Nonnull Iterable<IpAddress> ipv6, @Nonnull Iterable<VLAN> networks, boolean bulk) {
+            this.addresses = new AddressIndex(ipv4, ipv6, networks);
+            this.bulk = bulk;
+        }
+
+        @Nonnull Iterable<Subnet> getSubnets(@Nonnull String vlanId) throws CloudException, InternalException {
+            if( subnetsByVlan == null ) {
+                HashMap<String,List<Subnet>> map = new HashMap<String, List<Subnet>>();
+                NovaNetworkServices services = getProvider().getNetworkServices();
+                Quantum support = services.getVlanSupport();
+
+                if( support != null ) {
+                    for( Subnet subnet : support.listAllSubnets() ) {
+                        List<Subnet> list = map.get(subnet.getProviderVlanId());
+
+                        if( list == null ) {
+                            list = new ArrayList<Subnet>();
+                            map.put(subnet.getProviderVlanId(), list);
+                        }
+                        list.add(subnet);
+                    }
+                }
+                subnetsByVlan = map;
+            }
+            List<Subnet> subnets = subnetsByVlan.get(vlanId);
+
+            if( subnets == null ) {
+                return Collections.emptyList();
+            }
+            return subnets;
+        }
+
+        @Nullable MachineImage getImage(@Nonnull String imageId) throws CloudException, InternalException {
+            if( images == null ) {
+                images = new HashMap<String, MachineImage>();
+                if( bulk ) {
+                    for( MachineImage img : getProvider().getComputeServices().getImageSupport().listAllImages() ) {
+                        images.put(img.getProviderMachineImageId(), img);
+                    }
+                }
+            }
+            if( !bulk && !images.containsKey(imageId) ) {
+                images.put(imageId, getProvider().getComputeServices().getImageSupport().getImage(imageId));
+            }
+            return images.get(imageId);
+        }
+
+        @Nonnull Set<String> getFirewallIds() throws CloudException, InternalException {
+            loadFirewalls();
+            return firewallIds;
+        }
+
+        @Nonnull Map<String,List<String>> getFirewallIdsByName() throws CloudException, InternalException {
+            loadFirewalls();
+            return firewallIdsByName;
+        }
+
+        private void loadFirewalls() throws CloudException, InternalException {
+            if( firewallIds != null ) {
+                return;
+            }
+            HashSet<String> ids = new HashSet<String>();
+            HashMap<String,List<String>> byName = new HashMap<String, List<String>>();
+            NetworkServices services = getProvider().getNetworkServices();
+            Collection<Firewall> firewalls = null;
+
+            if( services != null ) {
+                FirewallSupport support = services.getFirewallSupport();
+
+                if( support != null ) {
+                    firewalls = support.list();
+                }
+            }
+            if( firewalls != null ) {
+                for( Firewall fw : firewalls ) {
+                    String id = fw.getProviderFirewallId();
+
+                    if( id == null ) {
+                        continue;
+                    }
+                    ids.add(id);
+                    if( fw.getName() != null ) {
+                        List<String> list = byName.get(fw.getName());
+
+                        if( list == null ) {
+                            list = new ArrayList<String>();
+                            byName.put(fw.getName(), list);
+                        }
+                        list.add(id);
+                    }
+                }
+            }
+            firewallIdsByName = byName;
+            firewallIds = ids;
+        }
+    }
+
     private @Nonnull Iterable<FlavorRef> listFlavors() throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.listFlavors");
         try {
@@ -538,8 +680,25 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
                 return refs;
             }
 
-            NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            JSONObject ob = method.getServers("/flavors", null, true);
+            JSONObject ob = null;
+            String stored = WarmStartStore.get(getContext(), "flavors", 1);
+
+            if( stored != null ) {
+                try {
+                    ob = new JSONObject(stored);
+                }
+                catch( JSONException e ) {
+                    logger.warn("listFlavors(): Ignoring unreadable warm start flavors");
+                }
+            }
+            if( ob == null ) {
+                NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
+
+                ob = method.getServers("/flavors", null, true);
+                if( ob != null ) {
+                    WarmStartStore.put(getContext(), "flavors", 1, ob.toString(), CalendarWrapper.DAY);
+                }
+            }
             ArrayList<FlavorRef> flavors = new ArrayList<FlavorRef>();
 
             try {
@@ -676,54 +835,256 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
 
     @Override
     public @Nonnull Iterable<VirtualMachine> listVirtualMachines() throws InternalException, CloudException {
-        APITrace.begin(getProvider(), "VM.listVirtualMachines");
-        try {
-            NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            JSONObject ob = method.getServers("/servers", null, true);
-            ArrayList<VirtualMachine> servers = new ArrayList<VirtualMachine>();
+        PopulatorThread<VirtualMachine> populator;
 
-            Iterable<IpAddress> ipv4 = Collections.emptyList(), ipv6 = Collections.emptyList();
-            Iterable<VLAN> nets = Collections.emptyList();
-            NetworkServices services = getProvider().getNetworkServices();
+        getProvider().hold();
+        populator = new PopulatorThread<VirtualMachine>(new JiteratorPopulator<VirtualMachine>() {
+            public void populate(@Nonnull Jiterator<VirtualMachine> iterator) throws CloudException, InternalException {
+                try {
+                    APITrace.begin(getProvider(), "VM.listVirtualMachines");
+                    try {
+                        listVirtualMachines(iterator);
+                    }
+                    finally {
+                        APITrace.end();
+                    }
+                }
+                finally {
+                    getProvider().release();
+                }
+            }
+        });
+        populator.populate();
+        return populator.getResult();
+    }
 
-            if( services != null ) {
-                IpAddressSupport support = services.getIpAddressSupport();
+    /**
+     * Pages through the server details using <code>limit</code> and <code>marker</code>, pushing each page to
+     * the iterator as soon as it has been converted so memory is bounded by the page size rather than the tenant.
+     * The IP address and network lookups needed to convert the servers run alongside the first page request.
+     * @param iterator the iterator receiving the converted servers
+     * @throws InternalException an error occurred within Dasein Cloud while listing the servers
+     * @throws CloudException an error occurred with the cloud provider while listing the servers
+     */
+    private void listVirtualMachines(@Nonnull final Jiterator<VirtualMachine> iterator) throws InternalException, CloudException {
+        NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
+        Future<Iterable<IpAddress>> ipv4 = null, ipv6 = null;
+        Future<Iterable<VLAN>> nets = null;
+        NetworkServices services = getProvider().getNetworkServices();
+
+        // the lookups are independent of each other and of the first page of servers, so fetch them all at once
+        if( services != null ) {
+            final IpAddressSupport support = services.getIpAddressSupport();
+
+            if( support != null ) {
+                ipv4 = submitLookup(new Callable<Iterable<IpAddress>>() {
+                    public Iterable<IpAddress> call() throws CloudException, InternalException {
+                        return support.listIpPool(IPVersion.IPV4, false);
+                    }
+                });
+                ipv6 = submitLookup(new Callable<Iterable<IpAddress>>() {
+                    public Iterable<IpAddress> call() throws CloudException, InternalException {
+                        return support.listIpPool(IPVersion.IPV6, false);
+                    }
+                });
+            }
 
-                if( support != null ) {
-                    ipv4 = support.listIpPool(IPVersion.IPV4, false);
-                    ipv6 = support.listIpPool(IPVersion.IPV6, false);
+            final VLANSupport vs = services.getVlanSupport();
+
+            if( vs != null ) {
+                nets = submitLookup(new Callable<Iterable<VLAN>>() {
+                    public Iterable<VLAN> call() throws CloudException, InternalException {
+                        return vs.listVlans();
+                    }
+                });
+            }
+        }
+        final long deadline = System.currentTimeMillis() + (getLookupTimeout() * 1000L);
+        final Future<Iterable<IpAddress>> v4 = ipv4, v6 = ipv6;
+        final Future<Iterable<VLAN>> vlans = nets;
+        final ServerLookups[] lookups = new ServerLookups[1];
+
+        // the lookups are awaited only once the first server arrives so they overlap with the first page request
+        method.streamPages(null, "/servers/detail", "servers", NovaMethod.DEFAULT_PAGE_SIZE, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject server) throws CloudException, InternalException, JSONException {
+                if( lookups[0] == null ) {
+                    lookups[0] = new ServerLookups(awaitLookup(v4, "IPv4 addresses", deadline), awaitLookup(v6, "IPv6 addresses", deadline), awaitLookup(vlans, "networks", deadline), true);
                 }
+                VirtualMachine vm = toVirtualMachine(server, lookups[0]);
 
-                VLANSupport vs = services.getVlanSupport();
+                if( vm != null ) {
+                    iterator.push(vm);
+                }
+            }
+        });
+    }
+
+    /**
+     * Brings the locally maintained snapshot of this account's servers up to date and reports what changed. After
+     * the first call, only servers changed since the previous sync are requested through <code>changes-since</code>,
+     * and only servers whose details actually differ are converted. The whole collection is listed again on the
+     * first call, whenever the cloud rejects <code>changes-since</code> and every
+     * {@link DeltaSnapshot#FULL_SYNC_INTERVAL} seconds. Syncs the snapshot of {@link DeltaSnapshot#DEFAULT_CONSUMER}.
+     * @return the servers created, updated and deleted since the previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the servers
+     * @throws CloudException an error occurred with the cloud provider while listing the servers
+     */
+    public @Nonnull ChangeSet<VirtualMachine> syncVirtualMachines() throws InternalException, CloudException {
+        return syncVirtualMachines(DeltaSnapshot.DEFAULT_CONSUMER);
+    }
 
-                if( vs != null ) {
-                    nets = vs.listVlans();
+    /**
+     * Brings the named consumer's snapshot of this account's servers up to date and reports what changed since that
+     * consumer's previous sync. The snapshot is kept per account, endpoint and region, so a new provider instance for
+     * the same consumer continues with deltas rather than listing everything again.
+     * @param consumer the name of the consumer, which must differ between callers that sync independently
+     * @return the servers created, updated and deleted since the consumer's previous sync
+     * @throws InternalException an error occurred within Dasein Cloud while listing the servers
+     * @throws CloudException an error occurred with the cloud provider while listing the servers
+     */
+    public @Nonnull ChangeSet<VirtualMachine> syncVirtualMachines(@Nonnull String consumer) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "VM.syncVirtualMachines");
+        try {
+            DeltaSnapshot<VirtualMachine> snapshot = DeltaSnapshot.getInstance(getContext(), consumer, "servers");
+            String since = snapshot.getSince();
+            DeltaSnapshot.Sync<VirtualMachine> sync = null;
+
+            if( since != null ) {
+                try {
+                    sync = syncServers(snapshot, since);
+                }
+                catch( NovaException e ) {
+                    if( e.getHttpCode() != HttpStatus.SC_BAD_REQUEST ) {
+                        throw e;
+                    }
+                    logger.warn("syncVirtualMachines(): changes-since was rejected, listing all servers: " + e.getMessage());
                 }
             }
+            if( sync == null ) {
+                sync = syncServers(snapshot, null);
+            }
+            return snapshot.apply(sync);
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    private @Nonnull DeltaSnapshot.Sync<VirtualMachine> syncServers(@Nonnull final DeltaSnapshot<VirtualMachine> snapshot, @Nullable String since) throws InternalException, CloudException {
+        NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
+        final DeltaSnapshot.Sync<VirtualMachine> sync = new DeltaSnapshot.Sync<VirtualMachine>(since == null);
+        final ArrayList<JSONObject> changed = new ArrayList<JSONObject>();
+        String resource = "/servers/detail";
+
+        if( since != null ) {
             try {
-                if( ob != null && ob.has("servers") ) {
-                    JSONArray list = ob.getJSONArray("servers");
+                resource = resource + "?changes-since=" + URLEncoder.encode(since, "utf-8");
+            }
+            catch( UnsupportedEncodingException e ) {
+                throw new InternalException(e);
+            }
+        }
+        method.streamPages(null, resource, "servers", NovaMethod.DEFAULT_PAGE_SIZE, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject server) throws CloudException, InternalException, JSONException {
+                if( !server.has("id") ) {
+                    return;
+                }
+                String id = server.getString("id");
 
-                    for( int i=0; i<list.length(); i++ ) {
-                        JSONObject server = list.getJSONObject(i);
-                        VirtualMachine vm = toVirtualMachine(server, ipv4, ipv6, nets);
+                if( "DELETED".equalsIgnoreCase(server.optString("status")) ) {
+                    sync.deleted(id);
+                }
+                else if( snapshot.isCurrent(id, toFingerprint(server)) ) {
+                    sync.unchanged(id);
+                }
+                else {
+                    changed.add(server);
+                }
+            }
+        });
+        if( !changed.isEmpty() ) {
+            ServerLookups lookups = newLookups(changed.size() > 1);
 
-                        if( vm != null ) {
-                            servers.add(vm);
-                        }
+            try {
+                for( JSONObject server : changed ) {
+                    VirtualMachine vm = toVirtualMachine(server, lookups);
 
+                    if( vm != null ) {
+                        sync.changed(server.getString("id"), toFingerprint(server), vm);
                     }
                 }
             }
             catch( JSONException e ) {
-                logger.error("listVirtualMachines(): Unable to identify expected values in JSON: " + e.getMessage());                e.printStackTrace();
-                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for servers in " + ob.toString());
+                logger.error("syncVirtualMachines(): Unable to identify expected values in JSON: " + e.getMessage());
+                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for servers");
             }
-            return servers;
         }
-        finally {
-            APITrace.end();
+        return sync;
+    }
+
+    /**
+     * @param server the raw server details
+     * @return a summary of the details that, when unchanged, means the converted server is unchanged as well
+     */
+    static private @Nonnull String toFingerprint(@Nonnull JSONObject server) {
+        JSONObject addresses = server.optJSONObject("addresses");
+
+        return server.optString("updated") + "|" + server.optString("status") + "|" + server.optString("OS-EXT-STS:task_state") + "|" + (addresses == null ? "" : addresses.toString());
+    }
+
+    private long getLookupTimeout() {
+        return NovaOpenStack.getNumericProperty(getProvider().getContext(), LOOKUP_TIMEOUT, DEFAULT_LOOKUP_TIMEOUT, 1L);
+    }
+
+    /**
+     * Queues an auxiliary lookup through the shared {@link RequestExecutor} so that it counts against the same
+     * per-endpoint limits as every other concurrent request to the network or compute service.
+     * @param lookup the lookup to make
+     * @param <T> the type of resource being looked up
+     * @return the pending lookup
+     */
+    private @Nonnull <T> Future<Iterable<T>> submitLookup(@Nonnull Callable<Iterable<T>> lookup) throws CloudException, InternalException {
+        AuthenticationContext ctx = getProvider().getAuthenticationContext();
+        String endpoint = ctx.getNetworkUrl();
+
+        if( endpoint == null ) {
+            return RequestExecutor.submit(getProvider(), SERVICE, String.valueOf(ctx.getComputeUrl()), lookup);
+        }
+        return RequestExecutor.submit(getProvider(), "network", endpoint, lookup);
+    }
+
+    /**
+     * Waits until the deadline for an auxiliary lookup made while listing servers. Servers are still listed if the
+     * lookup fails, is unsupported or is too slow; they simply lack the details it would have provided.
+     * @param lookup the pending lookup, or <code>null</code> if none was made
+     * @param name a description of the lookup for logging
+     * @param deadline the time by which the lookup must have finished
+     * @param <T> the type of resource being looked up
+     * @return the results of the lookup, or an empty list if it did not complete successfully
+     */
+    private @Nonnull <T> Iterable<T> awaitLookup(@Nullable Future<Iterable<T>> lookup, @Nonnull String name, long deadline) {
+        if( lookup == null ) {
+            return Collections.emptyList();
+        }
+        try {
+            Iterable<T> result = lookup.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+            return (result == null ? Collections.<T>emptyList() : result);
         }
+        catch( TimeoutException e ) {
+            lookup.cancel(true);
+            logger.warn("listVirtualMachines(): Timed out listing " + name + ", listing servers without them");
+        }
+        catch( InterruptedException e ) {
+            lookup.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        catch( ExecutionException e ) {
+            Throwable t = (e.getCause() == null ? e : e.getCause());
+
+            logger.warn("listVirtualMachines(): Unable to list " + name + ", listing servers without them: " + t.getMessage());
+        }
+        return Collections.emptyList();
     }
 
     @Override
@@ -896,45 +1257,49 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
     }
 
     @Override
-    public void terminate(@Nonnull String vmId, @Nullable String explanation) throws InternalException, CloudException {
+    public void terminate(@Nonnull final String vmId, @Nullable String explanation) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.terminate");
         try {
-            VirtualMachine vm = getVirtualMachine(vmId);
+            final VirtualMachine vm = getVirtualMachine(vmId);
+            final NovaMethod method = new NovaMethod(getProvider());
 
-            NovaMethod method = new NovaMethod(getProvider());
-            long timeout = System.currentTimeMillis() + CalendarWrapper.HOUR;
+            // the server refuses deletion with a conflict while a task is under way, so keep trying for an hour
+            Waiter.await(new Waiter.Check<Boolean>() {
+                public @Nullable Boolean check() throws CloudException, InternalException {
+                    return tryTerminate(method, vm, vmId);
+                }
+            }, new Waiter.Backoff(5000L, CalendarWrapper.MINUTE, CalendarWrapper.HOUR));
+        }
+        finally {
+            APITrace.end();
+        }
+    }
 
-            do {
-                try {
-                    Quantum quantum = getProvider().getNetworkServices().getVlanSupport();
-                    if( quantum != null ) {
-                        String cachedPortId = (String) vm.getTag("org.dasein.portId");
-                        Iterable<String> portIds = quantum.listPorts(vm);
-                        for (String portId : portIds) {
-                            quantum.removePort(portId);
-                            if (portId.equalsIgnoreCase(cachedPortId)) {
-                                cachedPortId = null;
-                            }
-                        }
-                        // if ports were detached, listPorts will not return any ports, diff method to be used
-                        if (cachedPortId != null) {
-                            quantum.removePort(cachedPortId);
-                        }
+    private @Nullable Boolean tryTerminate(@Nonnull NovaMethod method, VirtualMachine vm, @Nonnull String vmId) throws CloudException, InternalException {
+        try {
+            Quantum quantum = getProvider().getNetworkServices().getVlanSupport();
+            if( quantum != null ) {
+                String cachedPortId = (String) vm.getTag("org.dasein.portId");
+                Iterable<String> portIds = quantum.listPorts(vm);
+                for (String portId : portIds) {
+                    quantum.removePort(portId);
+                    if (portId.equalsIgnoreCase(cachedPortId)) {
+                        cachedPortId = null;
                     }
-                    method.deleteServers("/servers", vmId);
-                    return;
                 }
-                catch( NovaException e ) {
-                    if( e.getHttpCode() != HttpStatus.SC_CONFLICT ) {
-                        throw e;
-                    }
+                // if ports were detached, listPorts will not return any ports, diff method to be used
+                if (cachedPortId != null) {
+                    quantum.removePort(cachedPortId);
                 }
-                try { Thread.sleep(CalendarWrapper.MINUTE); }
-                catch( InterruptedException e ) { /* ignore */ }
-            } while( System.currentTimeMillis() < timeout );
+            }
+            method.deleteServers("/servers", vmId);
+            return true;
         }
-        finally {
-            APITrace.end();
+        catch( NovaException e ) {
+            if( e.getHttpCode() != HttpStatus.SC_CONFLICT ) {
+                throw e;
+            }
+            return null;
         }
     }
 
@@ -1031,7 +1396,7 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
         return new ResourceStatus(serverId, state);
     }
 
-    private @Nullable VirtualMachine toVirtualMachine(@Nullable JSONObject server, @Nonnull Iterable<IpAddress> ipv4, @Nonnull Iterable<IpAddress> ipv6, @Nonnull Iterable<VLAN> networks) throws JSONException, InternalException, CloudException {
+    private @Nullable VirtualMachine toVirtualMachine(@Nullable JSONObject server, @Nonnull ServerLookups lookups) throws JSONException, InternalException, CloudException {
         if( server == null ) {
             return null;
         }
@@ -1245,22 +1610,18 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
                         }
                     }
                     if( vm.getProviderVlanId() == null ) {
-                        for( VLAN network : networks ) {
-                            if( network.getName().equals(name) ) {
-                                vm.setProviderVlanId(network.getProviderVlanId());
-                                //get subnet
-                                NetworkServices services = getProvider().getNetworkServices();
-                                VLANSupport support = services.getVlanSupport();
-                                Iterable<Subnet> subnets = support.listSubnets(network.getProviderVlanId());
-                                for (Subnet sub : subnets) {
-                                    SubnetUtils utils = new SubnetUtils(sub.getCidr());
-
-                                    if (utils.getInfo().isInRange(subnet)) {
-                                        vm.setProviderSubnetId(sub.getProviderSubnetId());
-                                        break;
-                                    }
+                        VLAN network = lookups.addresses.getNetwork(name);
+
+                        if( network != null ) {
+                            vm.setProviderVlanId(network.getProviderVlanId());
+                            //get subnet
+                            for (Subnet sub : lookups.getSubnets(network.getProviderVlanId())) {
+                                SubnetUtils utils = new SubnetUtils(sub.getCidr());
+
+                                if (utils.getInfo().isInRange(subnet)) {
+                                    vm.setProviderSubnetId(sub.getProviderSubnetId());
+                                    break;
                                 }
-                                break;
                             }
                         }
                     }
@@ -1272,42 +1633,24 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
 
             if( raw != null ) {
                 for( RawAddress addr : vm.getPublicAddresses() ) {
+                    IpAddress a = null;
+
                     if( addr.getVersion().equals(IPVersion.IPV4) ) {
-                        for( IpAddress a : ipv4 ) {
-                            if( a.getRawAddress().getIpAddress().equals(addr.getIpAddress()) ) {
-                                vm.setProviderAssignedIpAddressId(a.getProviderIpAddressId());
-                                break;
-                            }
-                        }
+                        a = lookups.addresses.getIpv4(addr.getIpAddress());
                     }
                     else if( addr.getVersion().equals(IPVersion.IPV6) ) {
-                        for( IpAddress a : ipv6 ) {
-                            if( a.getRawAddress().getIpAddress().equals(addr.getIpAddress()) ) {
-                                vm.setProviderAssignedIpAddressId(a.getProviderIpAddressId());
-                                break;
-                            }
-                        }
+                        a = lookups.addresses.getIpv6(addr.getIpAddress());
                     }
-                }
-            }
-            if( vm.getProviderAssignedIpAddressId() == null ) {
-                for( IpAddress addr : ipv4 ) {
-                    String serverId = addr.getServerId();
-
-                    if( serverId != null && serverId.equals(vm.getProviderVirtualMachineId()) ) {
-                        vm.setProviderAssignedIpAddressId(addr.getProviderIpAddressId());
-                        break;
+                    if( a != null ) {
+                        vm.setProviderAssignedIpAddressId(a.getProviderIpAddressId());
                     }
                 }
-                if( vm.getProviderAssignedIpAddressId() == null ) {
-                    for( IpAddress addr : ipv6 ) {
-                        String serverId = addr.getServerId();
+            }
+            if( vm.getProviderAssignedIpAddressId() == null && vm.getProviderVirtualMachineId() != null ) {
+                IpAddress addr = lookups.addresses.getByServer(vm.getProviderVirtualMachineId());
 
-                        if( serverId != null && addr.getServerId().equals(vm.getProviderVirtualMachineId()) ) {
-                            vm.setProviderAssignedIpAddressId(addr.getProviderIpAddressId());
-                            break;
-                        }
-                    }
+                if( addr != null ) {
+                    vm.setProviderAssignedIpAddressId(addr.getProviderIpAddressId());
                 }
             }
             vm.setProviderRegionId(getContext().getRegionId());
@@ -1319,14 +1662,6 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
             if( vm.getProviderVirtualMachineId() == null ) {
                 return null;
             }
-            if( vm.getProviderAssignedIpAddressId() == null ) {
-                for( IpAddress addr : ipv6 ) {
-                    if( addr.getServerId().equals(vm.getProviderVirtualMachineId()) ) {
-                        vm.setProviderAssignedIpAddressId(addr.getProviderIpAddressId());
-                        break;
-                    }
-                }
-            }
         }
         vm.setProviderRegionId(getContext().getRegionId());
         if(server.has("OS-EXT-AZ:availability_zone")){
@@ -1350,7 +1685,7 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
 
             if( p.equals(Platform.UNKNOWN) ) {
                 if (vm.getProviderMachineImageId() != null) {
-                    MachineImage img = getProvider().getComputeServices().getImageSupport().getImage(vm.getProviderMachineImageId());
+                    MachineImage img = lookups.getImage(vm.getProviderMachineImageId());
                     if( img != null ) {
                         p = img.getPlatform();
                     }
@@ -1363,7 +1698,7 @@ public class NovaServer extends AbstractVMSupport<NovaOpenStack> {
         	vm.setProviderFirewallIds(null);
         }
         else{
-            Iterable<String> fwIds = listFirewalls(vm.getProviderVirtualMachineId(), server);
+            Iterable<String> fwIds = listFirewalls(vm.getProviderVirtualMachineId(), server, lookups);
             int count = 0;
 
             //noinspection UnusedDeclaration
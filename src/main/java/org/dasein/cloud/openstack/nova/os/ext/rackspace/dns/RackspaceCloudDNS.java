@@ -33,6 +33,7 @@ import org.dasein.cloud.network.DNSZone;
 import org.dasein.cloud.openstack.nova.os.NovaException;
 import org.dasein.cloud.openstack.nova.os.NovaMethod;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.Waiter;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.util.CalendarWrapper;
 import org.json.JSONArray;
@@ -698,52 +699,55 @@ public class RackspaceCloudDNS implements DNSSupport {
         }
     }
     
-    private JSONObject waitForJob(String jobId) throws CloudException, InternalException {
-        long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 20);
-
+    private JSONObject waitForJob(final String jobId) throws CloudException, InternalException {
         ProviderContext ctx = provider.getContext();
 
         if( ctx == null ) {
             throw new InternalException("No context exists for this request");
         }
-        while( System.currentTimeMillis() < timeout ) {
-            try {
-                NovaMethod method = new NovaMethod(provider);
-                JSONObject response = method.getResource(SERVICE, "/status", jobId + "?showDetails=true", false);
-    
-                if( response == null ) {
-                    throw new CloudException("Job disappeared");
-                }
-                String status = (response.has("status")? response.getString("status") : null);
-                
-                if( status == null ) {
-                    throw new CloudException("No job status");
-                }
-                if( status.equalsIgnoreCase("completed") ) {
-                    if( response.has("response") ) {
-                        return response.getJSONObject("response");
+        JSONObject result = Waiter.await(new Waiter.Check<JSONObject>() {
+            public @Nullable JSONObject check() throws CloudException, InternalException {
+                try {
+                    NovaMethod method = new NovaMethod(provider);
+                    JSONObject response = method.getResource(SERVICE, "/status", jobId + "?showDetails=true", false);
+
+                    if( response == null ) {
+                        throw new CloudException("Job disappeared");
                     }
-                }
-                else if( status.equalsIgnoreCase("error") ) {
-                    if( response.has("error") ) {
-                        JSONObject error = response.getJSONObject("error");
-                        
-                        if( error == null ) {
-                            throw new CloudException("Unknown error");
+                    String status = (response.has("status")? response.getString("status") : null);
+
+                    if( status == null ) {
+                        throw new CloudException("No job status");
+                    }
+                    if( status.equalsIgnoreCase("completed") ) {
+                        if( response.has("response") ) {
+                            return response.getJSONObject("response");
+                        }
+                    }
+                    else if( status.equalsIgnoreCase("error") ) {
+                        if( response.has("error") ) {
+                            JSONObject error = response.getJSONObject("error");
+
+                            if( error == null ) {
+                                throw new CloudException("Unknown error");
+                            }
+                            int code = (error.has("code") ? error.getInt("code") : 418);
+
+                            throw new NovaException(NovaException.parseException(code, error.toString()));
                         }
-                        int code = (error.has("code") ? error.getInt("code") : 418);
-                        
-                        throw new NovaException(NovaException.parseException(code, error.toString()));
+                        throw new CloudException("Unknown error");
                     }
-                    throw new CloudException("Unknown error");
+                    return null;
+                }
+                catch( JSONException e ) {
+                    throw new CloudException("Invalid JSON from server: " + e.getMessage());
                 }
             }
-            catch( JSONException e ) {
-                throw new CloudException("Invalid JSON from server: " + e.getMessage());
-            }
-            try { Thread.sleep(CalendarWrapper.SECOND * 30); }
-            catch( InterruptedException ignore ) { }
+        }, new Waiter.Backoff(CalendarWrapper.SECOND, CalendarWrapper.SECOND * 30, CalendarWrapper.MINUTE * 20));
+
+        if( result == null ) {
+            throw new CloudException("Operation timed out");
         }
-        throw new CloudException("Operation timed out");
+        return result;
     }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ import org.dasein.cloud.openstack.nova.os.*;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.cloud.util.Cache;
 import org.dasein.cloud.util.CacheLevel;
+import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.time.Day;
 import org.dasein.util.uom.time.TimePeriod;
 import org.json.JSONArray;
@@ -117,9 +118,23 @@ public class Quantum extends AbstractVLANSupport {
                 return b.next();
             }
         }
+        String stored = WarmStartStore.get(getContext(), "quantumness", 1);
+
+        if( stored != null ) {
+            try {
+                QuantumType type = QuantumType.valueOf(stored);
+
+                cache.put(getContext(), Collections.singletonList(type));
+                return type;
+            }
+            catch( IllegalArgumentException e ) {
+                logger.warn("Ignoring unknown warm start network type: " + stored);
+            }
+        }
         try {
             if( ((NovaOpenStack)getProvider()).getCloudProvider().equals(OpenStackProvider.RACKSPACE) ) {
                 cache.put(getContext(), Collections.singletonList(QuantumType.RACKSPACE));
+                WarmStartStore.put(getContext(), "quantumness", 1, QuantumType.RACKSPACE.name(), CalendarWrapper.DAY);
                 return QuantumType.RACKSPACE;
             }
             NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
@@ -129,6 +144,7 @@ public class Quantum extends AbstractVLANSupport {
 
                 if( ob != null && ob.has("networks") ) {
                     cache.put(getContext(), Collections.singletonList(QuantumType.QUANTUM));
+                    WarmStartStore.put(getContext(), "quantumness", 1, QuantumType.QUANTUM.name(), CalendarWrapper.DAY);
                     return QuantumType.QUANTUM;
                 }
             }
@@ -141,6 +157,7 @@ public class Quantum extends AbstractVLANSupport {
 
                 if( ob != null && ob.has("networks") ) {
                     cache.put(getContext(), Collections.singletonList(QuantumType.NOVA));
+                    WarmStartStore.put(getContext(), "quantumness", 1, QuantumType.NOVA.name(), CalendarWrapper.DAY);
                     return QuantumType.NOVA;
                 }
             }
@@ -638,6 +655,30 @@ public class Quantum extends AbstractVLANSupport {
     @Override
     public @Nonnull Iterable<Subnet> listSubnets(@Nonnull String inVlanId) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "VLAN.listSubnets");
+        try {
+            ArrayList<Subnet> subnets = new ArrayList<Subnet>();
+
+            for( Subnet subnet : listAllSubnets() ) {
+                if( subnet.getProviderVlanId().equals(inVlanId) ) {
+                    subnets.add(subnet);
+                }
+            }
+            return subnets;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    /**
+     * Lists the subnets of every network in a single call so callers matching many resources against their
+     * subnets can index the result instead of asking once per network.
+     * @return all subnets visible to this account
+     * @throws CloudException an error occurred with the cloud provider while listing the subnets
+     * @throws InternalException an error occurred within Dasein Cloud while listing the subnets
+     */
+    public @Nonnull Iterable<Subnet> listAllSubnets() throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "VLAN.listAllSubnets");
         try {
             if( !getNetworkType().equals(QuantumType.QUANTUM) ) {
                 return Collections.emptyList();
@@ -660,7 +701,7 @@ public class Quantum extends AbstractVLANSupport {
                     for( int i=0; i<list.length(); i++ ) {
                         Subnet subnet = toSubnet(list.getJSONObject(i), null);
 
-                        if( subnet != null && subnet.getProviderVlanId().equals(inVlanId) ) {
+                        if( subnet != null ) {
                             subnets.add(subnet);
                         }
                     }
@@ -727,35 +768,25 @@ public class Quantum extends AbstractVLANSupport {
         APITrace.begin(getProvider(), "VLAN.listVlans");
         try {
             NovaMethod method = new NovaMethod((NovaOpenStack)getProvider());
-            JSONObject ob = null;
-            if (getNetworkType().equals(QuantumType.QUANTUM) ) {
-                ob = method.getNetworks(getNetworkResource(), null, false);
-            }
-            else {
-                ob = method.getServers(getNetworkResource(), null, false);
-            }
-            ArrayList<VLAN> networks = new ArrayList<VLAN>();
-
-            try {
-                if( ob != null && ob.has("networks") ) {
-                    JSONArray list = ob.getJSONArray("networks");
-
-                    for( int i=0; i<list.length(); i++ ) {
-                        VLAN v = toVLAN(list.getJSONObject(i));
+            final ArrayList<VLAN> networks = new ArrayList<VLAN>();
+            JSONStreamParser.Handler handler = new JSONStreamParser.Handler() {
+                public void handle(@Nonnull JSONObject network) throws CloudException, InternalException {
+                    VLAN v = toVLAN(network);
 
-                        if( v != null ) {
-                            if( v.getProviderVlanId().equals("00000000-0000-0000-0000-000000000000") || v.getProviderVlanId().equals("11111111-1111-1111-1111-111111111111") ) {
-                                continue;
-                            }
-                            networks.add(v);
+                    if( v != null ) {
+                        if( v.getProviderVlanId().equals("00000000-0000-0000-0000-000000000000") || v.getProviderVlanId().equals("11111111-1111-1111-1111-111111111111") ) {
+                            return;
                         }
+                        networks.add(v);
                     }
                 }
+            };
+
+            if (getNetworkType().equals(QuantumType.QUANTUM) ) {
+                method.streamNetworks(getNetworkResource(), "networks", handler);
             }
-            catch( JSONException e ) {
-                logger.error("Unable to identify expected values in JSON: " + e.getMessage());
-                e.printStackTrace();
-                throw new CloudException(CloudErrorType.COMMUNICATION, 200, "invalidJson", "Missing JSON element for networks in " + ob.toString());
+            else {
+                method.streamServers(getNetworkResource(), "networks", handler);
             }
             return networks;
         }
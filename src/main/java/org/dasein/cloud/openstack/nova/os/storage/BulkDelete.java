@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.openstack.nova.os.NovaException;
+import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.SwiftMethod;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Deletes many objects from a container. Names are taken from the source in batches of
+ * {@link SwiftMethod#BULK_DELETE_LIMIT}, and each batch goes out as a single <code>?bulk-delete</code> request. If
+ * the cloud has no bulk delete middleware, each batch is deleted with concurrent DELETE requests instead, with at
+ * most {@link #DELETE_CONCURRENCY} in flight. Endpoints found to lack bulk delete are remembered so later batches do
+ * not probe again. Objects that are already gone count as deleted.
+ */
+class BulkDelete {
+    static private final Logger logger = NovaOpenStack.getLogger(BulkDelete.class, "std");
+
+    static public final String DELETE_CONCURRENCY = "deleteConcurrency";
+
+    static private final int DEFAULT_DELETE_CONCURRENCY = 16;
+
+    static private final ConcurrentHashMap<String,Boolean> unsupported = new ConcurrentHashMap<String, Boolean>();
+
+    private NovaOpenStack provider;
+
+    BulkDelete(@Nonnull NovaOpenStack provider) { this.provider = provider; }
+
+    /**
+     * Deletes the named objects from the container.
+     * @param bucket the container holding the objects
+     * @param objects the names of the objects to delete
+     * @return the objects that could not be deleted, each with the reason it failed
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull Map<String,String> delete(@Nonnull String bucket, @Nonnull Iterable<String> objects) throws CloudException, InternalException {
+        TreeMap<String,String> failures = new TreeMap<String, String>();
+        Iterator<String> it = objects.iterator();
+
+        while( it.hasNext() ) {
+            ArrayList<String> batch = new ArrayList<String>();
+
+            while( it.hasNext() && batch.size() < SwiftMethod.BULK_DELETE_LIMIT ) {
+                batch.add(it.next());
+            }
+            if( !bulkDelete(bucket, batch, failures) ) {
+                concurrentDelete(bucket, batch, failures);
+            }
+        }
+        return failures;
+    }
+
+    private boolean bulkDelete(@Nonnull String bucket, @Nonnull ArrayList<String> batch, @Nonnull Map<String,String> failures) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+
+        if( endpoint == null || unsupported.containsKey(endpoint) ) {
+            return false;
+        }
+        JSONObject report = new SwiftMethod(provider).bulkDelete(bucket, batch);
+
+        if( report == null ) {
+            logger.info("Bulk delete is not available at " + endpoint + "; deleting objects individually");
+            unsupported.put(endpoint, true);
+            return false;
+        }
+        try {
+            JSONArray errors = (report.has("Errors") ? report.optJSONArray("Errors") : null);
+
+            if( errors != null ) {
+                String prefix = "/" + bucket + "/";
+
+                for( int i=0; i<errors.length(); i++ ) {
+                    JSONArray error = errors.getJSONArray(i);
+                    String path = error.getString(0);
+
+                    failures.put(path.startsWith(prefix) ? path.substring(prefix.length()) : path, error.optString(1));
+                }
+            }
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Bulk delete from " + bucket + ": " + report.optInt("Number Deleted") + " deleted, " + report.optInt("Number Not Found") + " not found, " + (errors == null ? 0 : errors.length()) + " failed");
+            }
+        }
+        catch( JSONException e ) {
+            throw new CloudException(e);
+        }
+        return true;
+    }
+
+    private void concurrentDelete(@Nonnull final String bucket, @Nonnull ArrayList<String> batch, @Nonnull Map<String,String> failures) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+        LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+        LinkedList<String> names = new LinkedList<String>();
+        int concurrency = getConcurrency();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + provider.getAuthenticationContext().getMyRegion());
+        }
+        for( final String object : batch ) {
+            if( pending.size() >= concurrency ) {
+                collect(names.removeFirst(), pending.removeFirst(), failures);
+            }
+            names.add(object);
+            pending.add(RequestExecutor.submit(provider, "object-store", endpoint, new Callable<String>() {
+                public String call() throws CloudException, InternalException {
+                    try {
+                        new SwiftMethod(provider).delete(bucket, object);
+                    }
+                    catch( NovaException e ) {
+                        if( e.getHttpCode() != HttpStatus.SC_NOT_FOUND ) {
+                            return e.getHttpCode() + " " + e.getMessage();
+                        }
+                    }
+                    catch( CloudException e ) {
+                        return e.getMessage();
+                    }
+                    return null;
+                }
+            }));
+        }
+        while( !pending.isEmpty() ) {
+            collect(names.removeFirst(), pending.removeFirst(), failures);
+        }
+    }
+
+    private void collect(@Nonnull String object, @Nonnull Future<String> future, @Nonnull Map<String,String> failures) throws InternalException {
+        String error;
+
+        try {
+            error = RequestExecutor.await(future);
+        }
+        catch( CloudException e ) {
+            error = e.getMessage();
+        }
+        if( error != null ) {
+            failures.put(object, error);
+        }
+    }
+
+    private int getConcurrency() {
+        return (int)NovaOpenStack.getNumericProperty(provider.getContext(), DELETE_CONCURRENCY, DEFAULT_DELETE_CONCURRENCY, 1L);
+    }
+}
@@ -0,0 +1,569 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
+import org.dasein.cloud.openstack.nova.os.NovaException;
+import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.SwiftMethod;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Copies, finds and removes the segments behind Swift large objects. Deleting or overwriting a large object through a
+ * plain DELETE or PUT only replaces its manifest, leaving its segments stored and billed. Static Large Objects are
+ * deleted with <code>?multipart-manifest=delete</code> so that Swift removes the segments itself; Dynamic Large
+ * Objects have their segment prefix listed and deleted after the manifest.
+ * <p>
+ * Every large object owns its segments. A copy gets its own server-side copy of each segment under its own name
+ * rather than a second manifest over the source's segments, so removing either object never breaks the other.
+ * </p>
+ */
+class LargeObjects {
+    static private final Logger logger = NovaOpenStack.getLogger(LargeObjects.class, "std");
+
+    /**
+     * The suffix of the container into which {@link SegmentedUpload} stores the segments of a bucket's objects.
+     */
+    static public final String SEGMENT_CONTAINER_SUFFIX = "_segments";
+
+    /**
+     * The number of path elements {@link SegmentedUpload} appends to the object name to name a segment.
+     */
+    static private final int SEGMENT_NAME_DEPTH = 5;
+
+    /**
+     * A segment of a large object, in the order it appears in the object.
+     */
+    static class Part {
+        public String container;
+        public String name;
+        public String etag;
+        public long   bytes;
+        public String copy;
+    }
+
+    /**
+     * Copies an object within Swift without its content passing through the client. A large object is copied by
+     * copying each of its segments server-side to a name of the target's own and then writing a manifest of the
+     * same kind over the copies; anything else is copied through <code>X-Copy-From</code>. The segments of a large
+     * object the copy replaces are removed once it is committed, and the copied segments are removed again if the
+     * copy fails part way.
+     * @param provider the provider for the copy
+     * @param sourceBucket the container holding the object to copy
+     * @param sourceObject the name of the object to copy
+     * @param targetBucket the container receiving the copy
+     * @param targetObject the name of the copy
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public void copy(@Nonnull NovaOpenStack provider, @Nonnull String sourceBucket, @Nonnull String sourceObject, @Nonnull String targetBucket, @Nonnull String targetObject) throws CloudException, InternalException {
+        SwiftMethod method = new SwiftMethod(provider);
+        Map<String,String> headers = method.head(sourceBucket, sourceObject);
+        boolean dynamic = (headers != null && SwiftMethod.getHeader(headers, "X-Object-Manifest") != null);
+
+        if( headers == null || (!dynamic && !isStatic(headers)) ) {
+            method.copy(sourceBucket, sourceObject, targetBucket, targetObject);
+            return;
+        }
+        List<Part> parts = (dynamic ? listParts(method, SwiftMethod.getHeader(headers, "X-Object-Manifest")) : toParts(method.getManifest(sourceBucket, sourceObject)));
+
+        if( parts == null ) {
+            throw new CloudException("No such object: " + sourceBucket + "/" + sourceObject);
+        }
+        String container = targetBucket + SEGMENT_CONTAINER_SUFFIX;
+        String length = SwiftMethod.getHeader(headers, "Content-Length");
+        String prefix = targetObject + (dynamic ? "/dlo/" : "/slo/") + System.currentTimeMillis() + "/" + (length == null ? "0" : length) + "/copy/";
+        Map<String,Collection<String>> previous = findSegments(provider, targetBucket, targetObject);
+
+        for( int i=0; i<parts.size(); i++ ) {
+            parts.get(i).copy = prefix + String.format("%08d", i);
+        }
+        method.put(container);
+        copyParts(provider, container, parts);
+        try {
+            if( dynamic ) {
+                method.putManifest(targetBucket, targetObject, container + "/" + prefix);
+            }
+            else {
+                JSONArray manifest = new JSONArray();
+
+                try {
+                    for( Part part : parts ) {
+                        JSONObject entry = new JSONObject();
+
+                        entry.put("path", "/" + container + "/" + part.copy);
+                        entry.put("etag", part.etag);
+                        entry.put("size_bytes", part.bytes);
+                        manifest.put(entry);
+                    }
+                }
+                catch( JSONException e ) {
+                    throw new InternalException(e);
+                }
+                method.putManifest(targetBucket, targetObject, manifest);
+            }
+        }
+        catch( CloudException e ) {
+            removeCopies(provider, container, parts);
+            throw e;
+        }
+        catch( InternalException e ) {
+            removeCopies(provider, container, parts);
+            throw e;
+        }
+        if( previous != null ) {
+            HashSet<String> current = new HashSet<String>();
+
+            for( Part part : parts ) {
+                current.add(container + "/" + part.copy);
+            }
+            removeReplaced(provider, targetBucket, targetObject, previous, current);
+        }
+    }
+
+    /**
+     * Lists the segments behind an object.
+     * @param provider the provider for the listing
+     * @param bucket the container of the object
+     * @param object the name of the object
+     * @return the names of the segments keyed by their container, or <code>null</code> if the object is missing or
+     * is not a large object
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public @Nullable Map<String,Collection<String>> findSegments(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
+        SwiftMethod method = new SwiftMethod(provider);
+        Map<String,String> headers = method.head(bucket, object);
+
+        if( headers == null ) {
+            return null;
+        }
+        if( isStatic(headers) ) {
+            JSONArray manifest = method.getManifest(bucket, object);
+
+            return (manifest == null ? null : toSegments(manifest));
+        }
+        String prefix = SwiftMethod.getHeader(headers, "X-Object-Manifest");
+
+        if( prefix == null ) {
+            return null;
+        }
+        int idx = prefix.indexOf('/');
+        String container = (idx < 0 ? prefix : prefix.substring(0, idx));
+        final ArrayList<String> names = new ArrayList<String>();
+
+        method.list(container, (idx < 0 ? "" : prefix.substring(idx + 1)), null, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject item) throws JSONException {
+                if( item.has("name") ) {
+                    names.add(item.getString("name"));
+                }
+            }
+        });
+        return Collections.<String,Collection<String>>singletonMap(container, names);
+    }
+
+    /**
+     * Removes an object and, if it is a large object, every segment behind it.
+     * @param provider the provider for the removal
+     * @param bucket the container of the object
+     * @param object the name of the object
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public void remove(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull String object) throws CloudException, InternalException {
+        SwiftMethod method = new SwiftMethod(provider);
+        Map<String,String> headers = method.head(bucket, object);
+
+        if( headers != null && isStatic(headers) ) {
+            method.deleteManifest(bucket, object);
+            return;
+        }
+        Map<String,Collection<String>> segments = (headers != null && SwiftMethod.getHeader(headers, "X-Object-Manifest") != null ? findSegments(provider, bucket, object) : null);
+
+        method.delete(bucket, object);
+        if( segments != null ) {
+            removeSegments(provider, segments, Collections.<String>emptySet());
+        }
+    }
+
+    /**
+     * Removes segments, keeping any still in use.
+     * @param provider the provider for the removal
+     * @param segments the names of the segments keyed by their container
+     * @param keep the segments to leave in place as <code>container/name</code>
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public void removeSegments(@Nonnull NovaOpenStack provider, @Nonnull Map<String,Collection<String>> segments, @Nonnull Collection<String> keep) throws CloudException, InternalException {
+        for( Map.Entry<String,Collection<String>> entry : segments.entrySet() ) {
+            ArrayList<String> names = new ArrayList<String>();
+
+            for( String name : entry.getValue() ) {
+                if( !keep.contains(entry.getKey() + "/" + name) ) {
+                    names.add(name);
+                }
+            }
+            if( names.isEmpty() ) {
+                continue;
+            }
+            Map<String,String> failures = new BulkDelete(provider).delete(entry.getKey(), names);
+
+            for( Map.Entry<String,String> failure : failures.entrySet() ) {
+                logger.warn("Unable to remove segment " + entry.getKey() + "/" + failure.getKey() + ": " + failure.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the segments of a large object that has just been replaced, keeping any the replacement uses. Only
+     * segments stored under the object's own name in the bucket's segment container are removed; a manifest written
+     * by another tool may reference segments owned by some other object, and those are left alone. Failures are
+     * logged rather than reported since the replacement has already been committed.
+     * @param provider the provider for the removal
+     * @param bucket the container of the object
+     * @param object the name of the object
+     * @param previous the segments of the replaced object keyed by their container
+     * @param keep the segments of the replacement as <code>container/name</code>
+     */
+    static public void removeReplaced(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull String object, @Nonnull Map<String,Collection<String>> previous, @Nonnull Collection<String> keep) {
+        String container = bucket + SEGMENT_CONTAINER_SUFFIX;
+        List<String> owned = toOwned(object, previous.get(container));
+
+        if( logger.isDebugEnabled() ) {
+            int total = 0;
+
+            for( Collection<String> segments : previous.values() ) {
+                total += segments.size();
+            }
+            if( owned.size() < total ) {
+                logger.debug("Leaving " + (total - owned.size()) + " segments of " + bucket + "/" + object + " that are not named for it in place");
+            }
+        }
+        try {
+            removeSegments(provider, Collections.<String,Collection<String>>singletonMap(container, owned), keep);
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to remove the replaced segments of " + bucket + "/" + object + ": " + t.getMessage());
+        }
+    }
+
+    /**
+     * Removes the segments {@link SegmentedUpload} stored for objects that have since been deleted in bulk. Bulk
+     * deletion cannot ask Swift to follow manifests, so the bucket's segment container is listed once and the
+     * segments named for each deleted object are removed. Segments are named for the object that owns them, since
+     * copies never share segments, but an object recreated under a deleted name since its removal keeps whatever its
+     * manifest references.
+     * @param provider the provider for the removal
+     * @param bucket the container the objects were deleted from
+     * @param objects the names of the deleted objects
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public void removeOrphans(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull final Collection<String> objects) throws CloudException, InternalException {
+        if( objects.isEmpty() ) {
+            return;
+        }
+        String container = bucket + SEGMENT_CONTAINER_SUFFIX;
+        final TreeMap<String,Collection<String>> owned = new TreeMap<String, Collection<String>>();
+
+        new SwiftMethod(provider).list(container, null, null, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject item) throws JSONException {
+                String name = (item.has("name") ? item.getString("name") : null);
+                String owner = (name == null ? null : toOwner(name));
+
+                if( owner != null && objects.contains(owner) ) {
+                    Collection<String> names = owned.get(owner);
+
+                    if( names == null ) {
+                        names = new ArrayList<String>();
+                        owned.put(owner, names);
+                    }
+                    names.add(name);
+                }
+            }
+        });
+        for( Map.Entry<String,Collection<String>> entry : owned.entrySet() ) {
+            Set<String> keep = toPaths(findSegments(provider, bucket, entry.getKey()));
+
+            removeSegments(provider, Collections.singletonMap(container, entry.getValue()), keep);
+        }
+    }
+
+    /**
+     * Removes a bucket's segment container once nothing is left in it.
+     * @param provider the provider for the removal
+     * @param bucket the bucket whose segment container should go
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static public void removeSegmentContainer(@Nonnull NovaOpenStack provider, @Nonnull String bucket) throws CloudException, InternalException {
+        try {
+            new SwiftMethod(provider).delete(bucket + SEGMENT_CONTAINER_SUFFIX);
+        }
+        catch( NovaException e ) {
+            // missing, or still holding segments of objects in other buckets
+            if( e.getHttpCode() != HttpStatus.SC_NOT_FOUND && e.getHttpCode() != HttpStatus.SC_CONFLICT ) {
+                throw e;
+            }
+        }
+    }
+
+    static private void copyParts(@Nonnull final NovaOpenStack provider, @Nonnull final String container, @Nonnull List<Part> parts) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+        int concurrency = (int)NovaOpenStack.getNumericProperty(provider.getContext(), SegmentedUpload.SEGMENT_CONCURRENCY, SegmentedUpload.DEFAULT_SEGMENT_CONCURRENCY, 1L);
+        LinkedList<Future<Void>> pending = new LinkedList<Future<Void>>();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + provider.getAuthenticationContext().getMyRegion());
+        }
+        try {
+            for( final Part part : parts ) {
+                if( pending.size() >= concurrency ) {
+                    RequestExecutor.await(pending.removeFirst());
+                }
+                pending.add(RequestExecutor.submit(provider, "object-store", endpoint, new Callable<Void>() {
+                    public Void call() throws CloudException, InternalException {
+                        new SwiftMethod(provider).copy(part.container, part.name, container, part.copy);
+                        return null;
+                    }
+                }));
+            }
+            while( !pending.isEmpty() ) {
+                RequestExecutor.await(pending.removeFirst());
+            }
+        }
+        catch( CloudException e ) {
+            drain(pending);
+            removeCopies(provider, container, parts);
+            throw e;
+        }
+        catch( InternalException e ) {
+            drain(pending);
+            removeCopies(provider, container, parts);
+            throw e;
+        }
+    }
+
+    static private void drain(@Nonnull Collection<Future<Void>> pending) {
+        for( Future<Void> future : pending ) {
+            try {
+                RequestExecutor.await(future);
+            }
+            catch( Throwable ignore ) {
+                // already failing; whatever it copied is removed with the rest
+            }
+        }
+    }
+
+    static private void removeCopies(@Nonnull NovaOpenStack provider, @Nonnull String container, @Nonnull List<Part> parts) {
+        ArrayList<String> names = new ArrayList<String>();
+
+        for( Part part : parts ) {
+            names.add(part.copy);
+        }
+        try {
+            // segments that were never copied simply fail to delete
+            removeSegments(provider, Collections.<String,Collection<String>>singletonMap(container, names), Collections.<String>emptySet());
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to remove copied segments from " + container + ": " + t.getMessage());
+        }
+    }
+
+    static private boolean isStatic(@Nonnull Map<String,String> headers) {
+        return "true".equalsIgnoreCase(SwiftMethod.getHeader(headers, "X-Static-Large-Object"));
+    }
+
+    /**
+     * @param segment the name of a segment stored by {@link SegmentedUpload}
+     * @return the name of the object the segment was stored for, or <code>null</code> if the name does not follow
+     * the segment naming scheme
+     */
+    static @Nullable String toOwner(@Nonnull String segment) {
+        int idx = segment.length();
+
+        for( int i=0; i<SEGMENT_NAME_DEPTH; i++ ) {
+            idx = segment.lastIndexOf('/', idx - 1);
+            if( idx < 1 ) {
+                return null;
+            }
+        }
+        String kind = segment.substring(idx + 1, segment.indexOf('/', idx + 1));
+
+        return (kind.equals("slo") || kind.equals("dlo") ? segment.substring(0, idx) : null);
+    }
+
+    /**
+     * @param object the name of an object
+     * @param names the names of segments in the segment container of the object's bucket
+     * @return the segments named for the object itself
+     */
+    static @Nonnull List<String> toOwned(@Nonnull String object, @Nullable Collection<String> names) {
+        ArrayList<String> owned = new ArrayList<String>();
+
+        if( names != null ) {
+            for( String name : names ) {
+                if( object.equals(toOwner(name)) ) {
+                    owned.add(name);
+                }
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * @param segments the names of segments keyed by their container
+     * @return the segments as <code>container/name</code>
+     */
+    static @Nonnull Set<String> toPaths(@Nullable Map<String,Collection<String>> segments) {
+        HashSet<String> paths = new HashSet<String>();
+
+        if( segments != null ) {
+            for( Map.Entry<String,Collection<String>> entry : segments.entrySet() ) {
+                for( String name : entry.getValue() ) {
+                    paths.add(entry.getKey() + "/" + name);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Lists the segments of a Dynamic Large Object in the order Swift joins them.
+     * @param method the method for the listing
+     * @param manifest the <code>X-Object-Manifest</code> of the object
+     * @return the segments
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    static private @Nonnull List<Part> listParts(@Nonnull SwiftMethod method, @Nonnull String manifest) throws CloudException, InternalException {
+        int idx = manifest.indexOf('/');
+        final String container = (idx < 0 ? manifest : manifest.substring(0, idx));
+        final ArrayList<Part> parts = new ArrayList<Part>();
+
+        method.list(container, (idx < 0 ? "" : manifest.substring(idx + 1)), null, new JSONStreamParser.Handler() {
+            public void handle(@Nonnull JSONObject item) throws JSONException {
+                if( item.has("name") ) {
+                    Part part = new Part();
+
+                    part.container = container;
+                    part.name = item.getString("name");
+                    part.etag = item.optString("hash", null);
+                    part.bytes = item.optLong("bytes", 0L);
+                    parts.add(part);
+                }
+            }
+        });
+        return parts;
+    }
+
+    /**
+     * @param manifest a Static Large Object manifest as read back through <code>?multipart-manifest=get</code>
+     * @return its segments in order, or <code>null</code> if there is no manifest
+     * @throws CloudException the manifest is not in the expected form
+     */
+    static @Nullable List<Part> toParts(@Nullable JSONArray manifest) throws CloudException {
+        if( manifest == null ) {
+            return null;
+        }
+        ArrayList<Part> parts = new ArrayList<Part>();
+
+        try {
+            for( int i=0; i<manifest.length(); i++ ) {
+                JSONObject segment = manifest.getJSONObject(i);
+                String path = segment.getString("name");
+
+                if( path.startsWith("/") ) {
+                    path = path.substring(1);
+                }
+                int idx = path.indexOf('/');
+
+                if( idx < 1 ) {
+                    throw new CloudException("Invalid segment path in manifest: " + segment.getString("name"));
+                }
+                Part part = new Part();
+
+                part.container = path.substring(0, idx);
+                part.name = path.substring(idx + 1);
+                part.etag = segment.getString("hash");
+                part.bytes = segment.getLong("bytes");
+                parts.add(part);
+            }
+        }
+        catch( JSONException e ) {
+            throw new CloudException(e);
+        }
+        return parts;
+    }
+
+    static @Nonnull Map<String,Collection<String>> toSegments(@Nonnull JSONArray manifest) throws CloudException {
+        TreeMap<String,Collection<String>> segments = new TreeMap<String, Collection<String>>();
+
+        try {
+            for( int i=0; i<manifest.length(); i++ ) {
+                String path = manifest.getJSONObject(i).getString("name");
+
+                if( path.startsWith("/") ) {
+                    path = path.substring(1);
+                }
+                int idx = path.indexOf('/');
+
+                if( idx < 1 ) {
+                    continue;
+                }
+                String container = path.substring(0, idx);
+                Collection<String> names = segments.get(container);
+
+                if( names == null ) {
+                    names = new ArrayList<String>();
+                    segments.put(container, names);
+                }
+                names.add(path.substring(idx + 1));
+            }
+        }
+        catch( JSONException e ) {
+            throw new CloudException(e);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.openstack.nova.os.ChecksumMismatchException;
+import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.SwiftMethod;
+import org.dasein.cloud.openstack.nova.os.VerifyingInputStream;
+import org.dasein.cloud.storage.FileTransfer;
+
+/**
+ * Downloads an object with concurrent HTTP <code>Range</code> requests. The target file is preallocated to the size
+ * of the object and every range is written into place with positional {@link FileChannel} writes. A range whose
+ * stream breaks is requested again starting from the last byte written rather than from the start of the range, so
+ * an interruption only costs the bytes that were in flight.
+ * <p>
+ * The file is hashed with MD5 as a contiguous prefix while it downloads and the result compared to the object's
+ * <code>ETag</code>. Bytes written at the end of the hashed prefix are hashed straight from the network buffer; bytes
+ * that arrived ahead of it, because ranges run concurrently, are read back from the file as soon as the prefix reaches
+ * them, while they are still in the page cache. There is no separate checksum pass once the download completes. Large
+ * objects, whose <code>ETag</code> is a hash of their segments' hashes rather than of their content, are not checked.
+ * </p>
+ * <p>
+ * Behavior is controlled by the custom properties {@link #RANGED_DOWNLOAD_THRESHOLD}, {@link #RANGE_SIZE} and
+ * {@link #RANGE_CONCURRENCY}.
+ * </p>
+ */
+class RangedDownload {
+    static private final Logger logger = NovaOpenStack.getLogger(RangedDownload.class, "std");
+
+    static public final String RANGED_DOWNLOAD_THRESHOLD = "rangedDownloadThreshold";
+    static public final String RANGE_SIZE                = "rangeSize";
+    static public final String RANGE_CONCURRENCY         = "rangeConcurrency";
+
+    static private final long DEFAULT_RANGED_DOWNLOAD_THRESHOLD = 64L * 1024L * 1024L;
+    static private final long DEFAULT_RANGE_SIZE                = 32L * 1024L * 1024L;
+    static private final int  DEFAULT_RANGE_CONCURRENCY         = 4;
+    static private final int  RANGE_ATTEMPTS                    = 5;
+
+    /**
+     * Decides whether an object of the specified size should be fetched in ranges in this context.
+     * @param provider the provider for the download
+     * @param length the size of the object in bytes
+     * @return true if the object should be fetched in ranges
+     */
+    static public boolean isRanged(@Nonnull NovaOpenStack provider, long length) {
+        return (length > NovaOpenStack.getNumericProperty(provider.getContext(), RANGED_DOWNLOAD_THRESHOLD, DEFAULT_RANGED_DOWNLOAD_THRESHOLD, 1L));
+    }
+
+    private NovaOpenStack provider;
+    private String        bucket;
+    private String        object;
+    private String        etag;
+    private long          length;
+    private long          rangeSize;
+    private int           concurrency;
+    private FileTransfer  transfer;
+    private AtomicLong    transferred = new AtomicLong(0L);
+    private PrefixDigest  digest;
+
+    RangedDownload(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull String object, @Nullable String etag, @Nonnegative long length, @Nullable FileTransfer transfer) {
+        ProviderContext ctx = provider.getContext();
+
+        this.provider = provider;
+        this.bucket = bucket;
+        this.object = object;
+        this.etag = etag;
+        this.length = length;
+        this.transfer = transfer;
+        this.rangeSize = NovaOpenStack.getNumericProperty(ctx, RANGE_SIZE, DEFAULT_RANGE_SIZE, 1L);
+        this.concurrency = (int)NovaOpenStack.getNumericProperty(ctx, RANGE_CONCURRENCY, DEFAULT_RANGE_CONCURRENCY, 1L);
+    }
+
+    /**
+     * Fetches the object into the specified file. The file is removed if the download fails or does not match the
+     * object's <code>ETag</code>.
+     * @param toFile the file into which the object is written
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void download(@Nonnull File toFile) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+        boolean ok = false;
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + provider.getAuthenticationContext().getMyRegion());
+        }
+        if( transfer != null ) {
+            transfer.setBytesToTransfer(length);
+            transfer.setBytesTransferred(0L);
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(toFile, "rw");
+
+            try {
+                raf.setLength(length);
+                if( VerifyingInputStream.isMD5(etag) ) {
+                    digest = new PrefixDigest(raf.getChannel());
+                }
+                download(endpoint, raf.getChannel());
+                raf.getChannel().force(false);
+                verify();
+                ok = true;
+            }
+            finally {
+                try { raf.close(); }
+                catch( IOException ignore ) { }
+                if( !ok && !toFile.delete() ) {
+                    logger.warn("Unable to delete partial download: " + toFile);
+                }
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    private void download(@Nonnull String endpoint, @Nonnull final FileChannel channel) throws CloudException, InternalException {
+        LinkedList<Future<Void>> pending = new LinkedList<Future<Void>>();
+        long offset = 0L;
+
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Downloading " + bucket + "/" + object + " (" + length + " bytes) in ranges of " + rangeSize + " bytes");
+        }
+        try {
+            while( offset < length ) {
+                final long from = offset;
+                final long to = Math.min(length, offset + rangeSize) - 1;
+
+                if( pending.size() >= concurrency ) {
+                    RequestExecutor.await(pending.removeFirst());
+                }
+                pending.add(RequestExecutor.submit(provider, "object-store", endpoint, new Callable<Void>() {
+                    public Void call() throws CloudException, InternalException {
+                        fetch(channel, from, to);
+                        return null;
+                    }
+                }));
+                offset = to + 1;
+            }
+            while( !pending.isEmpty() ) {
+                RequestExecutor.await(pending.removeFirst());
+            }
+        }
+        finally {
+            for( Future<Void> future : pending ) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void fetch(@Nonnull FileChannel channel, long from, long to) throws CloudException, InternalException {
+        SwiftMethod method = new SwiftMethod(provider);
+        byte[] buffer = new byte[64 * 1024];
+        long position = from;
+        int attempt = 0;
+
+        while( position <= to ) {
+            InputStream input = null;
+
+            attempt++;
+            try {
+                // a request for the whole object may be answered 200; any other range must come back 206
+                input = (position == 0L && to == length - 1 ? method.get(bucket, object) : method.get(bucket, object, position, to));
+                if( input == null ) {
+                    throw new CloudException("No such object: " + bucket + "/" + object);
+                }
+                int count;
+
+                while( position <= to && (count = input.read(buffer, 0, (int)Math.min(buffer.length, to - position + 1))) != -1 ) {
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+                    long start = position;
+
+                    while( bytes.hasRemaining() ) {
+                        position += channel.write(bytes, position);
+                    }
+                    if( digest != null ) {
+                        digest.update(from, buffer, count, start);
+                    }
+                    progress(count);
+                }
+                if( position <= to ) {
+                    throw new IOException("Stream ended at " + position + " of range " + from + "-" + to);
+                }
+            }
+            catch( IOException e ) {
+                if( attempt >= RANGE_ATTEMPTS ) {
+                    throw new InternalException(e);
+                }
+                logger.warn("Resuming " + bucket + "/" + object + " at " + position + ": " + e.getMessage());
+            }
+            catch( CloudException e ) {
+                if( attempt >= RANGE_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Resuming " + bucket + "/" + object + " at " + position + ": " + e.getMessage());
+            }
+            finally {
+                if( input != null ) {
+                    try { input.close(); }
+                    catch( IOException ignore ) { }
+                }
+            }
+        }
+    }
+
+    private void verify() throws IOException {
+        if( digest == null ) {
+            return;
+        }
+        String actual = digest.finish(length);
+
+        if( !actual.equalsIgnoreCase(etag) ) {
+            throw new ChecksumMismatchException(bucket + "/" + object, etag, actual);
+        }
+    }
+
+    private void progress(int count) {
+        long total = transferred.addAndGet(count);
+
+        if( transfer != null ) {
+            transfer.setBytesTransferred(total);
+        }
+    }
+
+    /**
+     * Hashes a file that is written by concurrent ranges as a contiguous prefix. Each range reports the bytes it
+     * writes; bytes written at the end of the prefix extend it directly, and whatever other ranges already wrote past
+     * the end of the prefix is read back from the file to extend it further.
+     */
+    static class PrefixDigest {
+        private final FileChannel         channel;
+        private final MessageDigest       md5     = VerifyingInputStream.newMD5();
+        private final TreeMap<Long,Long>  written = new TreeMap<Long, Long>();
+        private final ByteBuffer          buffer  = ByteBuffer.allocate(64 * 1024);
+        private long                      hashed  = 0L;
+
+        PrefixDigest(@Nonnull FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Reports bytes a range has just written to the file.
+         * @param from the first byte of the range
+         * @param bytes the bytes written
+         * @param count the number of bytes written
+         * @param position the position in the file at which they were written
+         * @throws IOException the file could not be read back
+         */
+        synchronized void update(@Nonnegative long from, @Nonnull byte[] bytes, int count, @Nonnegative long position) throws IOException {
+            written.put(from, position + count);
+            if( position == hashed ) {
+                md5.update(bytes, 0, count);
+                hashed += count;
+            }
+            catchUp();
+        }
+
+        /**
+         * Completes the hash once every range has been written.
+         * @param length the size of the file
+         * @return the hex MD5 of the file
+         * @throws IOException the file could not be read back or was not written in full
+         */
+        synchronized @Nonnull String finish(@Nonnegative long length) throws IOException {
+            catchUp();
+            if( hashed != length ) {
+                throw new IOException("Only " + hashed + " of " + length + " bytes were written contiguously");
+            }
+            return VerifyingInputStream.toHex(md5.digest());
+        }
+
+        /**
+         * @return the number of bytes hashed so far
+         */
+        synchronized long getHashed() {
+            return hashed;
+        }
+
+        private void catchUp() throws IOException {
+            while( true ) {
+                // ranges are contiguous, so the one holding the end of the prefix starts at or before it
+                Map.Entry<Long,Long> range = written.floorEntry(hashed);
+
+                if( range == null || range.getValue() <= hashed ) {
+                    return;
+                }
+                long end = range.getValue();
+
+                while( hashed < end ) {
+                    buffer.clear();
+                    buffer.limit((int)Math.min(buffer.capacity(), end - hashed));
+                    int count = channel.read(buffer, hashed);
+
+                    if( count < 1 ) {
+                        throw new IOException("Unable to read back " + hashed + " of a download in progress");
+                    }
+                    buffer.flip();
+                    md5.update(buffer);
+                    hashed += count;
+                }
+            }
+        }
+    }
+}
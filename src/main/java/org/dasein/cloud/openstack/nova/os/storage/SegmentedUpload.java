@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
+import org.dasein.cloud.openstack.nova.os.SwiftMethod;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Uploads a file as a Swift large object. The file is split into segments that are uploaded concurrently into the
+ * <code>&lt;bucket&gt;_segments</code> container, each hashed as it is sent and checked against the
+ * <code>ETag</code> Swift reports for it, and each retried on failure. The verified hashes go into the manifest, so
+ * every segment is read from disk only once. Once every segment is stored, a Static Large Object manifest
+ * (or, if so configured, a Dynamic Large Object <code>X-Object-Manifest</code>) joins them under the target name.
+ * Segments are removed again if the manifest cannot be committed, and the segments of any large object the upload
+ * replaced are removed once it has been.
+ * <p>
+ * Behavior is controlled by the custom properties {@link #LARGE_OBJECT_THRESHOLD}, {@link #SEGMENT_SIZE},
+ * {@link #SEGMENT_CONCURRENCY} and {@link #LARGE_OBJECT_MANIFEST}.
+ * </p>
+ */
+class SegmentedUpload {
+    static private final Logger logger = NovaOpenStack.getLogger(SegmentedUpload.class, "std");
+
+    static public final String LARGE_OBJECT_THRESHOLD = "largeObjectThreshold";
+    static public final String SEGMENT_SIZE           = "segmentSize";
+    static public final String SEGMENT_CONCURRENCY    = "segmentConcurrency";
+    static public final String LARGE_OBJECT_MANIFEST  = "largeObjectManifest";
+
+    static public final long MIN_SEGMENT_SIZE = 1024L * 1024L;
+    static public final long MAX_SEGMENT_SIZE = 5000000000L;
+    static public final int  MAX_SEGMENTS     = 1000;
+    static public final long MAX_OBJECT_SIZE  = MAX_SEGMENT_SIZE * MAX_SEGMENTS;
+
+    static public final int DEFAULT_SEGMENT_CONCURRENCY = 4;
+
+    static private final long DEFAULT_LARGE_OBJECT_THRESHOLD = 1024L * 1024L * 1024L;
+    static private final long DEFAULT_SEGMENT_SIZE           = 256L * 1024L * 1024L;
+    static private final int  SEGMENT_ATTEMPTS               = 3;
+
+    static class Segment {
+        public int    index;
+        public long   offset;
+        public long   length;
+        public String name;
+        public String etag;
+    }
+
+    /**
+     * Decides whether a file of the specified size should be uploaded as a large object in this context.
+     * @param provider the provider for the upload
+     * @param length the size of the file in bytes
+     * @return true if the file should be uploaded in segments
+     */
+    static public boolean isSegmented(@Nonnull NovaOpenStack provider, @Nonnegative long length) {
+        long threshold = NovaOpenStack.getNumericProperty(provider.getContext(), LARGE_OBJECT_THRESHOLD, DEFAULT_LARGE_OBJECT_THRESHOLD, 1L);
+
+        return (length > Math.min(threshold, MAX_SEGMENT_SIZE));
+    }
+
+    /**
+     * Chooses the segment size for a file, growing the configured size when a manifest could not otherwise hold
+     * every segment.
+     * @param configured the segment size configured for the context
+     * @param length the size of the file in bytes
+     * @return the segment size in bytes
+     */
+    static long toSegmentSize(long configured, @Nonnegative long length) {
+        long size = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, configured));
+
+        if( (length + size - 1) / size > MAX_SEGMENTS ) {
+            // an SLO manifest holds at most MAX_SEGMENTS entries, so grow the segments rather than fail
+            size = Math.min(MAX_SEGMENT_SIZE, (length + MAX_SEGMENTS - 1) / MAX_SEGMENTS);
+        }
+        return size;
+    }
+
+    /**
+     * Splits a file into segments. An empty file still gets one (empty) segment so its manifest is not empty.
+     * @param prefix the prefix of the segment names
+     * @param length the size of the file in bytes
+     * @param segmentSize the size of every segment but the last
+     * @return the segments in order
+     */
+    static @Nonnull ArrayList<Segment> toSegments(@Nonnull String prefix, @Nonnegative long length, @Nonnegative long segmentSize) {
+        ArrayList<Segment> segments = new ArrayList<Segment>();
+        long offset = 0L;
+
+        do {
+            Segment segment = new Segment();
+
+            segment.index = segments.size();
+            segment.offset = offset;
+            segment.length = Math.min(segmentSize, length - offset);
+            segment.name = prefix + String.format("%08d", segment.index);
+            segments.add(segment);
+            offset += segment.length;
+        } while( offset < length );
+        return segments;
+    }
+
+    private NovaOpenStack provider;
+    private String        bucket;
+    private String        object;
+    private File          file;
+    private long          segmentSize;
+    private int           concurrency;
+    private boolean       dynamic;
+
+    SegmentedUpload(@Nonnull NovaOpenStack provider, @Nonnull String bucket, @Nonnull String object, @Nonnull File file) {
+        ProviderContext ctx = provider.getContext();
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+        String manifest = (p == null ? null : p.getProperty(LARGE_OBJECT_MANIFEST));
+        long length = file.length();
+
+        this.provider = provider;
+        this.bucket = bucket;
+        this.object = object;
+        this.file = file;
+        this.concurrency = (int)NovaOpenStack.getNumericProperty(ctx, SEGMENT_CONCURRENCY, DEFAULT_SEGMENT_CONCURRENCY, 1L);
+        this.dynamic = (manifest != null && manifest.trim().equalsIgnoreCase("dlo"));
+        this.segmentSize = toSegmentSize(NovaOpenStack.getNumericProperty(ctx, SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE, 1L), length);
+    }
+
+    /**
+     * Uploads every segment and then commits the manifest. If any segment or the manifest cannot be stored, the
+     * segments already stored are removed before the failure is reported.
+     * @throws CloudException an error occurred with the cloud provider, including the file exceeding {@link #MAX_OBJECT_SIZE}
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void upload() throws CloudException, InternalException {
+        if( file.length() > MAX_OBJECT_SIZE ) {
+            throw new OperationNotSupportedException("Swift objects may not exceed " + MAX_OBJECT_SIZE + " bytes: " + file + " holds " + file.length());
+        }
+        String container = bucket + LargeObjects.SEGMENT_CONTAINER_SUFFIX;
+        String prefix = object + (dynamic ? "/dlo/" : "/slo/") + file.lastModified() + "/" + file.length() + "/" + segmentSize + "/";
+        ArrayList<Segment> segments = toSegments(prefix, file.length(), segmentSize);
+
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Uploading " + bucket + "/" + object + " in " + segments.size() + " segments of " + segmentSize + " bytes");
+        }
+        SwiftMethod method = new SwiftMethod(provider);
+        Map<String,Collection<String>> previous = findPrevious();
+
+        method.put(container);
+        upload(container, segments);
+        try {
+            if( dynamic ) {
+                method.putManifest(bucket, object, container + "/" + prefix);
+            }
+            else {
+                JSONArray manifest = new JSONArray();
+
+                try {
+                    for( Segment segment : segments ) {
+                        JSONObject entry = new JSONObject();
+
+                        entry.put("path", "/" + container + "/" + segment.name);
+                        entry.put("etag", segment.etag);
+                        entry.put("size_bytes", segment.length);
+                        manifest.put(entry);
+                    }
+                }
+                catch( JSONException e ) {
+                    throw new InternalException(e);
+                }
+                method.putManifest(bucket, object, manifest);
+            }
+        }
+        catch( CloudException e ) {
+            abort(container, new LinkedList<Future<Segment>>(), segments);
+            throw e;
+        }
+        catch( InternalException e ) {
+            abort(container, new LinkedList<Future<Segment>>(), segments);
+            throw e;
+        }
+        if( previous != null ) {
+            HashSet<String> current = new HashSet<String>();
+
+            for( Segment segment : segments ) {
+                current.add(container + "/" + segment.name);
+            }
+            LargeObjects.removeReplaced(provider, bucket, object, previous, current);
+        }
+    }
+
+    /**
+     * @return the segments of the large object this upload replaces, or <code>null</code> if there are none
+     */
+    private @Nullable Map<String,Collection<String>> findPrevious() {
+        try {
+            return LargeObjects.findSegments(provider, bucket, object);
+        }
+        catch( Throwable t ) {
+            // not knowing what the upload replaces only costs storage
+            logger.warn("Unable to check " + bucket + "/" + object + " for existing segments: " + t.getMessage());
+            return null;
+        }
+    }
+
+    private void upload(@Nonnull final String container, @Nonnull ArrayList<Segment> segments) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+        LinkedList<Future<Segment>> pending = new LinkedList<Future<Segment>>();
+        ArrayList<Segment> stored = new ArrayList<Segment>();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + provider.getAuthenticationContext().getMyRegion());
+        }
+        try {
+            for( final Segment segment : segments ) {
+                if( pending.size() >= concurrency ) {
+                    stored.add(RequestExecutor.await(pending.removeFirst()));
+                }
+                pending.add(RequestExecutor.submit(provider, "object-store", endpoint, new Callable<Segment>() {
+                    public Segment call() throws CloudException, InternalException {
+                        return upload(container, segment);
+                    }
+                }));
+            }
+            while( !pending.isEmpty() ) {
+                stored.add(RequestExecutor.await(pending.removeFirst()));
+            }
+        }
+        catch( CloudException e ) {
+            abort(container, pending, stored);
+            throw e;
+        }
+        catch( InternalException e ) {
+            abort(container, pending, stored);
+            throw e;
+        }
+    }
+
+    private @Nonnull Segment upload(@Nonnull String container, @Nonnull Segment segment) throws CloudException, InternalException {
+        SwiftMethod method = new SwiftMethod(provider);
+        int attempt = 0;
+
+        while( true ) {
+            attempt++;
+            InputStream input = open(segment);
+
+            try {
+                segment.etag = method.put(container, segment.name, null, input);
+                return segment;
+            }
+            catch( CloudException e ) {
+                if( attempt >= SEGMENT_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Retrying segment " + segment.index + " of " + bucket + "/" + object + ": " + e.getMessage());
+            }
+            catch( InternalException e ) {
+                if( attempt >= SEGMENT_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Retrying segment " + segment.index + " of " + bucket + "/" + object + ": " + e.getMessage());
+            }
+            finally {
+                try { input.close(); }
+                catch( IOException ignore ) { }
+            }
+        }
+    }
+
+    private void abort(@Nonnull String container, @Nonnull LinkedList<Future<Segment>> pending, @Nonnull ArrayList<Segment> stored) {
+        SwiftMethod method = new SwiftMethod(provider);
+
+        for( Future<Segment> future : pending ) {
+            try {
+                stored.add(RequestExecutor.await(future));
+            }
+            catch( Throwable ignore ) {
+                // already failed; nothing was stored
+            }
+        }
+        for( Segment segment : stored ) {
+            try {
+                method.delete(container, segment.name);
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to remove segment " + container + "/" + segment.name + ": " + t.getMessage());
+            }
+        }
+    }
+
+    private @Nonnull InputStream open(@Nonnull Segment segment) throws InternalException {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            raf.seek(segment.offset);
+            return new SegmentInputStream(Channels.newInputStream(raf.getChannel()), segment.length);
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    /**
+     * Reads no further than the end of a single segment.
+     */
+    static private class SegmentInputStream extends FilterInputStream {
+        private long remaining;
+
+        public SegmentInputStream(@Nonnull InputStream in, @Nonnegative long length) {
+            super(in);
+            remaining = length;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if( remaining < 1L ) {
+                return -1;
+            }
+            int b = super.read();
+
+            if( b != -1 ) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] buffer, int off, int len) throws IOException {
+            if( remaining < 1L ) {
+                return -1;
+            }
+            int count = super.read(buffer, off, (int)Math.min(len, remaining));
+
+            if( count > 0 ) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+}
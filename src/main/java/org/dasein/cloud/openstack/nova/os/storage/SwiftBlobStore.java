@@ -24,20 +24,33 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.LinkedList;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.InternalException;
 import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.openstack.nova.os.AuthenticationContext;
+import org.dasein.cloud.openstack.nova.os.JSONStreamParser;
+import org.dasein.cloud.openstack.nova.os.NovaException;
 import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.RequestExecutor;
 import org.dasein.cloud.openstack.nova.os.SwiftMethod;
 import org.dasein.cloud.storage.AbstractBlobStoreSupport;
 import org.dasein.cloud.storage.Blob;
@@ -49,6 +62,8 @@ import org.dasein.util.JiteratorPopulator;
 import org.dasein.util.PopulatorThread;
 import org.dasein.util.uom.storage.Byte;
 import org.dasein.util.uom.storage.Storage;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -58,7 +73,13 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
 
     static public final int                                       MAX_BUCKETS     = 100;
     static public final int                                       MAX_OBJECTS     = -1;
+
+    static public final String                                    COPY_CONCURRENCY = "copyConcurrency";
+
+    static private final int                                      DEFAULT_COPY_CONCURRENCY = 8;
+    static private final int                                      MOVE_ATTEMPTS            = 3;
     static public final Storage<Byte>                             MAX_OBJECT_SIZE = new Storage<org.dasein.util.uom.storage.Byte>(5000000000L, Storage.BYTE);
+    static public final Storage<Byte>                             MAX_LARGE_OBJECT_SIZE = new Storage<org.dasein.util.uom.storage.Byte>(SegmentedUpload.MAX_SEGMENT_SIZE * SegmentedUpload.MAX_SEGMENTS, Storage.BYTE);
 
     SwiftBlobStore(@Nonnull NovaOpenStack provider) { super(provider); }
 
@@ -160,6 +181,30 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
+    @Override
+    public @Nullable Blob copy(@Nullable String sourceBucket, @Nullable String sourceObject, @Nullable String targetBucket, @Nullable String targetObject) throws InternalException, CloudException {
+        APITrace.begin(getProvider(), "Blob.copy");
+        try {
+            if( sourceBucket == null ) {
+                throw new CloudException("No source bucket was specified");
+            }
+            if( sourceObject == null ) {
+                throw new CloudException("No source object was specified");
+            }
+            if( targetBucket == null ) {
+                throw new CloudException("No target bucket was specified");
+            }
+            if( targetObject == null ) {
+                targetObject = sourceObject;
+            }
+            LargeObjects.copy(getProvider(), sourceBucket, sourceObject, targetBucket, targetObject);
+            return getObject(targetBucket, targetObject);
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
     @Override
     public boolean exists(@Nonnull String bucketName) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "exists");
@@ -167,12 +212,7 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             try {
                 SwiftMethod method = new SwiftMethod(getProvider());
 
-                for( String container : method.get(null) ) {
-                    if( container.equals(bucketName) ) {
-                        return true;
-                    }
-                }
-                return false;
+                return (method.head(bucketName) != null);
             }
             catch( RuntimeException e ) {
                 logger.error("Could not retrieve file info for " + bucketName + ": " + e.getMessage());
@@ -189,16 +229,13 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
     public Blob getBucket(@Nonnull String bucketName) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "Blob.getBucket");
         try {
-            for( Blob blob : list(null) ) {
-                if( blob.isContainer() ) {
-                    String name = blob.getBucketName();
-
-                    if( name != null && name.equals(bucketName) ) {
-                        return blob;
-                    }
-                }
+            if( bucketName.contains("/") ) {
+                return null;
             }
-            return null;
+            if( new SwiftMethod(getProvider()).head(bucketName) == null ) {
+                return null;
+            }
+            return Blob.getInstance(getRegionId(), "/" + bucketName, bucketName, 0L);
         }
         finally {
             APITrace.end();
@@ -212,24 +249,53 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             if( bucketName == null ) {
                 return null;
             }
-            for( Blob blob : list(bucketName) ) {
-                String name = blob.getObjectName();
+            Map<String,String> metaData = new SwiftMethod(getProvider()).head(bucketName, objectName);
 
-                if( name != null && name.equals(objectName) ) {
-                    return blob;
-                }
+            if( metaData == null ) {
+                return null;
             }
-            return null;
+            long size = getMetaDataLength(metaData);
+            long modified = getMetaDataDate("Last-Modified", metaData);
+
+            return Blob.getInstance(getRegionId(), "/" + bucketName + "/" + objectName, bucketName, objectName, modified, new Storage<Byte>(size < 0L ? 0L : size, Storage.BYTE));
         }
         finally {
             APITrace.end();
         }
     }
 
+    private @Nonnull String getRegionId() throws CloudException {
+        ProviderContext ctx = getProvider().getContext();
+
+        if( ctx == null ) {
+            throw new CloudException("No context was specified for this request");
+        }
+        String regionId = ctx.getRegionId();
+
+        if( regionId == null ) {
+            throw new CloudException("No region ID was specified");
+        }
+        return regionId;
+    }
+
     @Nullable
     @Override
     public String getSignedObjectUrl(@Nonnull String bucket, @Nonnull String object, @Nonnull String expiresEpochInSeconds) throws InternalException, CloudException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        APITrace.begin(getProvider(), "Blob.getSignedObjectUrl");
+        try {
+            long expires;
+
+            try {
+                expires = Long.parseLong(expiresEpochInSeconds.trim());
+            }
+            catch( NumberFormatException e ) {
+                throw new InternalException("Invalid expiration time: " + expiresEpochInSeconds);
+            }
+            return new TempUrlSigner(getProvider()).sign(bucket, object, expires);
+        }
+        finally {
+            APITrace.end();
+        }
     }
 
     @Override
@@ -324,7 +390,18 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             }
             SwiftMethod method = new SwiftMethod(getProvider());
             InputStream input;
+            // the length sizes the target file and its ranges, so it must not come from a stale cached HEAD
+            Map<String,String> metaData = method.head(bucket, location, true);
+
+            if( metaData == null ) {
+                throw new CloudException("No such object: " + bucket + "/" + location);
+            }
+            long length = getMetaDataLength(metaData);
 
+            if( RangedDownload.isRanged(getProvider(), length) ) {
+                new RangedDownload(getProvider(), bucket, location, SwiftMethod.getHeader(metaData, "ETag"), length, transfer).download(toFile);
+                return;
+            }
             input = method.get(bucket, location);
             if( input == null ) {
                 throw new CloudException("No such object: " + bucket + "/" + location);
@@ -343,7 +420,8 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
 
     @Override
     public Storage<org.dasein.util.uom.storage.Byte> getMaxObjectSize() {
-        return MAX_OBJECT_SIZE;
+        // files above the single-object limit are uploaded as segmented large objects
+        return MAX_LARGE_OBJECT_SIZE;
     }
 
     @Override
@@ -356,6 +434,23 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         return getMetaDataLong("Content-Length", meta);
     }
 
+    private long getMetaDataDate(@Nonnull String key, @Nonnull Map<String,String> meta) {
+        String val = meta.get(key);
+
+        if( val == null ) {
+            return 0L;
+        }
+        SimpleDateFormat fmt = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+
+        try {
+            return fmt.parse(val).getTime();
+        }
+        catch( ParseException e ) {
+            logger.warn("Unable to parse " + key + ": " + val);
+            return 0L;
+        }
+    }
+
     private long getMetaDataLong(@Nonnull String key, @Nonnull Map<String,String> meta) {
         if( !meta.containsKey(key) ) {
             return -1L;
@@ -451,7 +546,7 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
-    private void loadBuckets(@Nonnull String regionId, @Nonnull Jiterator<Blob> iterator) throws CloudException, InternalException {
+    private void loadBuckets(@Nonnull final String regionId, @Nonnull final Jiterator<Blob> iterator) throws CloudException, InternalException {
         Logger logger = NovaOpenStack.getLogger(SwiftBlobStore.class, "std");
 
         if( logger.isTraceEnabled() ) {
@@ -459,19 +554,23 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
         try {
             SwiftMethod method = new SwiftMethod(getProvider());
-            Collection<String> containers;
 
             try {
-                containers = method.get(null);
+                method.list(null, null, null, new JSONStreamParser.Handler() {
+                    public void handle(@Nonnull JSONObject item) throws JSONException {
+                        if( item.has("name") ) {
+                            String container = item.getString("name");
+
+                            iterator.push(Blob.getInstance(regionId, "/" + container, container, 0L));
+                        }
+                    }
+                });
             }
             catch( RuntimeException e ) {
                 logger.error("Could not load buckets: " + e.getMessage());
                 e.printStackTrace();
                 throw new CloudException(e);
             }
-            for( String container : containers ) {
-                iterator.push(Blob.getInstance(regionId, "/" + container, container, 0L));
-            }
         }
         finally {
             if( logger.isTraceEnabled() ) {
@@ -480,7 +579,12 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
-    private void loadObjects(@Nonnull String regionId, @Nonnull String bucketName, @Nonnull Jiterator<Blob> iterator) throws CloudException, InternalException {
+    /**
+     * Streams the contents of a container into the iterator one listing page at a time. A bucket name of the form
+     * <code>container/path</code> lists the pseudo-directory <code>path/</code> within the container: objects directly
+     * under it are listed, and each deeper pseudo-directory is listed once as a bucket that can be listed in turn.
+     */
+    private void loadObjects(@Nonnull final String regionId, @Nonnull String bucketName, @Nonnull final Jiterator<Blob> iterator) throws CloudException, InternalException {
         Logger logger = NovaOpenStack.getLogger(SwiftBlobStore.class, "std");
 
         if( logger.isTraceEnabled() ) {
@@ -488,26 +592,43 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
         try {
             SwiftMethod method = new SwiftMethod(getProvider());
-            Collection<String> files;
-
-            try {
-                if( bucketName == null ) {
-                    files = method.get(null);
-                }
-                else {
-                    files = method.get(bucketName);
+            int idx = bucketName.indexOf('/');
+            final String container = (idx == -1 ? bucketName : bucketName.substring(0, idx));
+            String prefix = null, delimiter = null;
+
+            if( idx > -1 ) {
+                prefix = bucketName.substring(idx + 1);
+                if( prefix.length() > 0 && !prefix.endsWith("/") ) {
+                    prefix = prefix + "/";
                 }
+                delimiter = "/";
+            }
+            try {
+                method.list(container, prefix, delimiter, new JSONStreamParser.Handler() {
+                    public void handle(@Nonnull JSONObject item) throws JSONException {
+                        if( item.has("subdir") ) {
+                            String dir = item.getString("subdir");
+
+                            if( dir.endsWith("/") ) {
+                                dir = dir.substring(0, dir.length()-1);
+                            }
+                            iterator.push(Blob.getInstance(regionId, "/" + container + "/" + dir, container + "/" + dir, 0L));
+                        }
+                        else {
+                            Blob blob = toBlob(regionId, container, item);
+
+                            if( blob != null ) {
+                                iterator.push(blob);
+                            }
+                        }
+                    }
+                });
             }
             catch( RuntimeException e ) {
                 logger.error("Could not list files in " + bucketName + ": " + e.getMessage());
                 e.printStackTrace();
                 throw new CloudException(e);
             }
-            for( String info : files ) {
-                Map<String,String> metaData = method.head(bucketName, info);
-
-                iterator.push(Blob.getInstance(regionId, "/" + bucketName + "/" + info, bucketName, info, 0L, new Storage<Byte>(getMetaDataLength(metaData), Storage.BYTE)));
-            }
         }
         finally {
             if( logger.isTraceEnabled() ) {
@@ -516,6 +637,45 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
+    private @Nullable Blob toBlob(@Nonnull String regionId, @Nonnull String bucketName, @Nullable JSONObject json) throws JSONException {
+        if( json == null || !json.has("name") ) {
+            return null;
+        }
+        String name = json.getString("name");
+        long size = (json.has("bytes") && !json.isNull("bytes") ? json.getLong("bytes") : 0L);
+        long modified = (json.has("last_modified") && !json.isNull("last_modified") ? toTimestamp(json.getString("last_modified")) : 0L);
+
+        return Blob.getInstance(regionId, "/" + bucketName + "/" + name, bucketName, name, modified, new Storage<Byte>(size, Storage.BYTE));
+    }
+
+    /**
+     * Parses a Swift <code>last_modified</code> value such as <code>2014-11-20T12:34:56.789012</code>, which is
+     * always expressed in UTC without a zone designator.
+     * @param value the timestamp reported by Swift
+     * @return the timestamp in milliseconds since the epoch, or 0 if it could not be parsed
+     */
+    private long toTimestamp(@Nonnull String value) {
+        String time = value.trim();
+        int idx = time.indexOf('.');
+
+        if( idx > -1 ) {
+            time = time.substring(0, idx);
+        }
+        if( time.endsWith("Z") ) {
+            time = time.substring(0, time.length()-1);
+        }
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return fmt.parse(time).getTime();
+        }
+        catch( ParseException e ) {
+            logger.warn("Unable to parse last modified time: " + value);
+            return 0L;
+        }
+    }
+
     @Override
     public void makePublic(@Nonnull String bucket) throws InternalException, CloudException {
         throw new OperationNotSupportedException("Swift does not support bucket sharing");
@@ -544,8 +704,9 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             if( object == null ) {
                 throw new CloudException("No source object was specified");
             }
-            copy(sourceBucket, object, targetBucket, object);
-            removeObject(sourceBucket, object);
+            // the copy of a large object gets segments of its own, so the source goes with all of its segments
+            LargeObjects.copy(getProvider(), sourceBucket, object, targetBucket, object);
+            LargeObjects.remove(getProvider(), sourceBucket, object);
         }
         finally {
             APITrace.end();
@@ -559,13 +720,40 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             if( bucket == null ) {
                 throw new OperationNotSupportedException("A bucket must be specified for Swift");
             }
+            if( SegmentedUpload.isSegmented(getProvider(), file.length()) ) {
+                new SegmentedUpload(getProvider(), bucket, object, file).upload();
+                return;
+            }
             SwiftMethod method = new SwiftMethod(getProvider());
+            // a plain PUT over a large object replaces only its manifest
+            Map<String,Collection<String>> previous = LargeObjects.findSegments(getProvider(), bucket, object);
 
-            try {
-                method.put(bucket, object, null, new FileInputStream(file));
+            for( int attempt=1; ; attempt++ ) {
+                InputStream input;
+
+                try {
+                    input = new FileInputStream(file);
+                }
+                catch( IOException e ) {
+                    throw new InternalException(e);
+                }
+                try {
+                    method.put(bucket, object, null, input);
+                    break;
+                }
+                catch( NovaException e ) {
+                    // a stream is never resent after a 401, so retry once with a fresh one and a fresh token
+                    if( e.getHttpCode() != HttpStatus.SC_UNAUTHORIZED || attempt > 1 ) {
+                        throw e;
+                    }
+                }
+                finally {
+                    try { input.close(); }
+                    catch( IOException ignore ) { }
+                }
             }
-            catch( IOException e ) {
-                throw new InternalException(e);
+            if( previous != null ) {
+                LargeObjects.removeReplaced(getProvider(), bucket, object, previous, Collections.<String>emptySet());
             }
         }
         finally {
@@ -577,26 +765,15 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
     protected void put(@Nullable String bucket, @Nonnull String object, @Nonnull String content) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.put");
         try {
-            try {
-                File tmp = File.createTempFile(object, ".txt");
-                PrintWriter writer;
+            if( bucket == null ) {
+                throw new OperationNotSupportedException("A bucket must be specified for Swift");
+            }
+            SwiftMethod method = new SwiftMethod(getProvider());
 
-                try {
-                    writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp)));
-                    writer.print(content);
-                    writer.flush();
-                    writer.close();
-                    put(bucket, object, tmp);
-                }
-                finally {
-                    if( !tmp.delete() ) {
-                        logger.warn("Unable to delete temp file: " + tmp);
-                    }
-                }
+            try {
+                method.put(bucket, object, content.getBytes("utf-8"));
             }
-            catch( IOException e ) {
-                logger.error("Failed to write file: " + e.getMessage());
-                e.printStackTrace();
+            catch( UnsupportedEncodingException e ) {
                 throw new InternalException(e);
             }
         }
@@ -618,6 +795,79 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
+    /**
+     * Removes every object from a bucket, including the segments of its large objects, and then the bucket itself.
+     * @param bucket the bucket to remove
+     * @throws CloudException an error occurred with the cloud provider, including any object that could not be removed
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public void removeBucketRecursively(@Nonnull String bucket) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Blob.removeBucketRecursively");
+        try {
+            final Iterable<Blob> blobs = list(bucket);
+            Map<String,String> failures = removeObjects(bucket, new Iterable<String>() {
+                public Iterator<String> iterator() {
+                    final Iterator<Blob> it = blobs.iterator();
+
+                    return new Iterator<String>() {
+                        public boolean hasNext() { return it.hasNext(); }
+                        public String next() { return it.next().getObjectName(); }
+                        public void remove() { throw new UnsupportedOperationException(); }
+                    };
+                }
+            });
+
+            if( !failures.isEmpty() ) {
+                throw new CloudException("Unable to remove " + failures.size() + " objects from " + bucket + ", including " + failures.keySet().iterator().next() + ": " + failures.values().iterator().next());
+            }
+            removeBucket(bucket);
+            LargeObjects.removeSegmentContainer(getProvider(), bucket);
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    /**
+     * Removes many objects from a bucket, in bulk where the cloud supports it. Segments stored for any removed large
+     * objects by this provider are removed afterwards.
+     * @param bucket the bucket holding the objects
+     * @param objects the names of the objects to remove
+     * @return the objects that could not be removed, each with the reason it failed
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nonnull Map<String,String> removeObjects(@Nonnull String bucket, @Nonnull Iterable<String> objects) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Blob.removeObjects");
+        try {
+            final HashSet<String> removed = new HashSet<String>();
+            final Iterable<String> source = objects;
+            Map<String,String> failures = new BulkDelete(getProvider()).delete(bucket, new Iterable<String>() {
+                public Iterator<String> iterator() {
+                    final Iterator<String> it = source.iterator();
+
+                    return new Iterator<String>() {
+                        public boolean hasNext() { return it.hasNext(); }
+                        public String next() {
+                            String name = it.next();
+
+                            removed.add(name);
+                            return name;
+                        }
+                        public void remove() { throw new UnsupportedOperationException(); }
+                    };
+                }
+            });
+
+            removed.removeAll(failures.keySet());
+            LargeObjects.removeOrphans(getProvider(), bucket, removed);
+            return failures;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
     @Override
     public void removeObject(@Nullable String bucket, @Nonnull String name) throws CloudException, InternalException {
         APITrace.begin(getProvider(), "Blob.removeObject");
@@ -625,9 +875,7 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             if( bucket == null ) {
                 throw new OperationNotSupportedException("Swift does not support root objects");
             }
-            SwiftMethod method = new SwiftMethod(getProvider());
-
-            method.delete(bucket, name);
+            LargeObjects.remove(getProvider(), bucket, name);
         }
         finally {
             APITrace.end();
@@ -639,23 +887,40 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         APITrace.begin(getProvider(), "Blob.renameBucket");
         try {
             Blob bucket = createBucket(newName, findFreeName);
+            String endpoint = getProvider().getAuthenticationContext().getStorageUrl();
+            LinkedList<Future<Void>> pending = new LinkedList<Future<Void>>();
+            int concurrency = getCopyConcurrency();
 
-            for( Blob file : list(oldName) ) {
-                int retries = 10;
+            if( endpoint == null ) {
+                throw new CloudException("No storage endpoint exists for " + getProvider().getAuthenticationContext().getMyRegion());
+            }
+            newName = bucket.getBucketName();
+            try {
+                for( Blob file : list(oldName) ) {
+                    final String source = oldName;
+                    final String target = newName;
+                    final String object = file.getObjectName();
 
-                while( true ) {
-                    retries--;
-                    try {
-                        move(oldName, file.getObjectName(), bucket.getBucketName());
-                        break;
+                    if( object == null ) {
+                        continue;
                     }
-                    catch( CloudException e ) {
-                        if( retries < 1 ) {
-                            throw e;
-                        }
+                    if( pending.size() >= concurrency ) {
+                        RequestExecutor.await(pending.removeFirst());
                     }
-                    try { Thread.sleep(retries * 10000L); }
-                    catch( InterruptedException ignore ) { }
+                    pending.add(RequestExecutor.submit(getProvider(), "object-store", endpoint, new Callable<Void>() {
+                        public Void call() throws CloudException, InternalException {
+                            moveObject(source, object, target);
+                            return null;
+                        }
+                    }));
+                }
+                while( !pending.isEmpty() ) {
+                    RequestExecutor.await(pending.removeFirst());
+                }
+            }
+            finally {
+                for( Future<Void> future : pending ) {
+                    future.cancel(false);
                 }
             }
             boolean ok = true;
@@ -666,6 +931,7 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
             }
             if( ok ) {
                 removeBucket(oldName);
+                LargeObjects.removeSegmentContainer(getProvider(), oldName);
             }
             return newName;
         }
@@ -674,15 +940,41 @@ public class SwiftBlobStore extends AbstractBlobStoreSupport<NovaOpenStack> {
         }
     }
 
+    private void moveObject(@Nonnull String sourceBucket, @Nonnull String object, @Nonnull String targetBucket) throws CloudException, InternalException {
+        int attempt = 0;
+
+        while( true ) {
+            attempt++;
+            try {
+                LargeObjects.copy(getProvider(), sourceBucket, object, targetBucket, object);
+                LargeObjects.remove(getProvider(), sourceBucket, object);
+                return;
+            }
+            catch( CloudException e ) {
+                if( attempt >= MOVE_ATTEMPTS ) {
+                    throw e;
+                }
+                logger.warn("Retrying move of " + sourceBucket + "/" + object + ": " + e.getMessage());
+            }
+            try { Thread.sleep(attempt * 2000L); }
+            catch( InterruptedException e ) { throw new InternalException(e); }
+        }
+    }
+
+    private int getCopyConcurrency() {
+        return (int)NovaOpenStack.getNumericProperty(getProvider().getContext(), COPY_CONCURRENCY, DEFAULT_COPY_CONCURRENCY, 1L);
+    }
+
     @Override
     public void renameObject(@Nullable String bucket, @Nonnull String object, @Nonnull String newName) throws CloudException, InternalException {
-        APITrace.begin(getProvider(), "Blob.removeObject");
+        APITrace.begin(getProvider(), "Blob.renameObject");
         try {
             if( bucket == null ) {
                 throw new CloudException("No bucket was specified");
             }
-            copy(bucket, object, bucket, newName);
-            removeObject(bucket, object);
+            // the copy of a large object gets segments of its own, so the old name goes with all of its segments
+            LargeObjects.copy(getProvider(), bucket, object, bucket, newName);
+            LargeObjects.remove(getProvider(), bucket, object);
         }
         finally {
             APITrace.end();
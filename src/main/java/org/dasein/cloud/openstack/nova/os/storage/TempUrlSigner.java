@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.openstack.nova.os.NovaOpenStack;
+import org.dasein.cloud.openstack.nova.os.SwiftMethod;
+import org.dasein.cloud.openstack.nova.os.VerifyingInputStream;
+
+/**
+ * Signs Swift TempURLs so that objects can be fetched directly by anyone holding the URL until it expires. The
+ * signing key is the account's <code>X-Account-Meta-Temp-URL-Key</code>, read from the account <code>HEAD</code>.
+ * That response is held by {@link org.dasein.cloud.openstack.nova.os.MetadataCache} like any other, so signing a
+ * batch of URLs costs one request and a rotated key is picked up once the cached entry expires. A key can also be supplied through the custom property
+ * {@link #TEMP_URL_KEY} to sign entirely offline. Signatures use HMAC-SHA1 unless {@link #TEMP_URL_DIGEST} asks for
+ * <code>sha256</code>.
+ */
+class TempUrlSigner {
+    static private final Logger logger = NovaOpenStack.getLogger(TempUrlSigner.class, "std");
+
+    static public final String TEMP_URL_KEY    = "tempUrlKey";
+    static public final String TEMP_URL_DIGEST = "tempUrlDigest";
+
+    private NovaOpenStack provider;
+
+    TempUrlSigner(@Nonnull NovaOpenStack provider) { this.provider = provider; }
+
+    /**
+     * Produces a URL granting GET access to an object until the specified time.
+     * @param bucket the container holding the object
+     * @param object the name of the object
+     * @param expires the time at which the URL stops working, in seconds since the epoch
+     * @return the signed URL, or <code>null</code> if the account has no temp URL key
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within Dasein Cloud
+     */
+    public @Nullable String sign(@Nonnull String bucket, @Nonnull String object, long expires) throws CloudException, InternalException {
+        String endpoint = provider.getAuthenticationContext().getStorageUrl();
+
+        if( endpoint == null ) {
+            throw new CloudException("No storage endpoint exists for " + provider.getAuthenticationContext().getMyRegion());
+        }
+        String key = getKey();
+
+        if( key == null ) {
+            logger.warn("No temp URL key is set for " + endpoint + "; unable to sign URLs");
+            return null;
+        }
+        String base;
+
+        try {
+            base = new URL(endpoint).getPath();
+        }
+        catch( MalformedURLException e ) {
+            throw new CloudException("Invalid storage endpoint: " + endpoint);
+        }
+        if( base.endsWith("/") ) {
+            base = base.substring(0, base.length()-1);
+        }
+        // Swift verifies the signature against the decoded path
+        String signature = toSignature(isSHA256(), key, expires, base + "/" + bucket + "/" + object);
+
+        return endpoint + "/" + SwiftMethod.encodePath(bucket) + "/" + SwiftMethod.encodePath(object) + "?temp_url_sig=" + signature + "&temp_url_expires=" + expires;
+    }
+
+    private @Nullable String getKey() throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+        String key = (p == null ? null : p.getProperty(TEMP_URL_KEY));
+
+        if( key != null && key.length() > 0 ) {
+            return key;
+        }
+        Map<String,String> headers = new SwiftMethod(provider).head();
+
+        if( headers == null ) {
+            return null;
+        }
+        for( Map.Entry<String,String> header : headers.entrySet() ) {
+            if( header.getKey().equalsIgnoreCase("X-Account-Meta-Temp-URL-Key") ) {
+                key = header.getValue();
+            }
+            else if( key == null && header.getKey().equalsIgnoreCase("X-Account-Meta-Temp-URL-Key-2") ) {
+                key = header.getValue();
+            }
+        }
+        return key;
+    }
+
+    private boolean isSHA256() {
+        ProviderContext ctx = provider.getContext();
+        Properties p = (ctx == null ? null : ctx.getCustomProperties());
+        String digest = (p == null ? null : p.getProperty(TEMP_URL_DIGEST));
+
+        return (digest != null && digest.trim().equalsIgnoreCase("sha256"));
+    }
+
+    /**
+     * Computes the TempURL signature Swift expects for a <code>GET</code> of the specified path.
+     * @param sha256 true to sign with HMAC-SHA256 rather than HMAC-SHA1
+     * @param key the account's temp URL key
+     * @param expires the expiry time in seconds since the epoch
+     * @param path the decoded path of the object, starting with the API version
+     * @return the hex signature
+     * @throws InternalException the JVM does not support the digest
+     */
+    static @Nonnull String toSignature(boolean sha256, @Nonnull String key, long expires, @Nonnull String path) throws InternalException {
+        return hmac(sha256 ? "HmacSHA256" : "HmacSHA1", key, "GET\n" + expires + "\n" + path);
+    }
+
+    static @Nonnull String hmac(@Nonnull String algorithm, @Nonnull String key, @Nonnull String body) throws InternalException {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+
+            mac.init(new SecretKeySpec(key.getBytes("utf-8"), algorithm));
+            return VerifyingInputStream.toHex(mac.doFinal(body.getBytes("utf-8")));
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new InternalException(e);
+        }
+        catch( InvalidKeyException e ) {
+            throw new InternalException(e);
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+    }
+}
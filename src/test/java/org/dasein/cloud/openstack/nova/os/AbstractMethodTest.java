@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks that token expiries are read in every form Keystone reports them, with any explicit offset applied.
+ */
+public class AbstractMethodTest {
+    static private final long EXPIRY = 1416486896000L; // 2014-11-20T12:34:56Z
+
+    @Test
+    public void expiryInUTC() throws Exception {
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T12:34:56Z"));
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T12:34:56.000000Z"));
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T12:34:56"));
+    }
+
+    @Test
+    public void expiryAppliesOffset() throws Exception {
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T14:34:56+02:00"));
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T10:34:56-0200"));
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T17:34:56+05"));
+        assertEquals(EXPIRY, AbstractMethod.toExpiry("2014-11-20T12:34:56.123456+00:00"));
+    }
+
+    @Test
+    public void unparseableExpiryIsZero() throws Exception {
+        assertEquals(0L, AbstractMethod.toExpiry("tomorrow"));
+        assertEquals(0L, AbstractMethod.toExpiry("2014-11-20T12:34:56 UTC"));
+    }
+}
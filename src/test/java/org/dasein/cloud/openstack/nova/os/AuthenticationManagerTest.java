@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that concurrent callers needing a token share a single authentication, that a rejected token is
+ * replaced only once no matter how many callers report it, and that reading a held token never waits on the lock
+ * taken by re-authentication.
+ */
+public class AuthenticationManagerTest {
+    static private final long HOUR = 3600000L;
+
+    /**
+     * Hands out numbered tokens, optionally holding every authentication until released.
+     */
+    static private class CountingAuthenticator implements AuthenticationManager.Authenticator {
+        public final AtomicInteger  calls   = new AtomicInteger();
+        public final CountDownLatch entered = new CountDownLatch(1);
+        public final CountDownLatch release;
+
+        public CountingAuthenticator(boolean hold) {
+            release = new CountDownLatch(hold ? 1 : 0);
+        }
+
+        public @Nullable AuthenticationContext restore() {
+            return null;
+        }
+
+        public @Nullable AuthenticationContext authenticate() throws CloudException, InternalException {
+            int n = calls.incrementAndGet();
+
+            entered.countDown();
+            try {
+                release.await();
+            }
+            catch( InterruptedException e ) {
+                throw new InternalException(e);
+            }
+            return token("token-" + n, System.currentTimeMillis() + HOUR);
+        }
+
+        public void store(@Nonnull AuthenticationContext auth, long ttl) {
+            // nothing to persist
+        }
+    }
+
+    static private AuthenticationContext token(String id, long expires) {
+        return new AuthenticationContext("region", id, "tenant", new HashMap<String, Map<String, String>>(), null, expires);
+    }
+
+    private ExecutorService executor;
+    private String          key;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        key = "test|" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        AuthenticationManager.clear();
+    }
+
+    private ArrayList<Future<AuthenticationContext>> request(int count, final AuthenticationManager.Authenticator authenticator) {
+        ArrayList<Future<AuthenticationContext>> futures = new ArrayList<Future<AuthenticationContext>>();
+        final AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+
+        for( int i=0; i<count; i++ ) {
+            futures.add(executor.submit(new Callable<AuthenticationContext>() {
+                public AuthenticationContext call() throws Exception {
+                    return AuthenticationManager.getAuthenticationContext(entry, authenticator);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    @Test
+    public void concurrentCallersShareOneAuthentication() throws Exception {
+        CountingAuthenticator authenticator = new CountingAuthenticator(true);
+        ArrayList<Future<AuthenticationContext>> futures = request(16, authenticator);
+
+        assertTrue(authenticator.entered.await(10, TimeUnit.SECONDS));
+        authenticator.release.countDown();
+        AuthenticationContext first = futures.get(0).get(10, TimeUnit.SECONDS);
+
+        for( Future<AuthenticationContext> future : futures ) {
+            assertSame(first, future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, authenticator.calls.get());
+    }
+
+    @Test
+    public void heldTokenIsReused() throws Exception {
+        CountingAuthenticator authenticator = new CountingAuthenticator(false);
+        AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+        AuthenticationContext first = AuthenticationManager.getAuthenticationContext(entry, authenticator);
+
+        assertSame(first, AuthenticationManager.getAuthenticationContext(entry, authenticator));
+        assertEquals(1, authenticator.calls.get());
+    }
+
+    @Test
+    public void rejectedTokenIsReplacedOnce() throws Exception {
+        CountingAuthenticator authenticator = new CountingAuthenticator(false);
+        AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+        AuthenticationContext stale = AuthenticationManager.getAuthenticationContext(entry, authenticator);
+
+        assertTrue(AuthenticationManager.invalidate(entry, stale));
+        assertFalse(AuthenticationManager.invalidate(entry, stale));
+
+        AuthenticationContext fresh = AuthenticationManager.getAuthenticationContext(entry, authenticator);
+
+        assertNotSame(stale, fresh);
+        assertFalse(AuthenticationManager.invalidate(entry, stale));
+        assertSame(fresh, AuthenticationManager.getAuthenticationContext(entry, authenticator));
+        assertEquals(2, authenticator.calls.get());
+    }
+
+    @Test
+    public void failedAuthenticationReleasesTheNextCaller() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        AuthenticationManager.Authenticator authenticator = new CountingAuthenticator(false) {
+            @Override
+            public @Nullable AuthenticationContext authenticate() throws CloudException, InternalException {
+                if( attempts.incrementAndGet() == 1 ) {
+                    throw new CloudException("rejected");
+                }
+                return super.authenticate();
+            }
+        };
+        AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+
+        try {
+            AuthenticationManager.getAuthenticationContext(entry, authenticator);
+            fail("The failed authentication was not reported");
+        }
+        catch( CloudException expected ) {
+            // the next caller tries again
+        }
+        assertEquals("token-1", AuthenticationManager.getAuthenticationContext(entry, authenticator).getAuthToken());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void heldTokenIsReadWithoutTheLock() throws Exception {
+        final CountingAuthenticator authenticator = new CountingAuthenticator(false);
+        final AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+        final AuthenticationContext held = AuthenticationManager.getAuthenticationContext(entry, authenticator);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch unlock = new CountDownLatch(1);
+
+        // a re-authentication that never finishes; any reader touching the lock would hang behind it
+        executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                entry.lock.lock();
+                try {
+                    locked.countDown();
+                    unlock.await();
+                }
+                finally {
+                    entry.lock.unlock();
+                }
+                return null;
+            }
+        });
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        try {
+            for( int threads : new int[] { 1, 8, 64 } ) {
+                ArrayList<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+
+                for( int i=0; i<threads; i++ ) {
+                    readers.add(executor.submit(new Callable<Integer>() {
+                        public Integer call() throws Exception {
+                            int same = 0;
+
+                            for( int j=0; j<10000; j++ ) {
+                                if( AuthenticationManager.getAuthenticationContext(entry, authenticator) == held ) {
+                                    same++;
+                                }
+                            }
+                            return same;
+                        }
+                    }));
+                }
+                for( Future<Integer> reader : readers ) {
+                    assertEquals(10000, reader.get(30, TimeUnit.SECONDS).intValue());
+                }
+            }
+        }
+        finally {
+            unlock.countDown();
+        }
+        assertEquals(1, authenticator.calls.get());
+    }
+
+    @Test
+    public void dueTokenIsServedWhileAnotherThreadRefreshes() throws Exception {
+        final CountingAuthenticator authenticator = new CountingAuthenticator(true);
+        final AuthenticationManager.Entry entry = AuthenticationManager.getEntry(key);
+        long now = System.currentTimeMillis();
+        AuthenticationContext due = token("due", now + HOUR);
+
+        entry.current.set(new AuthenticationManager.Token(due, now - 1L, now + HOUR));
+
+        Future<AuthenticationContext> refresh = request(1, authenticator).get(0);
+
+        assertTrue(authenticator.entered.await(10, TimeUnit.SECONDS));
+        // the refresh is in progress and holds the lock; other callers keep the due token instead of waiting
+        assertSame(due, request(1, authenticator).get(0).get(10, TimeUnit.SECONDS));
+        authenticator.release.countDown();
+
+        AuthenticationContext fresh = refresh.get(10, TimeUnit.SECONDS);
+
+        assertEquals("token-1", fresh.getAuthToken());
+        assertSame(fresh, AuthenticationManager.getAuthenticationContext(entry, authenticator));
+        assertEquals(1, authenticator.calls.get());
+    }
+}
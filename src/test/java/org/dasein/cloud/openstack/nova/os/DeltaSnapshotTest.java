@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import javax.annotation.Nonnull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Checks how syncs are applied to a snapshot: what is reported as created, updated and deleted, when a full listing
+ * is required and where the next delta starts.
+ */
+public class DeltaSnapshotTest {
+    static private final long HOUR = 3600000L;
+    static private final long SKEW = 300000L;
+
+    static private final DeltaSnapshot.Converter<String> converter = new DeltaSnapshot.Converter<String>() {
+        public String convert(@Nonnull JSONObject json) throws JSONException {
+            return json.getString("id") + ":" + json.getString("status");
+        }
+    };
+
+    static private JSONObject server(String id, String status) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        json.put("id", id);
+        json.put("status", status);
+        return json;
+    }
+
+    static private ChangeSet<String> sync(DeltaSnapshot<String> snapshot, boolean full, JSONObject ... listing) throws Exception {
+        DeltaSnapshot.Sync<String> sync = new DeltaSnapshot.Sync<String>(full);
+        JSONStreamParser.Handler handler = snapshot.newHandler(sync, converter);
+
+        for( JSONObject json : listing ) {
+            handler.handle(json);
+        }
+        return snapshot.apply(sync);
+    }
+
+    @Test
+    public void firstSyncCreatesEverything() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+
+        assertNull(snapshot.getSince());
+        ChangeSet<String> changes = sync(snapshot, true, server("a", "ACTIVE"), server("b", "BUILD"));
+
+        assertTrue(changes.isFull());
+        assertEquals(2, changes.getCreated().size());
+        assertEquals(0, changes.getUpdated().size());
+        assertEquals(2, changes.getResources().size());
+        assertNotNull(snapshot.getSince());
+    }
+
+    @Test
+    public void deltaReportsOnlyRealChanges() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+
+        sync(snapshot, true, server("a", "ACTIVE"), server("b", "BUILD"));
+        ChangeSet<String> changes = sync(snapshot, false, server("a", "ACTIVE"), server("b", "ACTIVE"), server("c", "BUILD"));
+
+        assertFalse(changes.isFull());
+        assertEquals(1, changes.getCreated().size());
+        assertEquals("c:BUILD", changes.getCreated().get(0));
+        assertEquals(1, changes.getUpdated().size());
+        assertEquals("b:ACTIVE", changes.getUpdated().get(0));
+        assertEquals(3, changes.getResources().size());
+    }
+
+    @Test
+    public void deltaKeepsUnlistedAndDropsDeleted() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+
+        sync(snapshot, true, server("a", "ACTIVE"), server("b", "ACTIVE"), server("c", "ACTIVE"));
+        ChangeSet<String> changes = sync(snapshot, false, server("b", "DELETED"), server("x", "DELETED"));
+
+        assertEquals(1, changes.getDeleted().size());
+        assertEquals("b", changes.getDeleted().get(0));
+        assertEquals(2, changes.getResources().size());
+    }
+
+    @Test
+    public void fullSyncDropsUnlisted() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+
+        sync(snapshot, true, server("a", "ACTIVE"), server("b", "ACTIVE"));
+        ChangeSet<String> changes = sync(snapshot, true, server("a", "ACTIVE"));
+
+        assertTrue(changes.isFull());
+        assertEquals(0, changes.getCreated().size());
+        assertEquals(0, changes.getUpdated().size());
+        assertEquals(1, changes.getDeleted().size());
+        assertEquals("b", changes.getDeleted().get(0));
+    }
+
+    @Test
+    public void sinceStartsBeforeSyncLessSkew() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+        long before = System.currentTimeMillis();
+
+        sync(snapshot, true, server("a", "ACTIVE"));
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long since = fmt.parse(snapshot.getSince()).getTime();
+
+        // the timestamp carries whole seconds only
+        assertTrue(since <= before - SKEW + 1000L);
+        assertTrue(since >= before - SKEW - 1000L);
+    }
+
+    @Test
+    public void expiredFullSyncForcesFullListing() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", 1L, SKEW);
+
+        sync(snapshot, true, server("a", "ACTIVE"));
+        Thread.sleep(5L);
+        assertNull(snapshot.getSince());
+    }
+
+    @Test
+    public void resetForgetsEverything() throws Exception {
+        DeltaSnapshot<String> snapshot = new DeltaSnapshot<String>("servers", HOUR, SKEW);
+
+        sync(snapshot, true, server("a", "ACTIVE"));
+        snapshot.reset();
+        assertNull(snapshot.getSince());
+        assertEquals(0, snapshot.getResources().size());
+        assertFalse(snapshot.isCurrent("a", DeltaSnapshot.toFingerprint(server("a", "ACTIVE"))));
+    }
+
+    @Test
+    public void sameConsumerAndContextShareASnapshot() {
+        DeltaSnapshot<String> first = DeltaSnapshot.getInstance("shared", "servers", "https://nova", "account", "region", HOUR, SKEW);
+        DeltaSnapshot<String> second = DeltaSnapshot.getInstance("shared", "servers", "https://nova", "account", "region", HOUR, SKEW);
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void consumersAndContextsHaveTheirOwnSnapshots() {
+        DeltaSnapshot<String> snapshot = DeltaSnapshot.getInstance("mine", "servers", "https://nova", "account", "region", HOUR, SKEW);
+
+        assertNotSame(snapshot, DeltaSnapshot.getInstance("theirs", "servers", "https://nova", "account", "region", HOUR, SKEW));
+        assertNotSame(snapshot, DeltaSnapshot.getInstance("mine", "images", "https://nova", "account", "region", HOUR, SKEW));
+        assertNotSame(snapshot, DeltaSnapshot.getInstance("mine", "servers", "https://other", "account", "region", HOUR, SKEW));
+        assertNotSame(snapshot, DeltaSnapshot.getInstance("mine", "servers", "https://nova", "other", "region", HOUR, SKEW));
+        assertNotSame(snapshot, DeltaSnapshot.getInstance("mine", "servers", "https://nova", "account", "other", HOUR, SKEW));
+    }
+}
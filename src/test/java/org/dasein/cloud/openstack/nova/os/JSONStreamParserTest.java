@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import javax.annotation.Nonnull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Checks that collections are streamed element by element and that everything else ends up in the envelope.
+ */
+public class JSONStreamParserTest {
+    static private class Collector implements JSONStreamParser.Handler {
+        public final ArrayList<String> ids = new ArrayList<String>();
+
+        public void handle(@Nonnull JSONObject item) throws JSONException {
+            ids.add(item.getString("id"));
+        }
+    }
+
+    @Test
+    public void parseStreamsCollectionAndKeepsLinks() throws Exception {
+        Collector collector = new Collector();
+        JSONObject envelope = JSONStreamParser.parse(new StringReader("{\"servers\": [{\"id\": \"a\"}, {\"id\": \"b\", \"addresses\": {\"private\": [1, 2]}}], \"servers_links\": [{\"rel\": \"next\", \"href\": \"x?marker=b\"}]}"), "servers", collector);
+
+        assertEquals(2, collector.ids.size());
+        assertEquals("a", collector.ids.get(0));
+        assertEquals("b", collector.ids.get(1));
+        assertTrue(envelope.has("servers_links"));
+        assertTrue(!envelope.has("servers"));
+        assertEquals("x?marker=b", envelope.getJSONArray("servers_links").getJSONObject(0).getString("href"));
+    }
+
+    @Test
+    public void parseHandlesEmptyAndMissingCollections() throws Exception {
+        Collector collector = new Collector();
+
+        JSONStreamParser.parse(new StringReader("{\"servers\": []}"), "servers", collector);
+        JSONStreamParser.parse(new StringReader("{\"images\": [{\"id\": \"i\"}]}"), "servers", collector);
+        JSONStreamParser.parse(new StringReader("{\"servers\": null}"), "servers", collector);
+        assertEquals(0, collector.ids.size());
+    }
+
+    @Test
+    public void parseArrayCountsElements() throws Exception {
+        Collector collector = new Collector();
+
+        assertEquals(3, JSONStreamParser.parseArray(new StringReader("[{\"id\": \"1\"}, {\"id\": \"2\"}, {\"id\": \"3\"}]"), collector));
+        assertEquals(3, collector.ids.size());
+        assertEquals("3", collector.ids.get(2));
+    }
+
+    @Test
+    public void parseArrayTreatsEmptyBodyAsEmpty() throws Exception {
+        assertEquals(0, JSONStreamParser.parseArray(new StringReader(""), new Collector()));
+        assertEquals(0, JSONStreamParser.parseArray(new StringReader("  "), new Collector()));
+    }
+
+    @Test(expected=JSONException.class)
+    public void parseRejectsNonObject() throws Exception {
+        JSONStreamParser.parse(new StringReader("[]"), "servers", new Collector());
+    }
+
+    @Test(expected=JSONException.class)
+    public void parseRejectsTruncatedCollection() throws Exception {
+        JSONStreamParser.parse(new StringReader("{\"servers\": [{\"id\": \"a\"}, "), "servers", new Collector());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that remembered HEAD results are only served to the credentials that fetched them and are forgotten when
+ * the resource, its container or its account changes.
+ */
+public class MetadataCacheTest {
+    static private final String ENDPOINT = "https://swift/v1/AUTH_test";
+    static private final long   TTL      = 60000L;
+
+    static private Map<String,String> headers(String etag) {
+        HashMap<String,String> headers = new HashMap<String, String>();
+
+        headers.put("Etag", etag);
+        headers.put("Content-Length", "10");
+        return headers;
+    }
+
+    @After
+    public void tearDown() {
+        MetadataCache.clear();
+    }
+
+    @Test
+    public void entryIsServedToTheSameCredentials() {
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("abc"), TTL);
+
+        MetadataCache.Entry entry = MetadataCache.get("token-a", ENDPOINT, "/bucket/object");
+
+        assertNotNull(entry);
+        assertEquals("abc", entry.getETag());
+        assertEquals("10", entry.getHeaders().get("Content-Length"));
+        assertFalse(entry.isExpired());
+    }
+
+    @Test
+    public void entryIsHiddenFromOtherCredentials() {
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("abc"), TTL);
+
+        assertNull(MetadataCache.get("token-b", ENDPOINT, "/bucket/object"));
+        assertNull(MetadataCache.get("token-a", "https://other/v1/AUTH_test", "/bucket/object"));
+    }
+
+    @Test
+    public void otherCredentialsReplaceTheEntry() {
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("abc"), TTL);
+        MetadataCache.put("token-b", ENDPOINT, "/bucket/object", null, TTL);
+
+        assertNull(MetadataCache.get("token-a", ENDPOINT, "/bucket/object"));
+
+        MetadataCache.Entry entry = MetadataCache.get("token-b", ENDPOINT, "/bucket/object");
+
+        assertNotNull(entry);
+        assertNull(entry.getHeaders());
+        assertNull(entry.getETag());
+    }
+
+    @Test
+    public void queryAndLeadingSlashDoNotMatter() {
+        MetadataCache.put("token-a", ENDPOINT, "bucket/object?format=json", headers("abc"), TTL);
+
+        assertNotNull(MetadataCache.get("token-a", ENDPOINT, "/bucket/object"));
+    }
+
+    @Test
+    public void writeForgetsObjectContainerAndAccount() {
+        MetadataCache.put("token-a", ENDPOINT, "/", headers("account"), TTL);
+        MetadataCache.put("token-a", ENDPOINT, "/bucket", headers("container"), TTL);
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("object"), TTL);
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/other", headers("other"), TTL);
+        MetadataCache.put("token-a", ENDPOINT, "/elsewhere", headers("elsewhere"), TTL);
+
+        MetadataCache.invalidate(ENDPOINT, "/bucket/object");
+
+        assertNull(MetadataCache.get("token-a", ENDPOINT, "/"));
+        assertNull(MetadataCache.get("token-a", ENDPOINT, "/bucket"));
+        assertNull(MetadataCache.get("token-a", ENDPOINT, "/bucket/object"));
+        assertNotNull(MetadataCache.get("token-a", ENDPOINT, "/bucket/other"));
+        assertNotNull(MetadataCache.get("token-a", ENDPOINT, "/elsewhere"));
+    }
+
+    @Test
+    public void rootInvalidationForgetsOnlyItsEndpoint() {
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("abc"), TTL);
+        MetadataCache.put("token-a", "https://other/v1/AUTH_test", "/bucket/object", headers("abc"), TTL);
+
+        MetadataCache.invalidate(ENDPOINT, null);
+
+        assertNull(MetadataCache.get("token-a", ENDPOINT, "/bucket/object"));
+        assertNotNull(MetadataCache.get("token-a", "https://other/v1/AUTH_test", "/bucket/object"));
+    }
+
+    @Test
+    public void entryExpiresAfterItsTtl() {
+        MetadataCache.put("token-a", ENDPOINT, "/bucket/object", headers("abc"), 0L);
+
+        MetadataCache.Entry entry = MetadataCache.get("token-a", ENDPOINT, "/bucket/object");
+
+        assertNotNull(entry);
+        assertTrue(entry.isExpired());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that calls are limited per service and endpoint, and that a changed limit applies from the next submit.
+ * Limits are set through system properties, which apply when the provider's context does not set them.
+ */
+public class RequestExecutorTest {
+    static private final String ENDPOINT = "http://executor.test/v1";
+
+    private final NovaOpenStack provider = new NovaOpenStack();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".limited");
+        System.clearProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".blocked");
+        System.clearProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".raised");
+    }
+
+    static private Callable<Void> block(final CountDownLatch started, final CountDownLatch release) {
+        return new Callable<Void>() {
+            public Void call() throws Exception {
+                started.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void callsNeverExceedLimit() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger widest = new AtomicInteger();
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        System.setProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".limited", "3");
+        for( int i=0; i<30; i++ ) {
+            futures.add(RequestExecutor.submit(provider, "limited", ENDPOINT, new Callable<Void>() {
+                public Void call() throws Exception {
+                    int now = active.incrementAndGet();
+
+                    synchronized( widest ) {
+                        widest.set(Math.max(widest.get(), now));
+                    }
+                    Thread.sleep(5L);
+                    active.decrementAndGet();
+                    return null;
+                }
+            }));
+        }
+        for( Future<Void> future : futures ) {
+            RequestExecutor.await(future, 10000L);
+        }
+        assertTrue("At most 3 calls in flight, saw " + widest.get(), widest.get() <= 3);
+        assertTrue("Calls ran concurrently", widest.get() > 1);
+    }
+
+    @Test
+    public void servicesOnOneEndpointQueueSeparately() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        System.setProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".blocked", "1");
+        Future<Void> blocker = RequestExecutor.submit(provider, "blocked", ENDPOINT, block(started, release));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> other = RequestExecutor.submit(provider, "free", ENDPOINT, new Callable<String>() {
+            public String call() {
+                return "ran";
+            }
+        });
+
+        assertEquals("ran", RequestExecutor.await(other, 5000L));
+        release.countDown();
+        RequestExecutor.await(blocker, 5000L);
+    }
+
+    @Test
+    public void raisedLimitStartsQueuedCalls() throws Exception {
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        CountDownLatch third = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        System.setProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".raised", "1");
+        Future<Void> a = RequestExecutor.submit(provider, "raised", ENDPOINT, block(first, release));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        Future<Void> b = RequestExecutor.submit(provider, "raised", ENDPOINT, block(second, release));
+
+        assertTrue("Second call queued behind the limit", !second.await(100, TimeUnit.MILLISECONDS));
+        System.setProperty(RequestExecutor.MAX_CONCURRENT_REQUESTS + ".raised", "3");
+        Future<Void> c = RequestExecutor.submit(provider, "raised", ENDPOINT, block(third, release));
+
+        assertTrue("Queued call started under the raised limit", second.await(5, TimeUnit.SECONDS));
+        assertTrue(third.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        RequestExecutor.await(a, 5000L);
+        RequestExecutor.await(b, 5000L);
+        RequestExecutor.await(c, 5000L);
+    }
+}
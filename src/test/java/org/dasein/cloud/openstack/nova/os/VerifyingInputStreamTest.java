@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks the hashing helpers against the RFC 1321 vectors and that bodies are verified once fully read.
+ */
+public class VerifyingInputStreamTest {
+    static private final byte[] BODY     = "The quick brown fox jumps over the lazy dog".getBytes();
+    static private final String BODY_MD5 = "9e107d9d372bb6826bd81d3542a419d6";
+    static private final String EMPTY_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
+
+    static private void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[7];
+
+        while( in.read(buffer, 0, buffer.length) != -1 ) { }
+    }
+
+    @Test
+    public void toHexMatchesRFC1321() throws Exception {
+        assertEquals(EMPTY_MD5, VerifyingInputStream.toHex(VerifyingInputStream.newMD5().digest()));
+        assertEquals(BODY_MD5, VerifyingInputStream.toHex(VerifyingInputStream.newMD5().digest(BODY)));
+    }
+
+    @Test
+    public void toHexKeepsLeadingZeros() throws Exception {
+        assertEquals("000f10ff", VerifyingInputStream.toHex(new byte[] { 0x00, 0x0f, 0x10, (byte)0xff }));
+    }
+
+    @Test
+    public void isMD5RejectsManifestETags() throws Exception {
+        assertTrue(VerifyingInputStream.isMD5(BODY_MD5));
+        assertTrue(VerifyingInputStream.isMD5(BODY_MD5.toUpperCase()));
+        assertFalse(VerifyingInputStream.isMD5("\"" + BODY_MD5 + "\""));
+        assertFalse(VerifyingInputStream.isMD5(null));
+    }
+
+    @Test
+    public void matchingBodyReadsThrough() throws Exception {
+        drain(new VerifyingInputStream(new ByteArrayInputStream(BODY), BODY_MD5, "fox"));
+        drain(new VerifyingInputStream(new ByteArrayInputStream(BODY), BODY_MD5.toUpperCase(), "fox"));
+    }
+
+    @Test
+    public void skippedBytesAreHashed() throws Exception {
+        InputStream in = new VerifyingInputStream(new ByteArrayInputStream(BODY), BODY_MD5, "fox");
+
+        assertEquals(10L, in.skip(10L));
+        while( in.read() != -1 ) { }
+    }
+
+    @Test
+    public void corruptBodyFailsAtEnd() throws Exception {
+        byte[] corrupt = BODY.clone();
+
+        corrupt[4] = 'Q';
+        try {
+            drain(new VerifyingInputStream(new ByteArrayInputStream(corrupt), BODY_MD5, "fox"));
+            fail("Corrupt body was not detected");
+        }
+        catch( ChecksumMismatchException e ) {
+            assertEquals(BODY_MD5, e.getExpected());
+            assertEquals("fox", e.getResource());
+        }
+    }
+
+    @Test
+    public void truncatedReadIsNotChecked() throws Exception {
+        InputStream in = new VerifyingInputStream(new ByteArrayInputStream(BODY), EMPTY_MD5, "fox");
+
+        assertEquals('T', in.read());
+        in.close();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.dasein.cloud.CloudException;
+import org.junit.Test;
+
+/**
+ * Checks that waits finish on the first satisfied check, time out with <code>null</code>, surface check failures
+ * and batch concurrent waits on the same check.
+ */
+public class WaiterTest {
+    static private Waiter.Backoff quick(long timeout) {
+        return new Waiter.Backoff(1L, 10L, timeout, 2.0, 0.0);
+    }
+
+    @Test
+    public void submitCompletesOnceCheckIsSatisfied() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Future<String> future = Waiter.submit(new Waiter.Check<String>() {
+            public @Nullable String check() {
+                return (calls.incrementAndGet() < 3 ? null : "done");
+            }
+        }, quick(10000L));
+
+        assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void submitTimesOutWithNull() throws Exception {
+        Future<String> future = Waiter.submit(new Waiter.Check<String>() {
+            public @Nullable String check() {
+                return null;
+            }
+        }, quick(50L));
+
+        assertNull(future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitSurfacesCheckFailure() throws Exception {
+        final CloudException error = new CloudException("boom");
+        Future<String> future = Waiter.submit(new Waiter.Check<String>() {
+            public @Nullable String check() throws CloudException {
+                throw error;
+            }
+        }, quick(10000L));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Check failure was swallowed");
+        }
+        catch( ExecutionException e ) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test
+    public void awaitSkipsSchedulerWhenAlreadySatisfied() throws Exception {
+        assertEquals("now", Waiter.await(new Waiter.Check<String>() {
+            public @Nullable String check() {
+                return "now";
+            }
+        }, quick(0L)));
+    }
+
+    @Test
+    public void batchWaitsShareChecks() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger widest = new AtomicInteger();
+        Waiter.BatchCheck<String> check = new Waiter.BatchCheck<String>() {
+            public @Nonnull Map<String, String> check(@Nonnull Collection<String> ids) {
+                HashMap<String,String> results = new HashMap<String, String>();
+
+                calls.incrementAndGet();
+                synchronized( widest ) {
+                    widest.set(Math.max(widest.get(), ids.size()));
+                }
+                for( String id : ids ) {
+                    results.put(id, id.toUpperCase());
+                }
+                return results;
+            }
+        };
+        Waiter.Backoff backoff = new Waiter.Backoff(50L, 50L, 10000L, 1.0, 0.0);
+        Future<String> a = Waiter.submit(check, "a", backoff);
+        Future<String> b = Waiter.submit(check, "b", backoff);
+        Future<String> c = Waiter.submit(check, "c", backoff);
+
+        assertEquals("A", a.get(5, TimeUnit.SECONDS));
+        assertEquals("B", b.get(5, TimeUnit.SECONDS));
+        assertEquals("C", c.get(5, TimeUnit.SECONDS));
+        assertTrue(calls.get() < 3);
+        assertTrue(widest.get() > 1);
+    }
+}
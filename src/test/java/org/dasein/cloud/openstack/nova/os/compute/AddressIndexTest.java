@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os.compute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.IpAddress;
+import org.dasein.cloud.network.VLAN;
+import org.junit.Test;
+
+/**
+ * Checks that servers are joined against floating addresses and networks by key, with the first entry for a key
+ * winning, and that a listing walks each list only once however many servers it converts.
+ */
+public class AddressIndexTest {
+    static private final int SERVERS = 10000;
+
+    /**
+     * Counts how often a list is walked.
+     */
+    static private class CountingIterable<T> implements Iterable<T> {
+        private final List<T> items;
+        public int            walks;
+
+        public CountingIterable(List<T> items) {
+            this.items = items;
+        }
+
+        public Iterator<T> iterator() {
+            walks++;
+            return items.iterator();
+        }
+    }
+
+    static private IpAddress address(String id, String ip, IPVersion version, String serverId) {
+        IpAddress address = new IpAddress();
+
+        address.setIpAddressId(id);
+        address.setAddress(ip);
+        address.setVersion(version);
+        address.setServerId(serverId);
+        return address;
+    }
+
+    static private VLAN network(String id, String name) {
+        VLAN network = new VLAN();
+
+        network.setProviderVlanId(id);
+        network.setName(name);
+        return network;
+    }
+
+    static private String ipv4(int i) {
+        return "10." + ((i >> 16) & 255) + "." + ((i >> 8) & 255) + "." + (i & 255);
+    }
+
+    @Test
+    public void firstEntryForAKeyWins() {
+        List<IpAddress> ipv4 = new ArrayList<IpAddress>();
+        List<IpAddress> ipv6 = new ArrayList<IpAddress>();
+        List<VLAN> networks = new ArrayList<VLAN>();
+
+        ipv4.add(address("a", "10.0.0.1", IPVersion.IPV4, "server"));
+        ipv4.add(address("b", "10.0.0.1", IPVersion.IPV4, "server"));
+        ipv6.add(address("c", "fd00::1", IPVersion.IPV6, "server"));
+        ipv6.add(address("d", "fd00::2", IPVersion.IPV6, "other"));
+        networks.add(network("n1", "private"));
+        networks.add(network("n2", "private"));
+
+        AddressIndex index = new AddressIndex(ipv4, ipv6, networks);
+
+        assertEquals("a", index.getIpv4("10.0.0.1").getProviderIpAddressId());
+        assertEquals("c", index.getIpv6("fd00::1").getProviderIpAddressId());
+        assertEquals("a", index.getByServer("server").getProviderIpAddressId());
+        assertEquals("d", index.getByServer("other").getProviderIpAddressId());
+        assertEquals("n1", index.getNetwork("private").getProviderVlanId());
+    }
+
+    @Test
+    public void unknownKeysFindNothing() {
+        AddressIndex index = new AddressIndex(new ArrayList<IpAddress>(), new ArrayList<IpAddress>(), new ArrayList<VLAN>());
+
+        assertNull(index.getIpv4("10.0.0.1"));
+        assertNull(index.getIpv6("fd00::1"));
+        assertNull(index.getByServer("server"));
+        assertNull(index.getNetwork("private"));
+    }
+
+    @Test
+    public void largeListingWalksEachListOnce() {
+        ArrayList<IpAddress> addresses = new ArrayList<IpAddress>();
+        ArrayList<VLAN> networks = new ArrayList<VLAN>();
+
+        for( int i=0; i<SERVERS; i++ ) {
+            addresses.add(address("ip-" + i, ipv4(i), IPVersion.IPV4, "server-" + i));
+            networks.add(network("net-" + i, "network-" + i));
+        }
+        CountingIterable<IpAddress> ipv4 = new CountingIterable<IpAddress>(addresses);
+        CountingIterable<IpAddress> ipv6 = new CountingIterable<IpAddress>(new ArrayList<IpAddress>());
+        CountingIterable<VLAN> vlans = new CountingIterable<VLAN>(networks);
+        AddressIndex index = new AddressIndex(ipv4, ipv6, vlans);
+
+        for( int i=0; i<SERVERS; i++ ) {
+            assertSame(addresses.get(i), index.getIpv4(ipv4(i)));
+            assertSame(addresses.get(i), index.getByServer("server-" + i));
+            assertSame(networks.get(i), index.getNetwork("network-" + i));
+        }
+        assertEquals(1, ipv4.walks);
+        assertEquals(1, ipv6.walks);
+        assertEquals(1, vlans.walks);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.dasein.cloud.CloudException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Checks how segments are attributed to the objects that own them, so that replacing or removing one large object
+ * never removes the segments of another.
+ */
+public class LargeObjectsTest {
+    static private JSONArray manifest(String ... names) throws Exception {
+        JSONArray manifest = new JSONArray();
+
+        for( String name : names ) {
+            JSONObject segment = new JSONObject();
+
+            segment.put("name", name);
+            segment.put("hash", "d41d8cd98f00b204e9800998ecf8427e");
+            segment.put("bytes", 10L);
+            manifest.put(segment);
+        }
+        return manifest;
+    }
+
+    @Test
+    public void ownerIsTheNameBeforeTheSegmentPath() {
+        assertEquals("file", LargeObjects.toOwner("file/slo/1416486896000/1048576/262144/00000000"));
+        assertEquals("dir/file", LargeObjects.toOwner("dir/file/dlo/1416486896000/1048576/copy/00000003"));
+    }
+
+    @Test
+    public void namesOutsideTheSchemeHaveNoOwner() {
+        assertNull(LargeObjects.toOwner("file"));
+        assertNull(LargeObjects.toOwner("slo/1416486896000/1048576/262144/00000000"));
+        assertNull(LargeObjects.toOwner("file/xyz/1416486896000/1048576/262144/00000000"));
+        assertNull(LargeObjects.toOwner("file/1416486896000/1048576/262144/00000000"));
+    }
+
+    @Test
+    public void onlySegmentsNamedForTheObjectAreOwned() {
+        List<String> names = Arrays.asList(
+                "a/slo/1/30/10/00000000",
+                "a/slo/1/30/10/00000001",
+                "a/b/slo/1/30/10/00000000",
+                "ab/slo/1/30/10/00000000",
+                "a/dlo/2/30/copy/00000000",
+                "other");
+
+        assertEquals(Arrays.asList("a/slo/1/30/10/00000000", "a/slo/1/30/10/00000001", "a/dlo/2/30/copy/00000000"), LargeObjects.toOwned("a", names));
+        assertEquals(Arrays.asList("a/b/slo/1/30/10/00000000"), LargeObjects.toOwned("a/b", names));
+        assertTrue(LargeObjects.toOwned("a", null).isEmpty());
+    }
+
+    @Test
+    public void pathsJoinContainerAndName() {
+        Map<String,Collection<String>> segments = new TreeMap<String, Collection<String>>();
+
+        segments.put("bucket_segments", Arrays.asList("a/slo/1/30/10/00000000", "a/slo/1/30/10/00000001"));
+        segments.put("elsewhere", Collections.singletonList("x"));
+
+        Set<String> paths = LargeObjects.toPaths(segments);
+
+        assertEquals(3, paths.size());
+        assertTrue(paths.contains("bucket_segments/a/slo/1/30/10/00000000"));
+        assertTrue(paths.contains("bucket_segments/a/slo/1/30/10/00000001"));
+        assertTrue(paths.contains("elsewhere/x"));
+        assertTrue(LargeObjects.toPaths(null).isEmpty());
+    }
+
+    @Test
+    public void manifestPartsKeepTheirOrder() throws Exception {
+        List<LargeObjects.Part> parts = LargeObjects.toParts(manifest("/bucket_segments/a/slo/1/20/10/00000000", "other_segments/a/slo/1/20/10/00000001"));
+
+        assertEquals(2, parts.size());
+        assertEquals("bucket_segments", parts.get(0).container);
+        assertEquals("a/slo/1/20/10/00000000", parts.get(0).name);
+        assertEquals("other_segments", parts.get(1).container);
+        assertEquals("a/slo/1/20/10/00000001", parts.get(1).name);
+        assertEquals(10L, parts.get(1).bytes);
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", parts.get(1).etag);
+        assertNull(LargeObjects.toParts(null));
+    }
+
+    @Test(expected=CloudException.class)
+    public void manifestPartsNeedAContainer() throws Exception {
+        LargeObjects.toParts(manifest("/segment"));
+    }
+
+    @Test
+    public void manifestSegmentsAreGroupedByContainer() throws Exception {
+        Map<String,Collection<String>> segments = LargeObjects.toSegments(manifest("/s1/a", "/s2/b", "/s1/c", "/bad"));
+
+        assertEquals(2, segments.size());
+        assertEquals(Arrays.asList("a", "c"), segments.get("s1"));
+        assertEquals(Arrays.asList("b"), segments.get("s2"));
+    }
+}
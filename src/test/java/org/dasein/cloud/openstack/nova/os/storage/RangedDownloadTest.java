@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.dasein.cloud.openstack.nova.os.VerifyingInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a file written by ranges in any order hashes to the MD5 of its content, with the prefix advancing as
+ * soon as it is contiguous.
+ */
+public class RangedDownloadTest {
+    static private final int LENGTH = 10 * 1024 + 17;
+    static private final int RANGE  = 1024;
+
+    private byte[]           content;
+    private File             file;
+    private RandomAccessFile raf;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[LENGTH];
+        new Random(42L).nextBytes(content);
+        file = File.createTempFile("ranged", ".tmp");
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(LENGTH);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        raf.close();
+        file.delete();
+    }
+
+    private void write(RangedDownload.PrefixDigest digest, int from, int position, int count) throws IOException {
+        byte[] chunk = new byte[count];
+
+        System.arraycopy(content, position, chunk, 0, count);
+        FileChannel channel = raf.getChannel();
+        ByteBuffer bytes = ByteBuffer.wrap(chunk);
+        long at = position;
+
+        while( bytes.hasRemaining() ) {
+            at += channel.write(bytes, at);
+        }
+        digest.update(from, chunk, count, position);
+    }
+
+    private void writeRange(RangedDownload.PrefixDigest digest, int index, int chunk) throws IOException {
+        int from = index * RANGE;
+        int to = Math.min(LENGTH, from + RANGE);
+
+        for( int position=from; position<to; position+=chunk ) {
+            write(digest, from, position, Math.min(chunk, to - position));
+        }
+    }
+
+    private String expected() {
+        return VerifyingInputStream.toHex(VerifyingInputStream.newMD5().digest(content));
+    }
+
+    @Test
+    public void inOrderRangesHashWithoutReadingBack() throws Exception {
+        RangedDownload.PrefixDigest digest = new RangedDownload.PrefixDigest(raf.getChannel());
+        int ranges = (LENGTH + RANGE - 1) / RANGE;
+
+        for( int i=0; i<ranges; i++ ) {
+            writeRange(digest, i, 100);
+            assertEquals(Math.min(LENGTH, (i + 1) * RANGE), digest.getHashed());
+        }
+        assertEquals(expected(), digest.finish(LENGTH));
+    }
+
+    @Test
+    public void outOfOrderRangesHashOnceContiguous() throws Exception {
+        RangedDownload.PrefixDigest digest = new RangedDownload.PrefixDigest(raf.getChannel());
+        int ranges = (LENGTH + RANGE - 1) / RANGE;
+
+        for( int i=ranges-1; i>0; i-- ) {
+            writeRange(digest, i, 333);
+            assertEquals(0L, digest.getHashed());
+        }
+        writeRange(digest, 0, 333);
+        assertEquals(LENGTH, digest.getHashed());
+        assertEquals(expected(), digest.finish(LENGTH));
+    }
+
+    @Test
+    public void interleavedRangesPickUpPartialProgress() throws Exception {
+        RangedDownload.PrefixDigest digest = new RangedDownload.PrefixDigest(raf.getChannel());
+
+        // range 1 is half written when range 0 completes, then finishes in stream
+        write(digest, RANGE, RANGE, RANGE / 2);
+        writeRange(digest, 0, 200);
+        assertEquals(RANGE + RANGE / 2, digest.getHashed());
+        write(digest, RANGE, RANGE + RANGE / 2, RANGE / 2);
+        assertEquals(2 * RANGE, digest.getHashed());
+        for( int i=2; i*RANGE<LENGTH; i++ ) {
+            writeRange(digest, i, 512);
+        }
+        assertEquals(expected(), digest.finish(LENGTH));
+    }
+
+    @Test(expected=IOException.class)
+    public void missingRangeFailsTheHash() throws Exception {
+        RangedDownload.PrefixDigest digest = new RangedDownload.PrefixDigest(raf.getChannel());
+
+        writeRange(digest, 0, 100);
+        writeRange(digest, 2, 100);
+        digest.finish(LENGTH);
+    }
+}
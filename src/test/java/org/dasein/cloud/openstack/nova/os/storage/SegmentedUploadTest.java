@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks how a file is split into segments: every byte lands in exactly one segment, and the segments never outgrow
+ * what one manifest can hold.
+ */
+public class SegmentedUploadTest {
+    static private final long MB = 1024L * 1024L;
+
+    @Test
+    public void configuredSizeIsClampedToSwiftLimits() {
+        assertEquals(SegmentedUpload.MIN_SEGMENT_SIZE, SegmentedUpload.toSegmentSize(1L, 10L * MB));
+        assertEquals(SegmentedUpload.MAX_SEGMENT_SIZE, SegmentedUpload.toSegmentSize(Long.MAX_VALUE, 10L * MB));
+        assertEquals(256L * MB, SegmentedUpload.toSegmentSize(256L * MB, 10L * MB));
+    }
+
+    @Test
+    public void sizeGrowsToFitTheManifest() {
+        long length = 5000L * MB + 1L;
+        long size = SegmentedUpload.toSegmentSize(SegmentedUpload.MIN_SEGMENT_SIZE, length);
+
+        assertTrue(size > SegmentedUpload.MIN_SEGMENT_SIZE);
+        assertTrue((length + size - 1) / size <= SegmentedUpload.MAX_SEGMENTS);
+    }
+
+    @Test
+    public void largestObjectFitsInMaximalSegments() {
+        long size = SegmentedUpload.toSegmentSize(SegmentedUpload.MIN_SEGMENT_SIZE, SegmentedUpload.MAX_OBJECT_SIZE);
+
+        assertEquals(SegmentedUpload.MAX_SEGMENT_SIZE, size);
+        assertEquals(SegmentedUpload.MAX_SEGMENTS, SegmentedUpload.toSegments("a/slo/", SegmentedUpload.MAX_OBJECT_SIZE, size).size());
+    }
+
+    @Test
+    public void segmentsCoverTheFileInOrder() {
+        List<SegmentedUpload.Segment> segments = SegmentedUpload.toSegments("a/slo/1/25/10/", 25L, 10L);
+        long offset = 0L;
+
+        assertEquals(3, segments.size());
+        for( int i=0; i<segments.size(); i++ ) {
+            SegmentedUpload.Segment segment = segments.get(i);
+
+            assertEquals(i, segment.index);
+            assertEquals(offset, segment.offset);
+            assertEquals(String.format("a/slo/1/25/10/%08d", i), segment.name);
+            offset += segment.length;
+        }
+        assertEquals(5L, segments.get(2).length);
+        assertEquals(25L, offset);
+    }
+
+    @Test
+    public void exactMultipleHasNoEmptyTail() {
+        List<SegmentedUpload.Segment> segments = SegmentedUpload.toSegments("p/", 20L, 10L);
+
+        assertEquals(2, segments.size());
+        assertEquals(10L, segments.get(1).length);
+    }
+
+    @Test
+    public void emptyFileHasOneEmptySegment() {
+        List<SegmentedUpload.Segment> segments = SegmentedUpload.toSegments("p/", 0L, 10L);
+
+        assertEquals(1, segments.size());
+        assertEquals(0L, segments.get(0).length);
+    }
+}
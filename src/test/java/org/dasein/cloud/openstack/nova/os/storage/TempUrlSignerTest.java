@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2009-2014 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.openstack.nova.os.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the signing primitives against fixed vectors. The HMAC cases are the RFC 2202 and RFC 4231 test case 2
+ * values; the TempURL cases use the key, expiry and path from the Swift TempURL middleware documentation.
+ */
+public class TempUrlSignerTest {
+    static private final String SWIFT_KEY     = "mykey";
+    static private final long   SWIFT_EXPIRES = 1323479485L;
+    static private final String SWIFT_PATH    = "/v1/AUTH_account/container/object";
+
+    @Test
+    public void hmacSHA1MatchesRFC2202() throws Exception {
+        assertEquals("effcdf6ae5eb2fa2d27416d5f184df9c259a7c79", TempUrlSigner.hmac("HmacSHA1", "Jefe", "what do ya want for nothing?"));
+    }
+
+    @Test
+    public void hmacSHA256MatchesRFC4231() throws Exception {
+        assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843", TempUrlSigner.hmac("HmacSHA256", "Jefe", "what do ya want for nothing?"));
+    }
+
+    @Test
+    public void signatureSignsGetExpiresAndPath() throws Exception {
+        assertEquals("d9fc2067e52b06598421664cf6610bfc8fc431f6", TempUrlSigner.toSignature(false, SWIFT_KEY, SWIFT_EXPIRES, SWIFT_PATH));
+    }
+
+    @Test
+    public void signatureHonorsSHA256() throws Exception {
+        assertEquals("05cb4ea08a08f2fdaef35d0f344975370077835c23bdc9342099ecbf03bc0378", TempUrlSigner.toSignature(true, SWIFT_KEY, SWIFT_EXPIRES, SWIFT_PATH));
+    }
+}